@@ -0,0 +1,573 @@
+package mydb;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A table stored as a B+tree on one of its fields, the key. The leaves hold
+ * the tuples in key order and are linked left to right, so
+ * {@link #indexIterator} finds the tuples with a key equal to, or in a range
+ * around, a value in O(log n) page reads instead of reading every page.
+ * <p>
+ * Page 0 is a {@link BTreeHeaderPage}; all other pages are
+ * {@link BTreeInternalPage}s and {@link BTreeLeafPage}s, read and written
+ * through the BufferPool like the pages of a HeapFile. A full page is split
+ * on insert and the split goes up the path to the root. A page left less
+ * than half full by a delete takes tuples or keys from a sibling, or is
+ * merged with it when both fit on one page; merged pages are reused by
+ * later splits.
+ * <p>
+ * Inserts and deletes of one file run one at a time. The pages an insert
+ * or delete works on are pinned until it is done.
+ */
+public class BTreeFile implements DbFile {
+
+    private static final long serialVersionUID = 3506231846281742813L;
+
+    private final File file;
+    private final TupleDetail tupleDetail;
+    private final int keyField;
+    private final int pageSize;
+    private transient FileChannel channel;
+    // guards channel; separate from the file's monitor, which inserts and
+    // deletes hold while they call into the BufferPool
+    private final transient Object channelLock = new Object();
+
+    public BTreeFile(File f, TupleDetail detail, int keyField) {
+        this(f, detail, keyField, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * @param keyField the index of the field the tree is ordered by
+     * @param pageSize bytes per page, a power of two from
+     *   {@link HeapFile#MIN_PAGE_SIZE} to {@link HeapFile#MAX_PAGE_SIZE}
+     *   that holds at least two tuples
+     */
+    public BTreeFile(File f, TupleDetail detail, int keyField, int pageSize) {
+        if (pageSize < HeapFile.MIN_PAGE_SIZE || pageSize > HeapFile.MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1)
+            throw new IllegalArgumentException("invalid page size " + pageSize);
+        if (keyField < 0 || keyField >= detail.fieldNumber())
+            throw new IllegalArgumentException("invalid key field " + keyField);
+        if (BTreeLeafPage.maxTuples(pageSize, detail) < 2
+                || BTreeInternalPage.maxKeys(pageSize, detail.getFieldType(keyField)) < 2)
+            throw new IllegalArgumentException("page size " + pageSize + " is too small for the tuples");
+        this.file = f;
+        this.tupleDetail = detail;
+        this.keyField = keyField;
+        this.pageSize = pageSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDetail getTupleDetail() {
+        return tupleDetail;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /** @return the index of the field the tree is ordered by */
+    public int keyField() {
+        return keyField;
+    }
+
+    private FileChannel channel() throws IOException {
+        synchronized (channelLock) {
+            if (channel == null || !channel.isOpen()) {
+                try {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE);
+                } catch (AccessDeniedException e) {
+                    // read-only table
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                }
+            }
+            return channel;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) throws IOException, DBException {
+        if(pid == null) throw new DBException("readPage error:invalid page info");
+        byte[] data = new byte[pageSize];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = (long) pid.pageNumber() * pageSize;
+        FileChannel ch = channel();
+        // a page past the end of the file reads as zeros
+        while (buffer.hasRemaining()) {
+            int n = ch.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+        return BTreePage.create(new BTreePageId(getId(), pid.pageNumber()), data);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException, DBException {
+        if(page == null) throw new DBException("invalid page info");
+        write(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private void write(int pageNo, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = (long) pageNo * pageSize;
+        FileChannel ch = channel();
+        while (buffer.hasRemaining())
+            ch.write(buffer, position + buffer.position());
+    }
+
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * The pages one insert or delete works on. Every page is pinned when it
+     * is fetched and unpinned by done, so none is evicted while it is being
+     * changed.
+     */
+    private class Access {
+        final TransactionId tid;
+        final BufferPool pool = Database.getBufferPool();
+        final List<PageId> pinned = new ArrayList<>();
+        final ArrayList<Page> dirtied = new ArrayList<>();
+        final BTreeHeaderPage header;
+
+        Access(TransactionId tid) throws DBException, IOException, TransactionAbortedException {
+            this.tid = tid;
+            header = (BTreeHeaderPage) get(0);
+        }
+
+        BTreePage get(int pageNo) throws DBException, IOException, TransactionAbortedException {
+            BTreePageId pid = new BTreePageId(getId(), pageNo);
+            Page page = pool.pinPage(tid, pid, Permissions.READ_WRITE, false);
+            pinned.add(pid);
+            return (BTreePage) page;
+        }
+
+        void dirty(BTreePage page) {
+            page.markDirty(true, tid);
+            if (!dirtied.contains(page)) dirtied.add(page);
+        }
+
+        /** @return a new empty page of the given kind, a freed one if there is one */
+        BTreePage allocate(byte kind) throws DBException, IOException, TransactionAbortedException {
+            int pageNo = header.allocatePage();
+            dirty(header);
+            // a freed page may still be cached with its old content
+            pool.discardPage(new BTreePageId(getId(), pageNo));
+            write(pageNo, BTreePage.emptyPageData(pageSize, kind));
+            BTreePage page = get(pageNo);
+            dirty(page);
+            return page;
+        }
+
+        void free(BTreePage page) {
+            header.freePage(page.getId().pageNumber());
+            dirty(header);
+        }
+
+        void done() {
+            for (PageId pid : pinned)
+                pool.unpinPage(pid);
+        }
+    }
+
+    /**
+     * Goes down from pageNo to the leftmost leaf that may hold key, or to the
+     * leftmost leaf if key is null, adding each internal page and the index
+     * of the child taken to parents and childIndex.
+     */
+    private BTreeLeafPage descend(Access a, int pageNo, Field key, List<BTreeInternalPage> parents,
+                                  List<Integer> childIndex) throws DBException, IOException, TransactionAbortedException {
+        for (;;) {
+            BTreePage page = a.get(pageNo);
+            if (page instanceof BTreeLeafPage) return (BTreeLeafPage) page;
+            BTreeInternalPage internal = (BTreeInternalPage) page;
+            int i = key == null ? 0 : internal.findChild(key);
+            parents.add(internal);
+            childIndex.add(i);
+            pageNo = internal.getChild(i);
+        }
+    }
+
+    /**
+     * Moves the path in parents and childIndex to the next leaf to the right.
+     * @return that leaf, or null if the path was at the last leaf
+     */
+    private BTreeLeafPage nextLeaf(Access a, List<BTreeInternalPage> parents, List<Integer> childIndex)
+            throws DBException, IOException, TransactionAbortedException {
+        for (int level = parents.size() - 1; level >= 0; level--) {
+            BTreeInternalPage parent = parents.get(level);
+            int i = childIndex.get(level);
+            if (i < parent.getKeyCount()) {
+                while (parents.size() > level + 1) {
+                    parents.remove(parents.size() - 1);
+                    childIndex.remove(childIndex.size() - 1);
+                }
+                childIndex.set(level, i + 1);
+                return descend(a, parent.getChild(i + 1), null, parents, childIndex);
+            }
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized ArrayList<Page> insertTuple(TransactionId tid, Tuple tuple)
+            throws DBException, IOException, TransactionAbortedException {
+        if (tuple == null) throw new DBException("insert tuple is invalid");
+        if (!tuple.getTupleDetail().equals(tupleDetail)) throw new DBException("insert error: tupledetail not match");
+        Access a = new Access(tid);
+        try {
+            if (a.header.getRoot() == 0)
+                a.header.setRoot(a.allocate(BTreePage.LEAF).getId().pageNumber());
+            Field key = tuple.getField(keyField);
+            List<BTreeInternalPage> parents = new ArrayList<>();
+            List<Integer> childIndex = new ArrayList<>();
+            BTreeLeafPage leaf = descend(a, a.header.getRoot(), key, parents, childIndex);
+            a.dirty(leaf);
+            if (!leaf.isFull()) {
+                leaf.insertTuple(tuple);
+                return a.dirtied;
+            }
+            BTreeLeafPage right = (BTreeLeafPage) a.allocate(BTreePage.LEAF);
+            leaf.moveUpperHalfTo(right);
+            right.setRightSibling(leaf.getRightSibling());
+            leaf.setRightSibling(right.getId().pageNumber());
+            Field separator = right.getKey(0);
+            if (key.compareWith(Comparison.Operation.LESS_THAN, separator)) leaf.insertTuple(tuple);
+            else right.insertTuple(tuple);
+            insertIntoParents(a, parents, childIndex, leaf.getId().pageNumber(), separator,
+                    right.getId().pageNumber());
+            return a.dirtied;
+        } finally {
+            a.done();
+        }
+    }
+
+    /**
+     * Adds separator and the new page right next to left in the parent of
+     * left, splitting full parents up to the root. A new root is made when
+     * the old one splits.
+     */
+    private void insertIntoParents(Access a, List<BTreeInternalPage> parents, List<Integer> childIndex,
+                                   int left, Field separator, int right)
+            throws DBException, IOException, TransactionAbortedException {
+        for (int level = parents.size() - 1; level >= 0; level--) {
+            BTreeInternalPage parent = parents.get(level);
+            int i = childIndex.get(level);
+            a.dirty(parent);
+            if (!parent.isFull()) {
+                parent.insertKey(i, separator, right);
+                return;
+            }
+            BTreeInternalPage sibling = (BTreeInternalPage) a.allocate(BTreePage.INTERNAL);
+            int m = parent.getKeyCount() / 2;
+            Field middle = parent.moveUpperHalfTo(sibling);
+            if (i <= m) parent.insertKey(i, separator, right);
+            else sibling.insertKey(i - m - 1, separator, right);
+            left = parent.getId().pageNumber();
+            separator = middle;
+            right = sibling.getId().pageNumber();
+        }
+        BTreeInternalPage root = (BTreeInternalPage) a.allocate(BTreePage.INTERNAL);
+        root.init(left, separator, right);
+        a.header.setRoot(root.getId().pageNumber());
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized Page deleteTuple(TransactionId tid, Tuple tuple)
+            throws DBException, TransactionAbortedException, IOException {
+        if (tuple == null) throw new DBException("delete tuple is invalid");
+        Access a = new Access(tid);
+        try {
+            if (a.header.getRoot() == 0) throw new DBException("delete error: tuple is not in the table");
+            Field key = tuple.getField(keyField);
+            List<BTreeInternalPage> parents = new ArrayList<>();
+            List<Integer> childIndex = new ArrayList<>();
+            BTreeLeafPage leaf = descend(a, a.header.getRoot(), key, parents, childIndex);
+            while (leaf != null) {
+                int i = find(leaf, tuple, key);
+                if (i >= 0) {
+                    leaf.removeTuple(i);
+                    a.dirty(leaf);
+                    rebalance(a, parents, childIndex, leaf);
+                    return leaf;
+                }
+                // equal keys may go on in the next leaf
+                int n = leaf.getTupleNumber();
+                if (n > 0 && leaf.getKey(n - 1).compareWith(Comparison.Operation.GREATER_THAN, key)) break;
+                leaf = nextLeaf(a, parents, childIndex);
+            }
+            throw new DBException("delete error: tuple is not in the table");
+        } finally {
+            a.done();
+        }
+    }
+
+    /** @return the position of a tuple equal to tuple on leaf, or -1 */
+    private int find(BTreeLeafPage leaf, Tuple tuple, Field key) {
+        // the RecordId picks among equal tuples if it is still right
+        RecordId rid = tuple.getRecordId();
+        if (rid != null && leaf.getId().equals(rid.getPageId()) && rid.tupleno() < leaf.getTupleNumber()
+                && sameFields(leaf.getTuple(rid.tupleno()), tuple))
+            return rid.tupleno();
+        for (int i = leaf.lowerBound(key); i < leaf.getTupleNumber() && leaf.getKey(i).equals(key); i++)
+            if (sameFields(leaf.getTuple(i), tuple)) return i;
+        return -1;
+    }
+
+    private boolean sameFields(Tuple t1, Tuple t2) {
+        for (int i = 0; i < tupleDetail.fieldNumber(); i++)
+            if (!t1.getField(i).equals(t2.getField(i))) return false;
+        return true;
+    }
+
+    /**
+     * Refills a leaf that is less than half full from a sibling with the
+     * same parent, or merges the two when they fit on one page.
+     */
+    private void rebalance(Access a, List<BTreeInternalPage> parents, List<Integer> childIndex, BTreeLeafPage leaf)
+            throws DBException, IOException, TransactionAbortedException {
+        if (parents.isEmpty() || leaf.getTupleNumber() >= leaf.getMaxTuples() / 2) return;
+        int level = parents.size() - 1;
+        BTreeInternalPage parent = parents.get(level);
+        int i = childIndex.get(level);
+        // the separator between the leaf and its right sibling, or its left
+        // one for the last child
+        int s = i < parent.getKeyCount() ? i : i - 1;
+        BTreeLeafPage left = s == i ? leaf : (BTreeLeafPage) a.get(parent.getChild(s));
+        BTreeLeafPage right = s == i ? (BTreeLeafPage) a.get(parent.getChild(s + 1)) : leaf;
+        a.dirty(left);
+        a.dirty(right);
+        a.dirty(parent);
+        if (left.getTupleNumber() + right.getTupleNumber() <= left.getMaxTuples()) {
+            left.mergeFrom(right);
+            parent.removeKey(s);
+            a.free(right);
+            rebalanceInternal(a, parents, childIndex, level);
+        } else {
+            left.balanceWith(right);
+            parent.setKey(s, right.getKey(0));
+        }
+    }
+
+    /**
+     * Like rebalance for the internal page parents.get(level), which has
+     * just lost a key. A root left without keys is replaced by its only
+     * child.
+     */
+    private void rebalanceInternal(Access a, List<BTreeInternalPage> parents, List<Integer> childIndex, int level)
+            throws DBException, IOException, TransactionAbortedException {
+        BTreeInternalPage page = parents.get(level);
+        if (level == 0) {
+            if (page.getKeyCount() == 0) {
+                a.header.setRoot(page.getChild(0));
+                a.free(page);
+            }
+            return;
+        }
+        if (page.getKeyCount() >= page.getMaxKeys() / 2) return;
+        BTreeInternalPage parent = parents.get(level - 1);
+        int i = childIndex.get(level - 1);
+        int s = i < parent.getKeyCount() ? i : i - 1;
+        BTreeInternalPage left = s == i ? page : (BTreeInternalPage) a.get(parent.getChild(s));
+        BTreeInternalPage right = s == i ? (BTreeInternalPage) a.get(parent.getChild(s + 1)) : page;
+        Field separator = parent.getKey(s);
+        a.dirty(left);
+        a.dirty(right);
+        a.dirty(parent);
+        if (left.getKeyCount() + 1 + right.getKeyCount() <= left.getMaxKeys()) {
+            left.mergeFrom(separator, right);
+            parent.removeKey(s);
+            a.free(right);
+            rebalanceInternal(a, parents, childIndex, level - 1);
+            return;
+        }
+        // rotate keys through the parent until the counts are even
+        while (left.getKeyCount() < right.getKeyCount() - 1) {
+            left.insertKey(left.getKeyCount(), separator, right.getChild(0));
+            separator = right.getKey(0);
+            right.removeFirst();
+        }
+        while (right.getKeyCount() < left.getKeyCount() - 1) {
+            right.insertFirst(left.getChild(left.getKeyCount()), separator);
+            separator = left.getKey(left.getKeyCount() - 1);
+            left.removeLast();
+        }
+        parent.setKey(s, separator);
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null);
+    }
+
+    /**
+     * Returns the tuples whose key satisfies comparison, in key order. An
+     * EQUALS or GREATER_THAN(_OR_EQ) probe starts at the leaf that holds the
+     * operand; EQUALS and LESS_THAN(_OR_EQ) stop at the first key past it.
+     * NOT_EQUALS and LIKE read every leaf.
+     *
+     * @throws IllegalArgumentException if comparison is not on the key field
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Comparison comparison) {
+        if (comparison.getField() != keyField)
+            throw new IllegalArgumentException("field " + comparison.getField() + " is not the key of the index");
+        return new BTreeFileIterator(tid, comparison);
+    }
+
+    /**
+     * Walks the leaves from left to right. The leaf being read is pinned
+     * until the iterator moves past it or is closed.
+     */
+    private class BTreeFileIterator implements DbFileIterator {
+        private static final long serialVersionUID = -4431580962431806413L;
+
+        private final TransactionId tid;
+        // null for all tuples
+        private final Comparison comparison;
+        // null until opened and after the last tuple
+        private BTreeLeafPage leaf;
+        private BufferPool pinnedIn;
+        private int position;
+        private Tuple next;
+
+        BTreeFileIterator(TransactionId tid, Comparison comparison) {
+            this.tid = tid;
+            this.comparison = comparison;
+        }
+
+        @Override
+        public void open() throws DBException, TransactionAbortedException, IOException {
+            close();
+            BufferPool pool = Database.getBufferPool();
+            // each page is pinned only while it is read
+            BTreePageId headerId = new BTreePageId(getId(), 0);
+            int pageNo;
+            try {
+                pageNo = ((BTreeHeaderPage) pool.pinPage(tid, headerId, Permissions.READ_ONLY, false)).getRoot();
+            } finally {
+                pool.unpinPage(headerId);
+            }
+            if (pageNo == 0) return;
+            Field start = null;
+            Comparison.Operation op = comparison == null ? null : comparison.getOperation();
+            if (op == Comparison.Operation.EQUALS || op == Comparison.Operation.GREATER_THAN
+                    || op == Comparison.Operation.GREATER_THAN_OR_EQ)
+                start = comparison.getOperand();
+            for (;;) {
+                BTreePageId pid = new BTreePageId(getId(), pageNo);
+                Page page = pool.pinPage(tid, pid, Permissions.READ_ONLY, false);
+                try {
+                    if (page instanceof BTreeLeafPage) break;
+                    BTreeInternalPage internal = (BTreeInternalPage) page;
+                    pageNo = internal.getChild(start == null ? 0 : internal.findChild(start));
+                } finally {
+                    pool.unpinPage(pid);
+                }
+            }
+            pin(pageNo);
+            position = start == null ? 0
+                    : op == Comparison.Operation.GREATER_THAN ? leaf.upperBound(start) : leaf.lowerBound(start);
+        }
+
+        private void pin(int pageNo) throws DBException, TransactionAbortedException, IOException {
+            BufferPool pool = Database.getBufferPool();
+            BTreePageId pid = new BTreePageId(getId(), pageNo);
+            // full scans touch each leaf once
+            leaf = (BTreeLeafPage) pool.pinPage(tid, pid, Permissions.READ_ONLY, comparison == null);
+            pinnedIn = pool;
+        }
+
+        @Override
+        public boolean hasNext() throws DBException, TransactionAbortedException, IOException {
+            if (next != null) return true;
+            while (leaf != null) {
+                if (position >= leaf.getTupleNumber()) {
+                    int right = leaf.getRightSibling();
+                    unpin();
+                    if (right != 0) {
+                        pin(right);
+                        position = 0;
+                    }
+                    continue;
+                }
+                Tuple tuple = leaf.getTuple(position++);
+                if (comparison == null || comparison.filter(tuple)) {
+                    next = tuple;
+                    return true;
+                }
+                if (pastEnd(tuple)) unpin();
+            }
+            return false;
+        }
+
+        // true if no later tuple can satisfy the comparison
+        private boolean pastEnd(Tuple tuple) {
+            switch (comparison.getOperation()) {
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+                return true;
+            case EQUALS:
+                return tuple.getField(keyField).compareWith(Comparison.Operation.GREATER_THAN,
+                        comparison.getOperand());
+            default:
+                return false;
+            }
+        }
+
+        @Override
+        public Tuple next() throws DBException, TransactionAbortedException, NoSuchElementException, IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("not opened or no tuple remained");
+            }
+            Tuple tuple = next;
+            next = null;
+            return tuple;
+        }
+
+        @Override
+        public void rewind() throws DBException, TransactionAbortedException, IOException {
+            open();
+        }
+
+        @Override
+        public void close() {
+            unpin();
+            next = null;
+        }
+
+        private void unpin() {
+            if (leaf == null) return;
+            pinnedIn.unpinPage(leaf.getId());
+            leaf = null;
+            pinnedIn = null;
+        }
+    }
+}
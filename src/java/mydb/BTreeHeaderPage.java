@@ -0,0 +1,82 @@
+package mydb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Page 0 of a {@link BTreeFile}: the number of the root page, the number of
+ * pages the file has allocated, and a list of pages freed by merges that new
+ * pages are taken from first.
+ * <p>
+ * Layout: [kind][root][page count][free count][free page numbers ...], all
+ * ints. A root of 0 means the tree is empty. Freed pages beyond what fits on
+ * the page are not reused.
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private static final int HEADER_BYTES = 1 + 4 + 4 + 4;
+
+    private int root;
+    private int pageCount;
+    private final int[] freePages;
+    private int freeCount;
+
+    public BTreeHeaderPage(BTreePageId pid, byte[] data) throws IOException {
+        super(pid, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        freePages = new int[(pageSize - HEADER_BYTES) / 4];
+        if (data[0] == 0) {
+            // a new file: just this page
+            pageCount = 1;
+            return;
+        }
+        root = buffer.getInt(1);
+        pageCount = buffer.getInt(5);
+        freeCount = buffer.getInt(9);
+        if (freeCount < 0 || freeCount > freePages.length) throw new IOException("corrupt B+tree header page");
+        for (int i = 0; i < freeCount; i++)
+            freePages[i] = buffer.getInt(HEADER_BYTES + 4 * i);
+    }
+
+    /** @return the page number of the root, or 0 if the tree is empty */
+    public int getRoot() {
+        return root;
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    /** @return the number of pages allocated in the file, this one included */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Takes the number for a new page: a freed page if there is one,
+     * otherwise the next page at the end of the file.
+     */
+    public int allocatePage() {
+        if (freeCount > 0) return freePages[--freeCount];
+        return pageCount++;
+    }
+
+    /** Gives a page that is no longer in the tree back for reuse. */
+    public void freePage(int pageNo) {
+        if (freeCount < freePages.length) freePages[freeCount++] = pageNo;
+    }
+
+    /** @return the number of freed pages waiting to be reused */
+    public int getFreeCount() {
+        return freeCount;
+    }
+
+    protected void encode(ByteBuffer buffer) {
+        buffer.put(HEADER);
+        buffer.putInt(root);
+        buffer.putInt(pageCount);
+        buffer.putInt(freeCount);
+        for (int i = 0; i < freeCount; i++)
+            buffer.putInt(freePages[i]);
+    }
+}
@@ -0,0 +1,176 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An internal page of a {@link BTreeFile}: n keys separating n + 1 child
+ * page numbers. Every key in the subtree of child i is at most key i, and
+ * every key in the subtree of child i + 1 is at least key i; equal keys may
+ * be on both sides.
+ * <p>
+ * Layout: [kind][key count][children, room for max keys + 1 ints][keys,
+ * room for max keys fixed-size fields].
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private final Type keyType;
+    private final int maxKeys;
+    private final Field[] keys;
+    private final int[] children;
+    private int keyCount;
+
+    public BTreeInternalPage(BTreePageId pid, byte[] data) throws IOException {
+        super(pid, data);
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDbFile(pid.getTableId());
+        keyType = file.getTupleDetail().getFieldType(file.keyField());
+        maxKeys = maxKeys(pageSize, keyType);
+        keys = new Field[maxKeys];
+        children = new int[maxKeys + 1];
+        if (data[0] == 0) return;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        keyCount = buffer.getInt(1);
+        if (keyCount < 0 || keyCount > maxKeys) throw new IOException("corrupt B+tree internal page " + pid.pageNumber());
+        for (int i = 0; i <= keyCount; i++)
+            children[i] = buffer.getInt(5 + 4 * i);
+        int at = keysOffset();
+        for (int i = 0; i < keyCount; i++)
+            keys[i] = keyType.parse(buffer, at + i * keyType.getLen());
+    }
+
+    /** @return how many keys fit on an internal page */
+    public static int maxKeys(int pageSize, Type keyType) {
+        return (pageSize - 1 - 4 - 4) / (4 + keyType.getLen());
+    }
+
+    private int keysOffset() {
+        return 5 + 4 * (maxKeys + 1);
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public boolean isFull() {
+        return keyCount == maxKeys;
+    }
+
+    public Field getKey(int i) {
+        return keys[i];
+    }
+
+    public void setKey(int i, Field key) {
+        keys[i] = key;
+    }
+
+    public int getChild(int i) {
+        return children[i];
+    }
+
+    /**
+     * @return the index of the leftmost child whose subtree may hold key:
+     *   the first i with key &lt;= key i, or the key count if there is none
+     */
+    public int findChild(Field key) {
+        int lo = 0, hi = keyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareWith(Comparison.Operation.LESS_THAN_OR_EQ, keys[mid])) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** Makes this page a root with two children. */
+    public void init(int left, Field key, int right) {
+        children[0] = left;
+        keys[0] = key;
+        children[1] = right;
+        keyCount = 1;
+    }
+
+    /** Inserts key at index i, with child on its right at index i + 1. */
+    public void insertKey(int i, Field key, int child) {
+        if (isFull()) throw new IllegalStateException("internal page is full");
+        System.arraycopy(keys, i, keys, i + 1, keyCount - i);
+        System.arraycopy(children, i + 1, children, i + 2, keyCount - i);
+        keys[i] = key;
+        children[i + 1] = child;
+        keyCount++;
+    }
+
+    /** Removes key i and the child on its right. */
+    public void removeKey(int i) {
+        System.arraycopy(keys, i + 1, keys, i, keyCount - i - 1);
+        System.arraycopy(children, i + 2, children, i + 1, keyCount - i - 1);
+        keys[--keyCount] = null;
+    }
+
+    /** Inserts child before the first child, separated from it by key. */
+    public void insertFirst(int child, Field key) {
+        if (isFull()) throw new IllegalStateException("internal page is full");
+        System.arraycopy(keys, 0, keys, 1, keyCount);
+        System.arraycopy(children, 0, children, 1, keyCount + 1);
+        keys[0] = key;
+        children[0] = child;
+        keyCount++;
+    }
+
+    /** Removes the first child and the key on its right. */
+    public void removeFirst() {
+        System.arraycopy(keys, 1, keys, 0, keyCount - 1);
+        System.arraycopy(children, 1, children, 0, keyCount);
+        keys[--keyCount] = null;
+    }
+
+    /** Removes the last key and the last child. */
+    public void removeLast() {
+        keys[--keyCount] = null;
+    }
+
+    /**
+     * Moves the upper half of the keys and children to an empty page.
+     * @return the middle key, which is in neither page any more and
+     *   separates them in the parent
+     */
+    public Field moveUpperHalfTo(BTreeInternalPage right) {
+        int m = keyCount / 2;
+        Field middle = keys[m];
+        right.keyCount = keyCount - m - 1;
+        System.arraycopy(keys, m + 1, right.keys, 0, right.keyCount);
+        System.arraycopy(children, m + 1, right.children, 0, right.keyCount + 1);
+        for (int i = m; i < keyCount; i++)
+            keys[i] = null;
+        keyCount = m;
+        return middle;
+    }
+
+    /** Appends separator and all keys and children of right, which is emptied. */
+    public void mergeFrom(Field separator, BTreeInternalPage right) {
+        if (keyCount + 1 + right.keyCount > maxKeys) throw new IllegalStateException("pages do not fit in one");
+        keys[keyCount] = separator;
+        System.arraycopy(right.keys, 0, keys, keyCount + 1, right.keyCount);
+        System.arraycopy(right.children, 0, children, keyCount + 1, right.keyCount + 1);
+        keyCount += 1 + right.keyCount;
+        right.keyCount = 0;
+    }
+
+    protected void encode(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.put(INTERNAL);
+        buffer.putInt(keyCount);
+        for (int i = 0; i <= keyCount; i++)
+            buffer.putInt(children[i]);
+        int at = start + keysOffset();
+        for (int i = 0; i < keyCount; i++)
+            keys[i].serialize(buffer.array(), at + i * keyType.getLen());
+        buffer.position(at + keyCount * keyType.getLen());
+    }
+}
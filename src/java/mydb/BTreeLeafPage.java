@@ -0,0 +1,180 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A leaf page of a {@link BTreeFile}: the tuples themselves, sorted by the
+ * key field, and the number of the next leaf to the right (0 for the last
+ * one). Tuples with equal keys may be spread over several leaves.
+ * <p>
+ * Layout: [kind][right sibling][tuple count][tuples, packed in key order].
+ * The RecordId of a tuple is its position on the page, so it changes when
+ * tuples before it are inserted or deleted.
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private final TupleDetail tupleDetail;
+    private final int keyField;
+    private final int maxTuples;
+    private final Tuple[] tuples;
+    private int count;
+    private int rightSibling;
+
+    public BTreeLeafPage(BTreePageId pid, byte[] data) throws IOException {
+        super(pid, data);
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDbFile(pid.getTableId());
+        tupleDetail = file.getTupleDetail();
+        keyField = file.keyField();
+        maxTuples = maxTuples(pageSize, tupleDetail);
+        tuples = new Tuple[maxTuples];
+        if (data[0] == 0) return;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        rightSibling = buffer.getInt(1);
+        count = buffer.getInt(5);
+        if (count < 0 || count > maxTuples) throw new IOException("corrupt B+tree leaf page " + pid.pageNumber());
+        int at = 9;
+        for (int i = 0; i < count; i++) {
+            Tuple tuple = new Tuple(tupleDetail);
+            for (int j = 0; j < tupleDetail.fieldNumber(); j++) {
+                Type type = tupleDetail.getFieldType(j);
+                tuple.setField(j, type.parse(buffer, at));
+                at += type.getLen();
+            }
+            tuples[i] = tuple;
+        }
+    }
+
+    /** @return how many tuples fit on a leaf page */
+    public static int maxTuples(int pageSize, TupleDetail td) {
+        return (pageSize - 1 - 4 - 4) / td.getSize();
+    }
+
+    public int getTupleNumber() {
+        return count;
+    }
+
+    public int getMaxTuples() {
+        return maxTuples;
+    }
+
+    public boolean isFull() {
+        return count == maxTuples;
+    }
+
+    /** @return the page number of the next leaf, or 0 if this is the last */
+    public int getRightSibling() {
+        return rightSibling;
+    }
+
+    public void setRightSibling(int pageNo) {
+        rightSibling = pageNo;
+    }
+
+    /** @return the tuple at position i, with its RecordId set */
+    public Tuple getTuple(int i) {
+        Tuple tuple = tuples[i];
+        tuple.setRecordId(new RecordId(pid, i));
+        return tuple;
+    }
+
+    public Field getKey(int i) {
+        return tuples[i].getField(keyField);
+    }
+
+    /** @return the position of the first tuple whose key is &gt;= key, or the tuple count */
+    public int lowerBound(Field key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compareWith(Comparison.Operation.LESS_THAN, key)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return the position of the first tuple whose key is &gt; key, or the tuple count */
+    public int upperBound(Field key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compareWith(Comparison.Operation.LESS_THAN_OR_EQ, key)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Inserts tuple after the tuples with a smaller or equal key and sets its RecordId. */
+    public void insertTuple(Tuple tuple) {
+        if (isFull()) throw new IllegalStateException("leaf page is full");
+        int i = upperBound(tuple.getField(keyField));
+        System.arraycopy(tuples, i, tuples, i + 1, count - i);
+        tuples[i] = tuple;
+        count++;
+        tuple.setRecordId(new RecordId(pid, i));
+    }
+
+    public void removeTuple(int i) {
+        System.arraycopy(tuples, i + 1, tuples, i, count - i - 1);
+        tuples[--count] = null;
+    }
+
+    /** Moves the upper half of the tuples to an empty page. */
+    public void moveUpperHalfTo(BTreeLeafPage right) {
+        int m = count / 2;
+        right.count = count - m;
+        System.arraycopy(tuples, m, right.tuples, 0, right.count);
+        for (int i = m; i < count; i++)
+            tuples[i] = null;
+        count = m;
+    }
+
+    /** Evens out the tuple counts of this page and its right sibling. */
+    public void balanceWith(BTreeLeafPage right) {
+        int total = count + right.count;
+        int m = total / 2;
+        if (count > m) {
+            int move = count - m;
+            System.arraycopy(right.tuples, 0, right.tuples, move, right.count);
+            System.arraycopy(tuples, m, right.tuples, 0, move);
+            for (int i = m; i < count; i++)
+                tuples[i] = null;
+        } else {
+            int move = m - count;
+            System.arraycopy(right.tuples, 0, tuples, count, move);
+            System.arraycopy(right.tuples, move, right.tuples, 0, right.count - move);
+            for (int i = right.count - move; i < right.count; i++)
+                right.tuples[i] = null;
+        }
+        count = m;
+        right.count = total - m;
+    }
+
+    /** Appends all tuples of right, which is emptied, and takes over its right sibling. */
+    public void mergeFrom(BTreeLeafPage right) {
+        if (count + right.count > maxTuples) throw new IllegalStateException("pages do not fit in one");
+        System.arraycopy(right.tuples, 0, tuples, count, right.count);
+        count += right.count;
+        right.count = 0;
+        rightSibling = right.rightSibling;
+    }
+
+    protected void encode(ByteBuffer buffer) {
+        int at = buffer.position() + 9;
+        buffer.put(LEAF);
+        buffer.putInt(rightSibling);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < tupleDetail.fieldNumber(); j++) {
+                tuples[i].getField(j).serialize(buffer.array(), at);
+                at += tupleDetail.getFieldType(j).getLen();
+            }
+        }
+        buffer.position(at);
+    }
+}
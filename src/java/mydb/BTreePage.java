@@ -0,0 +1,100 @@
+package mydb;
+
+import mydb.Database.Database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A page of a {@link BTreeFile}. The first byte of every page says what
+ * kind of page it is: {@link #HEADER}, {@link #INTERNAL} or {@link #LEAF}.
+ * Pages are decoded when they are read and encoded again by
+ * {@link #writeTo}; the bytes they were read from are kept as the
+ * before-image.
+ */
+public abstract class BTreePage implements Page {
+
+    public static final byte HEADER = 1;
+    public static final byte INTERNAL = 2;
+    public static final byte LEAF = 3;
+
+    protected final BTreePageId pid;
+    protected final int pageSize;
+    // never written to; replaced by setBeforeImage
+    private byte[] oldData;
+    private TransactionId transactionId;
+
+    protected BTreePage(BTreePageId pid, byte[] data) throws IOException {
+        this.pid = pid;
+        this.pageSize = Database.getCatalog().getPageSize(pid.getTableId());
+        if (data.length < pageSize) throw new IOException("page data is too short");
+        this.oldData = data;
+    }
+
+    /**
+     * Decodes a page of a BTreeFile, choosing the class by its first byte.
+     * Page 0 of an empty file reads as zeros and is an empty header page.
+     */
+    public static BTreePage create(BTreePageId pid, byte[] data) throws IOException {
+        switch (data[0]) {
+        case HEADER:
+            return new BTreeHeaderPage(pid, data);
+        case INTERNAL:
+            return new BTreeInternalPage(pid, data);
+        case LEAF:
+            return new BTreeLeafPage(pid, data);
+        case 0:
+            if (pid.pageNumber() == 0) return new BTreeHeaderPage(pid, data);
+        }
+        throw new IOException("page " + pid.pageNumber() + " is not a B+tree page");
+    }
+
+    /** @return the bytes of an empty page of the given kind */
+    static byte[] emptyPageData(int pageSize, byte kind) {
+        byte[] data = new byte[pageSize];
+        data[0] = kind;
+        return data;
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        transactionId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return transactionId;
+    }
+
+    public byte[] getPageData() {
+        byte[] data = new byte[pageSize];
+        writeTo(data, 0);
+        return data;
+    }
+
+    public void writeTo(byte[] dest, int offset) {
+        Arrays.fill(dest, offset, offset + pageSize, (byte) 0);
+        encode(ByteBuffer.wrap(dest, offset, pageSize));
+    }
+
+    /** Writes the page, starting with its kind byte, at the buffer's position; unused bytes are zero. */
+    protected abstract void encode(ByteBuffer buffer);
+
+    public BTreePage getBeforeImage() {
+        try {
+            return create(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,44 @@
+package mydb;
+
+/**
+ * The id of a page of a {@link BTreeFile}. Whether the page is a header,
+ * internal or leaf page is stored in the page itself, see {@link BTreePage}.
+ */
+public class BTreePageId implements PageId {
+
+    private int tableId;
+    private int pageNo;
+
+    public BTreePageId(int tableId, int pageNo) {
+        this.tableId = tableId;
+        this.pageNo = pageNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pageNo;
+    }
+
+    public int hashCode() {
+        return 31 * tableId + pageNo;
+    }
+
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(o == null) return false;
+        if(! (o instanceof PageId)) return false;
+        PageId pageId = (PageId) o;
+        return pageNo == pageId.pageNumber() && tableId == pageId.getTableId();
+    }
+
+    public int[] serialize() {
+        return new int[]{tableId, pageNo};
+    }
+
+    public String toString() {
+        return "BTreePageId(" + tableId + ", " + pageNo + ")";
+    }
+}
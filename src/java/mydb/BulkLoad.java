@@ -0,0 +1,154 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the tuples read from the child operator into a HeapFile, packing
+ * them into full pages appended at the end of the file. Unlike
+ * {@link Insert} it does not go through the BufferPool: pages are built in
+ * memory and written {@link #BATCH_PAGES} at a time with one sequential
+ * write, and the file is forced to disk before open returns.
+ * <p>
+ * The load is not logged and takes no locks, so it is meant for filling a
+ * table nobody else is using, not for ordinary transactions. Existing pages
+ * are not touched, even if they have free slots.
+ * <p>
+ * Optionally the tuples are sorted on a field first, so the table comes out
+ * clustered on it.
+ */
+public class BulkLoad extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Pages written with one write call (256 KB with 4 KB pages). */
+    public static final int BATCH_PAGES = 64;
+
+    private TransactionId transactionId;
+    private DbIterator child;
+    private int tableId;
+    private int loadCount;
+    private TupleDetail tableDetail;
+    private boolean rename;
+    private TupleDetail tupleDetail;
+    private boolean action;
+
+    /**
+     * Constructor.
+     *
+     * @param transactionId
+     *            The transaction running the load.
+     * @param child
+     *            The child operator from which to read tuples to be loaded.
+     * @param tableId
+     *            The table to load into; must be a HeapFile.
+     * @throws DBException
+     *             if TupleDesc of child differs from the table's.
+     */
+    public BulkLoad(TransactionId transactionId, DbIterator child, int tableId) throws DBException {
+        this(transactionId, child, tableId, -1, true);
+    }
+
+    /**
+     * Constructor for a load sorted on sortField.
+     *
+     * @param sortField
+     *            the field to sort on, or -1 to keep the order of child.
+     * @param asc
+     *            true if the sort order is ascending.
+     */
+    public BulkLoad(TransactionId transactionId, DbIterator child, int tableId, int sortField, boolean asc)
+            throws DBException {
+        TupleDetail childDetail = child.getTupleDetail();
+        tableDetail = Database.getCatalog().getTupleDetail(tableId);
+        boolean sameTypes = childDetail.fieldNumber() == tableDetail.fieldNumber();
+        for (int i = 0; sameTypes && i < tableDetail.fieldNumber(); i++)
+            sameTypes = childDetail.getFieldType(i) == tableDetail.getFieldType(i);
+        if (!sameTypes)
+            throw new DBException("bulk load error: tuple detail of child differs from table " + tableId);
+        // field names may differ, e.g. scans prefix them with the alias
+        rename = !childDetail.equals(tableDetail);
+        this.transactionId = transactionId;
+        this.child = sortField < 0 ? child : new OrderBy(sortField, asc, child);
+        this.tableId = tableId;
+        tupleDetail = new TupleDetail(new Type[]{Type.INT_TYPE}, new String[]{null});
+    }
+
+    public TupleDetail getTupleDetail() {
+        return tupleDetail;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        super.open();
+        child.open();
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        if (!(dbFile instanceof HeapFile))
+            throw new DBException("bulk load error: table " + tableId + " is not a HeapFile");
+        HeapFile file = (HeapFile) dbFile;
+
+        loadCount = 0;
+        List<Page> batch = new ArrayList<>(BATCH_PAGES);
+        TuplePage page = null;
+        while (child.hasNext()) {
+            Tuple tuple = child.next();
+            if (rename) {
+                Tuple copy = new Tuple(tableDetail);
+                for (int i = 0; i < tableDetail.fieldNumber(); i++)
+                    copy.setField(i, tuple.getField(i));
+                tuple = copy;
+            }
+            if (page == null || !page.hasRoomFor(tuple)) {
+                if (batch.size() == BATCH_PAGES) {
+                    file.appendPages(batch);
+                    batch.clear();
+                }
+                page = file.emptyPage(file.pageCount() + batch.size());
+                batch.add(page);
+            }
+            page.insertTuple(tuple);
+            loadCount++;
+        }
+        file.appendPages(batch);
+        file.force();
+        action = false;
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException {
+        action = false;
+    }
+
+    /**
+     * @return A 1-field tuple containing the number of loaded records, or
+     *         null if called more than once.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DBException {
+        if (action) return null;
+
+        Tuple loaded = new Tuple(tupleDetail);
+        loaded.setField(0, new IntField(loadCount));
+        action = true;
+        return loaded;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child = children[0];
+    }
+}
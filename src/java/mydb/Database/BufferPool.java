@@ -5,31 +5,129 @@ import mydb.Exception.DBException;
 import mydb.Exception.TransactionAbortedException;
 import mydb.TupleDetail.Tuple;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 
-// manages the reading and writing of pages into memory from disk
+/**
+ * manages the reading and writing of pages into memory from disk
+ * <p>
+ * getPage is safe to call from many query threads at once. The page table is
+ * a ConcurrentHashMap, so a hit never takes a global lock; the replacement
+ * policy and the free frame list are guarded by one lock that is only
+ * required when a frame is allocated or evicted. Hits update the policy
+ * opportunistically: when another thread holds the lock the access is not
+ * recorded rather than waited for. A miss installs a loading {@link Frame}
+ * first, so concurrent misses on the same page wait for a single disk read.
+ * <p>
+ * Tables may have different page sizes (see {@link DbFile#getPageSize}).
+ * The pool holds at most numPages pages and at most numPages *
+ * {@link #PAGE_SIZE} bytes of them; a page of a table with larger pages
+ * evicts as many pages as needed to make room for its bytes.
+ * <p>
+ * With offHeap set, pages of {@link HeapFile}s with the default page size
+ * are read into a {@link FrameArena} of direct memory and decoded in place,
+ * so the heap holds only the page objects, not the pool's bytes. An evicted
+ * page copies its bytes to the heap before its frame is reused, which keeps
+ * references to it that outlive the frame valid.
+ * <p>
+ * Pinned pages are never evicted, and a pinned page that is discarded keeps
+ * its frame until it is unpinned. Eviction prefers clean pages; a dirty
+ * victim is only chosen when every unpinned page is dirty, and is written
+ * back (after its log record) before its frame is reused, without holding
+ * the replacement lock. An optional
+ * {@link PageWriter} cleans pages in the background so that this is rare.
+ * Every write back, whether by a flush, by eviction or by the writer, holds
+ * one write lock, so two copies of a page never reach its file out of order.
+ */
 public class BufferPool {
 
-    //Bytes per page
+    //Bytes per page, unless the table says otherwise
     public static final int PAGE_SIZE = 4096;
 
     //Default number of pages passed to the constructor
     public static final int DEFAULT_PAGES = 100;
 
-//    private HashMap<PageId, Page> pages;
+    //当前的缓存页, indexed by frame number; guarded by replacementLock
+    private Frame[] frames;
 
-    //当前的缓存页
-    private LRUCache lruCache;
+    // resident and loading pages
+    private ConcurrentHashMap<PageId, Frame> pageTable;
+
+    // discarded pages that are still pinned, off the page table
+    private final ConcurrentHashMap<PageId, Frame> discarded = new ConcurrentHashMap<>();
+
+    // guarded by replacementLock
+    private ArrayDeque<Integer> freeFrames;
+
+    // bytes of the pages that hold a frame number; guarded by replacementLock
+    private long usedBytes;
+    private final long capacityBytes;
+
+    // guarded by replacementLock
+    private ReplacementPolicy policy;
+
+    // page bytes of the frames when the pool is off-heap, otherwise null
+    private final FrameArena arena;
+
+    private volatile PageWriter pageWriter;
+
+    private final ReentrantLock replacementLock = new ReentrantLock();
+
+    // held while dirty pages are marked clean and written; never held while
+    // waiting for replacementLock
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final ReplacementPolicy.FrameFilter unpinned = new ReplacementPolicy.FrameFilter() {
+        @Override
+        public boolean accept(int frame) {
+            return frames[frame] != null && !frames[frame].isPinned();
+        }
+    };
+
+    private final ReplacementPolicy.FrameFilter cleanUnpinned = new ReplacementPolicy.FrameFilter() {
+        @Override
+        public boolean accept(int frame) {
+            if (!unpinned.accept(frame)) return false;
+            Page page = frames[frame].getPage();
+            return page != null && page.isDirty() == null;
+        }
+    };
 
     public int PAGES_NUM;
 
     // create bufferPool
     public BufferPool(int numPages) {
-//        pages = new HashMap<>(numPages);
+        this(numPages, ReplacementPolicy.Kind.LRU);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and picks the
+     * pages to evict with the given replacement policy.
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind policyKind) {
+        this(numPages, policyKind, false);
+    }
+
+    /**
+     * Creates a BufferPool like {@link #BufferPool(int, ReplacementPolicy.Kind)}
+     * whose frames live in direct memory if offHeap is true.
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind policyKind, boolean offHeap) {
+        arena = offHeap ? new FrameArena(numPages, PAGE_SIZE) : null;
         PAGES_NUM = numPages;
-        lruCache = new LRUCache(PAGES_NUM);
+        capacityBytes = (long) numPages * PAGE_SIZE;
+        frames = new Frame[numPages];
+        pageTable = new ConcurrentHashMap<>(numPages);
+        freeFrames = new ArrayDeque<>(numPages);
+        for (int i = 0; i < numPages; i++)
+            freeFrames.add(i);
+        policy = policyKind.create(numPages);
     }
 
     /**
@@ -49,16 +147,172 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DBException, IOException {
-        if (lruCache != null && lruCache.get(pid)!=null)
-            return lruCache.get(pid);
-        DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
-        HeapPage newPage = (HeapPage) dbFile.readPage(pid);
-        lruCache.put(pid, newPage);
-
-//        if (pages.size() > NUM_PAGES) {
-//            // TODO: implement this
-//        }
-        return newPage;
+        return getPage(tid, pid, perm, false);
+    }
+
+    /**
+     * Same as {@link #getPage(TransactionId, PageId, Permissions)}, with a
+     * hint for the replacement policy.
+     *
+     * @param sequential true if the page is requested by a sequential scan
+     *   and is not expected to be needed again soon; such accesses do not
+     *   make the page look hot to the replacement policy
+     */
+    public  Page getPage(TransactionId tid, PageId pid, Permissions perm, boolean sequential)
+            throws TransactionAbortedException, DBException, IOException {
+        Frame frame = acquire(pid, sequential);
+        unpin(frame);
+        return frame.getPage();
+    }
+
+    /**
+     * Retrieves a page like {@link #getPage(TransactionId, PageId, Permissions, boolean)}
+     * and pins it: the page is not evicted until {@link #unpinPage} has been
+     * called as many times as it was pinned. Callers that keep using a page
+     * after getPage returns (iterators, updates) must pin it, otherwise the
+     * page may be written back and dropped while they still hold it.
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm, boolean sequential)
+            throws TransactionAbortedException, DBException, IOException {
+        return acquire(pid, sequential).getPage();
+    }
+
+    /** Releases one pin taken by {@link #pinPage}. */
+    public void unpinPage(PageId pid) {
+        // pins are counted by page, so a pin of a discarded copy goes first
+        Frame frame = discarded.get(pid);
+        if (frame == null)
+            frame = pageTable.get(pid);
+        if (frame != null)
+            unpin(frame);
+    }
+
+    // gives back the frame of a discarded page once its last user is done
+    void unpin(Frame frame) {
+        if (!frame.unpin()) return;
+        discarded.remove(frame.pid, frame);
+        replacementLock.lock();
+        try {
+            releaseFrame(frame);
+        } finally {
+            replacementLock.unlock();
+        }
+    }
+
+    // returns the frame holding the page, loaded and pinned
+    private Frame acquire(PageId pid, boolean sequential) throws DBException, IOException {
+        for (;;) {
+            Frame frame = pageTable.get(pid);
+            if (frame == null) {
+                Frame loading = new Frame(pid);
+                frame = pageTable.putIfAbsent(pid, loading);
+                if (frame == null) {
+                    load(loading, sequential);
+                    return loading;
+                }
+            }
+            // lost a race with eviction: look the page up again
+            if (!frame.pin()) continue;
+            try {
+                frame.await();
+            } catch (IOException | DBException e) {
+                unpin(frame);
+                throw e;
+            }
+            if (replacementLock.tryLock()) {
+                try {
+                    if (frames[frame.index] == frame)
+                        policy.recordAccess(frame.index, sequential);
+                } finally {
+                    replacementLock.unlock();
+                }
+            }
+            return frame;
+        }
+    }
+
+    // reads the page of a frame this thread has just put in the page table;
+    // the frame is left pinned once the page is loaded
+    private void load(Frame frame, boolean sequential) throws DBException, IOException {
+        frame.pin();
+        try {
+            DbFile dbFile = Database.getCatalog().getDbFile(frame.pid.getTableId());
+            allocateFrame(frame, dbFile.getPageSize());
+            Page newPage;
+            // mapped files are read in place already
+            if (arena != null && dbFile instanceof HeapFile && !(dbFile instanceof MappedHeapFile)
+                    && dbFile.getPageSize() == arena.slotSize()) {
+                newPage = ((HeapFile) dbFile).readPage(frame.pid, arena.slot(frame.index));
+                frame.inArena = true;
+            } else {
+                newPage = dbFile.readPage(frame.pid);
+            }
+            replacementLock.lock();
+            try {
+                frames[frame.index] = frame;
+                policy.recordLoad(frame.index, sequential);
+            } finally {
+                replacementLock.unlock();
+            }
+            frame.loaded(newPage);
+        } catch (IOException | DBException | RuntimeException e) {
+            pageTable.remove(frame.pid, frame);
+            if (frame.index >= 0) {
+                replacementLock.lock();
+                try {
+                    releaseFrame(frame);
+                } finally {
+                    replacementLock.unlock();
+                }
+            }
+            frame.failed(e);
+            frame.unpin();
+            throw e;
+        }
+    }
+
+    // reserves a frame number and the bytes of a page that is about to be read
+    private void allocateFrame(Frame frame, int bytes) throws DBException, IOException {
+        if (bytes > capacityBytes)
+            throw new DBException("a page of " + bytes + " bytes does not fit in the buffer pool");
+        replacementLock.lock();
+        try {
+            while (freeFrames.isEmpty() || usedBytes + bytes > capacityBytes)
+                evictPage();
+            frame.index = freeFrames.poll();
+            frame.bytes = bytes;
+            usedBytes += bytes;
+        } finally {
+            replacementLock.unlock();
+        }
+    }
+
+    // gives back the frame number and bytes of a frame; the caller must hold replacementLock
+    private void releaseFrame(Frame frame) {
+        // the next page read into the slot must not show through this one
+        if (frame.inArena) ((TuplePage) frame.getPage()).detach();
+        freeFrames.add(frame.index);
+        usedBytes -= frame.bytes;
+    }
+
+    /** @return the bytes of the pages currently in the pool */
+    public long getUsedBytes() {
+        replacementLock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            replacementLock.unlock();
+        }
+    }
+
+    /** @return true if the pool keeps its pages in direct memory */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /** Return true if the specified page is currently cached in the buffer pool */
+    public boolean isResident(PageId pid) {
+        return pageTable.containsKey(pid);
     }
 
     /**
@@ -119,7 +373,7 @@ public class BufferPool {
     public void insertTuple(TransactionId transactionId, int tableId, Tuple tuple)
         throws DBException, IOException, TransactionAbortedException {
 
-        HeapFile table = (HeapFile) Database.getCatalog().getDbFile(tableId);
+        DbFile table = Database.getCatalog().getDbFile(tableId);
         table.insertTuple(transactionId, tuple);
         //ArrayList<Page> pageArrayList = table.insertTuple(transactionId, tuple);
 //        for (Page page : pageArrayList) {
@@ -141,7 +395,7 @@ public class BufferPool {
     public  void deleteTuple(TransactionId transactionId, Tuple tuple)
             throws DBException, TransactionAbortedException, IOException {
         int tableId=tuple.getRecordId().getPageId().getTableId();
-        HeapFile table = (HeapFile) Database.getCatalog().getDbFile(tableId);
+        DbFile table = Database.getCatalog().getDbFile(tableId);
         table.deleteTuple(transactionId, tuple);
 //        Page affectedPage = table.deleteTuple(transactionId, tuple);
 //        affectedPage.markDirty(true,transactionId);
@@ -153,43 +407,256 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-
-
+        for (Frame frame : pageTable.values()) {
+            flush(frame);
+        }
     }
 
     /** Remove the specific page id from the buffer pool.
         Needed by the recovery manager to ensure that the
         buffer pool doesn't keep a rolled back page in its
-        cache.
+        cache. A pinned page is read again by the next getPage,
+        but keeps its frame until its users unpin it.
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-	// not necessary for proj1
+        Frame frame = pageTable.remove(pid);
+        if (frame == null) return;
+        try {
+            // a page still being read has no frame number to give back yet
+            frame.await();
+        } catch (IOException | DBException e) {
+            return;
+        }
+        replacementLock.lock();
+        try {
+            if (frames[frame.index] != frame) return;
+            policy.remove(frame.index);
+            frames[frame.index] = null;
+            if (frame.discard())
+                releaseFrame(frame);
+            else
+                discarded.put(pid, frame);
+        } finally {
+            replacementLock.unlock();
+        }
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
-        // some code goes here
-        // not necessary for proj1
+    public synchronized  void flushPage(PageId pid) throws IOException {
+        Frame frame = pageTable.get(pid);
+        if (frame != null)
+            flush(frame);
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for proj1
+        for (Frame frame : pageTable.values()) {
+            Page page = frame.getPage();
+            // TransactionId.equals does not take null
+            TransactionId dirtier = page == null ? null : page.isDirty();
+            if (dirtier != null && tid.equals(dirtier))
+                flush(frame);
+        }
+    }
+
+    // pinned so that eviction cannot drop the page, which is already
+    // marked clean, before it reaches the disk
+    private void flush(Frame frame) throws IOException {
+        if (!frame.pin()) return;
+        try {
+            writeBack(frame.getPage());
+        } catch (DBException e) {
+            throw new IOException(e);
+        } finally {
+            unpin(frame);
+        }
+    }
+
+    /**
+     * Writes a dirty page to its file, logging the update first. The page is
+     * marked clean before its data is copied, so a change made while the
+     * write is in progress dirties it again instead of being lost.
+     * <p>
+     * Does not take the BufferPool monitor, so the background writer and
+     * eviction can call it; writes are serialized by writeLock instead.
+     */
+    private void writeBack(Page page) throws IOException, DBException {
+        if (page == null) return;
+        writeBack(Collections.singletonList(page));
+    }
+
+    /**
+     * Writes back pages of one file whose page numbers are consecutive and
+     * ascending. A HeapFile gets the whole run in one write; pages that
+     * are already clean are written again rather than splitting the run,
+     * unless all of them are, since another writer got there first.
+     * The pages must be pinned by the caller.
+     *
+     * @return the number of write calls issued
+     */
+    int writeBack(List<Page> run) throws IOException, DBException {
+        writeLock.lock();
+        try {
+            // checked under the lock: a page cleaned by a write still in
+            // progress must not be written again until that write is done
+            for (Page page : run) {
+                if (page.isDirty() != null)
+                    return write(run);
+            }
+            return 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // the caller holds writeLock
+    private int write(List<Page> run) throws IOException, DBException {
+        TransactionId[] dirtiers = new TransactionId[run.size()];
+        for (int i = 0; i < run.size(); i++) {
+            dirtiers[i] = run.get(i).isDirty();
+            run.get(i).markDirty(false, null);
+        }
+        try {
+            LogFile log = Database.getLogFile();
+            for (int i = 0; i < run.size(); i++) {
+                if (log != null && dirtiers[i] != null)
+                    log.logWrite(dirtiers[i], run.get(i).getBeforeImage(), run.get(i));
+            }
+            DbFile file = Database.getCatalog().getDbFile(run.get(0).getId().getTableId());
+            if (run.size() > 1 && file instanceof HeapFile) {
+                ((HeapFile) file).writePages(run);
+                return 1;
+            }
+            for (Page page : run)
+                file.writePage(page);
+            return run.size();
+        } catch (IOException | DBException | RuntimeException e) {
+            for (int i = 0; i < run.size(); i++) {
+                if (dirtiers[i] != null)
+                    run.get(i).markDirty(true, dirtiers[i]);
+            }
+            throw e;
+        }
+    }
+
+    /** Frames whose page is loaded and dirty, in no particular order. */
+    List<Frame> dirtyFrames() {
+        List<Frame> dirty = new ArrayList<>();
+        for (Frame frame : pageTable.values()) {
+            Page page = frame.getPage();
+            if (page != null && page.isDirty() != null)
+                dirty.add(frame);
+        }
+        return dirty;
+    }
+
+    /** @return true if a page of the table is dirty in the pool */
+    public boolean hasDirtyPages(int tableId) {
+        for (Frame frame : pageTable.values()) {
+            Page page = frame.getPage();
+            if (frame.pid.getTableId() == tableId && page != null && page.isDirty() != null)
+                return true;
+        }
+        return false;
+    }
+
+    /** Starts a background {@link PageWriter} with the default watermarks. */
+    public PageWriter startPageWriter() throws IOException {
+        return startPageWriter(PageWriter.DEFAULT_HIGH_WATERMARK, PageWriter.DEFAULT_LOW_WATERMARK,
+                PageWriter.DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Starts a background {@link PageWriter} that keeps the share of dirty
+     * pages between the two watermarks. Replaces a writer started earlier.
+     *
+     * @throws IOException if the writer it replaces had failed, see
+     *   {@link #stopPageWriter}
+     */
+    public synchronized PageWriter startPageWriter(double highWatermark, double lowWatermark,
+                                                   long intervalMillis) throws IOException {
+        PageWriter writer = new PageWriter(this, highWatermark, lowWatermark, intervalMillis);
+        stopPageWriter();
+        writer.start();
+        pageWriter = writer;
+        return writer;
+    }
+
+    /**
+     * Stops the background writer, if any; dirty pages stay in the pool.
+     *
+     * @throws IOException if the writer failed to write pages since its
+     *   failure was last reported
+     */
+    public synchronized void stopPageWriter() throws IOException {
+        PageWriter writer = pageWriter;
+        closePageWriter();
+        if (writer == null) return;
+        try {
+            writer.checkFailure();
+        } catch (DBException | RuntimeException e) {
+            throw new IOException("page writer failed", e);
+        }
+    }
+
+    /** Stops the background writer of a pool that is being dropped. */
+    synchronized void closePageWriter() {
+        if (pageWriter == null) return;
+        pageWriter.shutdown();
+        pageWriter = null;
+    }
+
+    /** @return the running background writer, or null */
+    public PageWriter getPageWriter() {
+        return pageWriter;
     }
 
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Pinned pages are never chosen, and a dirty page only when no clean
+     * one is left. The caller must hold replacementLock, which is released
+     * while a dirty page is written; the caller checks again whether it
+     * still needs room.
      */
-    private synchronized  void evictPage() throws DBException {
-        // some code goes here
-        // not necessary for proj1
+    private void evictPage() throws DBException, IOException {
+        for (;;) {
+            int victim = policy.victim(cleanUnpinned);
+            if (victim < 0) {
+                // the background writer is falling behind
+                PageWriter writer = pageWriter;
+                if (writer != null) writer.wakeUp();
+                victim = policy.victim(unpinned);
+            }
+            if (victim < 0) throw new DBException("evictPage error: all pages are pinned");
+            Frame frame = frames[victim];
+            Page page = frame.getPage();
+            if (page.isDirty() != null) {
+                // pinned, no other eviction picks it while it is written;
+                // the page stays readable
+                if (!frame.pin()) continue;
+                replacementLock.unlock();
+                try {
+                    writeBack(page);
+                } finally {
+                    replacementLock.lock();
+                    unpin(frame);
+                }
+                // somebody else may have made room meanwhile
+                if (frames[victim] != frame) return;
+            }
+            // pinned or dirtied again in the meantime: pick again
+            if (page.isDirty() != null || !frame.evict()) continue;
+            policy.remove(victim);
+            pageTable.remove(frame.pid, frame);
+            frames[victim] = null;
+            releaseFrame(frame);
+            return;
+        }
     }
 
 }
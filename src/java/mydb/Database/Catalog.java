@@ -1,7 +1,9 @@
 package mydb.Database;
 
+import mydb.BTreeFile;
 import mydb.DbFile;
 import mydb.HeapFile;
+import mydb.MappedHeapFile;
 import mydb.TupleDetail.TupleDetail;
 import mydb.Type;
 
@@ -69,6 +71,18 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Removes a table from the catalog, e.g. a temporary table an operator
+     * is done with. The file is not closed.
+     */
+    public void removeTable(int tableid) {
+        String name = tableIdNameMap.remove(tableid);
+        if (name != null && Integer.valueOf(tableid).equals(tableNameIdMap.get(name)))
+            tableNameIdMap.remove(name);
+        tableIdFileMap.remove(tableid);
+        tableIdKeyMap.remove(tableid);
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -92,6 +106,16 @@ public class Catalog {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Returns the page size of the specified table
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public int getPageSize(int tableid) throws NoSuchElementException {
+        DbFile result = tableIdFileMap.get(tableid);
+        if(result!=null) return result.getPageSize();
+        throw new NoSuchElementException();
+    }
+
     /**
      * Returns the DbFile that can be used to read the contents of the
      * specified table.
@@ -122,6 +146,13 @@ public class Catalog {
     
     /** Delete all tables from the catalog */
     public void clear() {
+        for (DbFile file : tableIdFileMap.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         tableNameIdMap.clear();
         tableIdFileMap.clear();
         tableIdKeyMap.clear();
@@ -137,7 +168,9 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [option=value ...]
+                //options: storage=heap|mmap|btree pagesize=<bytes, default 4096> hashindex=<field>
+                //a btree table is ordered by its pk field, or by its first field if it has none
                 String name = line.substring(0, line.indexOf("(")).trim();
                 System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -170,7 +203,43 @@ public class Catalog {
                 TupleDetail t = new TupleDetail(typeAr, namesAr);
 
 
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String storage = "heap";
+                int pageSize = BufferPool.PAGE_SIZE;
+                ArrayList<Integer> hashIndexes = new ArrayList<>();
+                String options = line.substring(line.indexOf(")") + 1).trim();
+                for (String option : options.isEmpty() ? new String[0] : options.split("\\s+")) {
+                    String[] kv = option.split("=", 2);
+                    if (kv.length == 2 && kv[0].equals("storage")
+                            && (kv[1].equals("heap") || kv[1].equals("mmap") || kv[1].equals("btree"))) {
+                        storage = kv[1];
+                    } else if (kv.length == 2 && kv[0].equals("pagesize") && kv[1].matches("\\d+")) {
+                        pageSize = Integer.parseInt(kv[1]);
+                    } else if (kv.length == 2 && kv[0].equals("hashindex") && names.contains(kv[1])) {
+                        hashIndexes.add(names.indexOf(kv[1]));
+                    } else {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                DbFile tabHf;
+                try {
+                    if (storage.equals("btree"))
+                        tabHf = new BTreeFile(dataFile, t, Math.max(names.indexOf(primaryKey), 0), pageSize);
+                    else if (storage.equals("mmap"))
+                        tabHf = new MappedHeapFile(dataFile, t, pageSize);
+                    else
+                        tabHf = new HeapFile(dataFile, t, pageSize);
+                    if (!hashIndexes.isEmpty() && !(tabHf instanceof HeapFile))
+                        throw new IllegalArgumentException("hash indexes need heap storage");
+                    for (int field : hashIndexes)
+                        ((HeapFile) tabHf).addIndex(field);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage() + " for table " + name);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("TABLE: " + name + "; attribute: " + t + " ; end; ");
             }
@@ -0,0 +1,62 @@
+package mydb.Database;
+
+/**
+ * CLOCK (second chance) replacement. Every frame carries a reference bit
+ * that a hit sets; the clock hand sweeps the ring of frames, clearing set
+ * bits and stopping at the first occupied frame whose bit is already clear.
+ * A hit only writes one array slot, which is cheaper than relinking a list.
+ * <p>
+ * Sequential accesses leave the reference bit alone, so scanned pages are
+ * reclaimed on the first pass of the hand.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+    private final boolean[] referenced;
+    private final boolean[] occupied;
+    private int occupiedCount;
+    private int hand;
+
+    public ClockPolicy(int numFrames) {
+        referenced = new boolean[numFrames];
+        occupied = new boolean[numFrames];
+        occupiedCount = 0;
+        hand = 0;
+    }
+
+    public void recordLoad(int frame, boolean sequential) {
+        if (!occupied[frame]) {
+            occupied[frame] = true;
+            occupiedCount++;
+        }
+        referenced[frame] = !sequential;
+    }
+
+    public void recordAccess(int frame, boolean sequential) {
+        if (!sequential)
+            referenced[frame] = true;
+    }
+
+    public void remove(int frame) {
+        if (occupied[frame]) {
+            occupied[frame] = false;
+            occupiedCount--;
+        }
+        referenced[frame] = false;
+    }
+
+    public int victim(FrameFilter filter) {
+        if (occupiedCount == 0) return -1;
+        // two full turns are enough: the first clears every reference bit
+        for (int step = 0; step < 2 * occupied.length; step++) {
+            int frame = hand;
+            hand = (hand + 1) % occupied.length;
+            if (!occupied[frame]) continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            if (filter.accept(frame)) return frame;
+        }
+        return -1;
+    }
+}
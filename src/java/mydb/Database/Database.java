@@ -54,13 +54,28 @@ public class Database {
 
     // TODO zhang :delete after the test
     public static BufferPool resetBufferPool(int pages) {
+        _instance._bufferpool.closePageWriter();
         _instance._bufferpool = new BufferPool(pages);
         return _instance._bufferpool;
     }
 
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Kind policy) {
+        _instance._bufferpool.closePageWriter();
+        _instance._bufferpool = new BufferPool(pages, policy);
+        return _instance._bufferpool;
+    }
+
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Kind policy, boolean offHeap) {
+        _instance._bufferpool.closePageWriter();
+        _instance._bufferpool = new BufferPool(pages, policy, offHeap);
+        return _instance._bufferpool;
+    }
+
     // TODO zhang :delete after the test
     //reset the database, used for unit tests only.
     public static void reset() {
+        _instance._bufferpool.closePageWriter();
+        _instance._catalog.clear();
     	_instance = new Database();
     }
 
@@ -0,0 +1,119 @@
+package mydb.Database;
+
+import mydb.Exception.DBException;
+import mydb.Page;
+import mydb.PageId;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffer pool frame: the page table entry for one resident (or loading)
+ * page.
+ * <p>
+ * The thread that installs a Frame in the page table reads the page and then
+ * calls {@link #loaded}; every other thread that misses on the same PageId in
+ * the meantime finds this Frame and waits in {@link #await}, so the page is
+ * read from disk only once.
+ * <p>
+ * The pin count keeps the frame from being evicted while a thread is using
+ * it. Eviction moves the count from 0 to -1 atomically, after which the frame
+ * can no longer be pinned and callers go back to the page table. A frame
+ * discarded while pinned can no longer be pinned either, but keeps counting
+ * its pins down, as -1 - pins, and reaches -1 with the last unpin.
+ */
+class Frame {
+
+    private static final int EVICTED = -1;
+
+    final PageId pid;
+    // frame number in the pool; assigned before the page is read
+    int index = -1;
+    // bytes charged against the pool's budget while the frame holds a number
+    int bytes;
+    // true if the page reads from the pool's off-heap slot of this frame
+    boolean inArena;
+    private volatile Page page;
+    private volatile Exception failure;
+    private final CountDownLatch loadDone = new CountDownLatch(1);
+    private final AtomicInteger pinCount = new AtomicInteger(0);
+
+    Frame(PageId pid) {
+        this.pid = pid;
+    }
+
+    Page getPage() {
+        return page;
+    }
+
+    /** @return false if the frame has been evicted and must not be used */
+    boolean pin() {
+        for (;;) {
+            int pins = pinCount.get();
+            if (pins == EVICTED) return false;
+            if (pinCount.compareAndSet(pins, pins + 1)) return true;
+        }
+    }
+
+    /**
+     * @return true if this was the last pin of a discarded frame, whose
+     *   frame number the caller must now give back
+     */
+    boolean unpin() {
+        for (;;) {
+            int pins = pinCount.get();
+            // unbalanced unpin
+            if (pins == 0 || pins == EVICTED) return false;
+            int next = pins > 0 ? pins - 1 : pins + 1;
+            if (pinCount.compareAndSet(pins, next)) return next == EVICTED;
+        }
+    }
+
+    boolean isPinned() {
+        int pins = pinCount.get();
+        return pins > 0 || pins < EVICTED;
+    }
+
+    /** Claims an unpinned frame for eviction. */
+    boolean evict() {
+        return pinCount.compareAndSet(0, EVICTED);
+    }
+
+    /**
+     * Marks the frame evicted whether or not it is pinned.
+     *
+     * @return true if it was not pinned, so its frame number can be given
+     *   back now; otherwise the last {@link #unpin} returns true
+     */
+    boolean discard() {
+        for (;;) {
+            int pins = pinCount.get();
+            if (pins < 0) return false;
+            if (pinCount.compareAndSet(pins, -1 - pins)) return pins == 0;
+        }
+    }
+
+    void loaded(Page p) {
+        page = p;
+        loadDone.countDown();
+    }
+
+    void failed(Exception e) {
+        failure = e;
+        loadDone.countDown();
+    }
+
+    /** Waits until the loading thread has read the page. */
+    Page await() throws IOException, DBException {
+        try {
+            loadDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for page " + pid.pageNumber());
+        }
+        if (failure instanceof IOException) throw new IOException(failure);
+        if (failure != null) throw new DBException("readPage error: " + failure.getMessage());
+        return page;
+    }
+}
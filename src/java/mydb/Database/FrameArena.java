@@ -0,0 +1,44 @@
+package mydb.Database;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off-heap memory for the frames of a {@link BufferPool}: one slot of
+ * slotSize bytes per frame number, allocated up front as direct buffers.
+ * Pages read into a slot are decoded in place, so the bytes of a large pool
+ * are never seen by the garbage collector.
+ * <p>
+ * A direct buffer holds at most 2GB, so the arena is split into chunks of
+ * whole slots.
+ */
+class FrameArena {
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final ByteBuffer[] chunks;
+    private final int slotSize;
+    private final int slotsPerChunk;
+
+    FrameArena(int slots, int slotSize) {
+        this.slotSize = slotSize;
+        slotsPerChunk = Math.max(1, MAX_CHUNK_BYTES / slotSize);
+        chunks = new ByteBuffer[(slots + slotsPerChunk - 1) / slotsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int n = Math.min(slotsPerChunk, slots - i * slotsPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(n * slotSize);
+        }
+    }
+
+    int slotSize() {
+        return slotSize;
+    }
+
+    /** @return a buffer over the bytes of one frame, position 0 and limit slotSize */
+    ByteBuffer slot(int index) {
+        ByteBuffer chunk = chunks[index / slotsPerChunk].duplicate();
+        int offset = (index % slotsPerChunk) * slotSize;
+        chunk.limit(offset + slotSize);
+        chunk.position(offset);
+        return chunk.slice();
+    }
+}
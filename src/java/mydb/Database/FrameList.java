@@ -0,0 +1,81 @@
+package mydb.Database;
+
+import java.util.Arrays;
+
+/**
+ * An intrusive doubly-linked list of frame indexes. The links live in two int
+ * arrays indexed by frame, so membership tests, unlinking and relinking are
+ * constant time and never allocate. A frame is in at most one list.
+ */
+class FrameList {
+
+    private static final int NIL = -1;
+
+    // the sentinel at index numFrames is the list head: next[sentinel] is the
+    // first frame, prev[sentinel] the last one
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] linked;
+    private final int sentinel;
+    private int size;
+
+    FrameList(int numFrames) {
+        prev = new int[numFrames + 1];
+        next = new int[numFrames + 1];
+        linked = new boolean[numFrames];
+        sentinel = numFrames;
+        Arrays.fill(prev, NIL);
+        Arrays.fill(next, NIL);
+        prev[sentinel] = sentinel;
+        next[sentinel] = sentinel;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int frame) {
+        return linked[frame];
+    }
+
+    /** @return the first frame, or -1 if the list is empty */
+    int first() {
+        return next[sentinel] == sentinel ? NIL : next[sentinel];
+    }
+
+    /** @return the frame after the given one, or -1 at the end of the list */
+    int next(int frame) {
+        return next[frame] == sentinel ? NIL : next[frame];
+    }
+
+    void addFirst(int frame) {
+        remove(frame);
+        linkBefore(next[sentinel], frame);
+    }
+
+    void addLast(int frame) {
+        remove(frame);
+        linkBefore(sentinel, frame);
+    }
+
+    void remove(int frame) {
+        if (!linked[frame]) return;
+        next[prev[frame]] = next[frame];
+        prev[next[frame]] = prev[frame];
+        prev[frame] = NIL;
+        next[frame] = NIL;
+        linked[frame] = false;
+        size--;
+    }
+
+    private void linkBefore(int node, int frame) {
+        int p = prev[node];
+        next[p] = frame;
+        prev[frame] = p;
+        next[frame] = node;
+        prev[node] = frame;
+        linked[frame] = true;
+        size++;
+    }
+}
@@ -0,0 +1,79 @@
+package mydb.Database;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * LRU-K replacement (O'Neil et al.). The victim is the frame whose K-th most
+ * recent access lies furthest in the past; frames that have been touched
+ * fewer than K times count as infinitely old and go first, in LRU order.
+ * Unlike plain LRU a single pass over many pages cannot push out pages that
+ * are referenced repeatedly.
+ * <p>
+ * Candidates are kept in a tree ordered by backward K-distance, so each
+ * access and each victim lookup costs O(log n). Sequential re-reads do not
+ * add to a page's history.
+ */
+public class LruKPolicy implements ReplacementPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    // history[frame][0] is the most recent access time, history[frame][k-1]
+    // the K-th most recent; 0 means "never"
+    private final long[][] history;
+    private long clock;
+    private final TreeSet<Integer> candidates;
+
+    public LruKPolicy(int numFrames, int k) {
+        if (k < 1) throw new IllegalArgumentException("K must be at least 1");
+        this.k = k;
+        history = new long[numFrames][k];
+        clock = 0;
+        candidates = new TreeSet<>(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer f1, Integer f2) {
+                int cmp = Long.compare(kthAccess(f1), kthAccess(f2));
+                if (cmp != 0) return cmp;
+                cmp = Long.compare(history[f1][0], history[f2][0]);
+                return cmp != 0 ? cmp : Integer.compare(f1, f2);
+            }
+        });
+    }
+
+    public void recordLoad(int frame, boolean sequential) {
+        candidates.remove(frame);
+        for (int i = 0; i < k; i++)
+            history[frame][i] = 0;
+        touch(frame);
+    }
+
+    public void recordAccess(int frame, boolean sequential) {
+        if (sequential) return;
+        candidates.remove(frame);
+        touch(frame);
+    }
+
+    public void remove(int frame) {
+        candidates.remove(frame);
+    }
+
+    public int victim(FrameFilter filter) {
+        for (int frame : candidates) {
+            if (filter.accept(frame)) return frame;
+        }
+        return -1;
+    }
+
+    private long kthAccess(int frame) {
+        return history[frame][k - 1];
+    }
+
+    // the frame must not be in the tree while its key changes
+    private void touch(int frame) {
+        long[] h = history[frame];
+        System.arraycopy(h, 0, h, 1, k - 1);
+        h[0] = ++clock;
+        candidates.add(frame);
+    }
+}
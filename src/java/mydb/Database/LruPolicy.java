@@ -0,0 +1,42 @@
+package mydb.Database;
+
+/**
+ * Least-recently-used replacement kept as an intrusive doubly-linked list
+ * over frame indexes (see {@link FrameList}), so a hit is a constant-time
+ * unlink/relink and never allocates.
+ * <p>
+ * Pages read by a sequential scan are queued at the LRU end instead of the
+ * MRU end, so a scan recycles its own frames rather than the whole pool.
+ */
+public class LruPolicy implements ReplacementPolicy {
+
+    // first() is the least recently used frame
+    private final FrameList list;
+
+    public LruPolicy(int numFrames) {
+        list = new FrameList(numFrames);
+    }
+
+    public void recordLoad(int frame, boolean sequential) {
+        if (sequential)
+            list.addFirst(frame);
+        else
+            list.addLast(frame);
+    }
+
+    public void recordAccess(int frame, boolean sequential) {
+        if (!sequential || !list.contains(frame))
+            list.addLast(frame);
+    }
+
+    public void remove(int frame) {
+        list.remove(frame);
+    }
+
+    public int victim(FrameFilter filter) {
+        for (int frame = list.first(); frame >= 0; frame = list.next(frame)) {
+            if (filter.accept(frame)) return frame;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,233 @@
+package mydb.Database;
+
+import mydb.Exception.DBException;
+import mydb.Page;
+import mydb.PageId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background flusher for the {@link BufferPool}.
+ * <p>
+ * Once the share of dirty pages in the pool reaches the high watermark, the
+ * writer cleans pages until the share is back down to the low watermark, so
+ * eviction almost always finds a clean frame and query threads rarely wait
+ * for a write. Dirty pages are written in PageId order, and a run of
+ * consecutive page numbers of the same file goes to disk as a single write
+ * (see {@link BufferPool#writeBack(List)}).
+ * <p>
+ * The writer wakes up every intervalMillis, and as soon as eviction had to
+ * settle for a dirty victim. Pages are pinned while they are written, so
+ * they cannot be evicted before they are on disk.
+ * <p>
+ * A round that fails leaves its pages dirty. The failure is kept, see
+ * {@link #getFailure}, and thrown by the next {@link #flushIfNeeded} or
+ * {@link BufferPool#stopPageWriter}.
+ */
+public class PageWriter implements Runnable {
+
+    public static final double DEFAULT_HIGH_WATERMARK = 0.5;
+    public static final double DEFAULT_LOW_WATERMARK = 0.25;
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    // dirty pages are written in file order, so runs of adjacent pages meet
+    private static final Comparator<Frame> PAGE_ORDER = new Comparator<Frame>() {
+        @Override
+        public int compare(Frame f1, Frame f2) {
+            int cmp = Integer.compare(f1.pid.getTableId(), f2.pid.getTableId());
+            return cmp != 0 ? cmp : Integer.compare(f1.pid.pageNumber(), f2.pid.pageNumber());
+        }
+    };
+
+    private final BufferPool pool;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final long intervalMillis;
+
+    private final Object wakeup = new Object();
+    private boolean wakeupPending;
+    private volatile boolean running;
+    private Thread thread;
+
+    private final AtomicLong pagesFlushed = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private long startNanos;
+
+    private volatile Exception failure;
+    // the failure of the background thread nobody has been told about
+    private final AtomicReference<Exception> unreported = new AtomicReference<>();
+
+    /**
+     * @param highWatermark share of dirty pages (0..1) at which flushing starts
+     * @param lowWatermark share of dirty pages at which flushing stops
+     * @param intervalMillis how often the pool is checked once started
+     */
+    public PageWriter(BufferPool pool, double highWatermark, double lowWatermark, long intervalMillis) {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > 1)
+            throw new IllegalArgumentException("watermarks must satisfy 0 <= low < high <= 1");
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        this.pool = pool;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.intervalMillis = intervalMillis;
+        startNanos = System.nanoTime();
+    }
+
+    synchronized void start() {
+        running = true;
+        startNanos = System.nanoTime();
+        thread = new Thread(this, "page-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void shutdown() {
+        running = false;
+        if (thread == null) return;
+        wakeUp();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /** Asks for a flush round now instead of at the next interval. */
+    void wakeUp() {
+        synchronized (wakeup) {
+            wakeupPending = true;
+            wakeup.notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                flushRound();
+            } catch (IOException | DBException | RuntimeException e) {
+                // the pages stay dirty; eviction writes them if it has to
+                failure = e;
+                unreported.set(e);
+            }
+            synchronized (wakeup) {
+                try {
+                    if (!wakeupPending && running)
+                        wakeup.wait(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                wakeupPending = false;
+            }
+        }
+    }
+
+    /**
+     * Runs one flush round: if the pool is at or above the high watermark,
+     * writes dirty pages until it is down to the low watermark. A failure
+     * of the background thread that has not been reported yet is thrown
+     * instead.
+     *
+     * @return the number of pages written
+     */
+    public int flushIfNeeded() throws IOException, DBException {
+        checkFailure();
+        try {
+            return flushRound();
+        } catch (IOException | DBException | RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Throws the last failure of the background thread, once.
+     */
+    void checkFailure() throws IOException, DBException {
+        Exception e = unreported.getAndSet(null);
+        if (e instanceof IOException) throw (IOException) e;
+        if (e instanceof DBException) throw (DBException) e;
+        if (e != null) throw (RuntimeException) e;
+    }
+
+    /** @return the last exception a flush round failed with, or null */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    private int flushRound() throws IOException, DBException {
+        List<Frame> dirty = pool.dirtyFrames();
+        int capacity = pool.PAGES_NUM;
+        if (dirty.isEmpty() || dirty.size() < highWatermark * capacity) return 0;
+        int toFlush = dirty.size() - (int) (lowWatermark * capacity);
+        Collections.sort(dirty, PAGE_ORDER);
+        return flush(dirty.subList(0, Math.min(toFlush, dirty.size())));
+    }
+
+    // frames are in PageId order
+    private int flush(List<Frame> frames) throws IOException, DBException {
+        List<Frame> pinned = new ArrayList<>(frames.size());
+        for (Frame frame : frames) {
+            if (frame.pin()) pinned.add(frame);
+        }
+        int flushed = 0;
+        try {
+            List<Page> run = new ArrayList<>();
+            PageId last = null;
+            for (Frame frame : pinned) {
+                PageId pid = frame.pid;
+                if (last != null && (pid.getTableId() != last.getTableId()
+                        || pid.pageNumber() != last.pageNumber() + 1)) {
+                    flushed += writeRun(run);
+                    run.clear();
+                }
+                run.add(frame.getPage());
+                last = pid;
+            }
+            flushed += writeRun(run);
+        } finally {
+            for (Frame frame : pinned)
+                pool.unpin(frame);
+        }
+        return flushed;
+    }
+
+    private int writeRun(List<Page> run) throws IOException, DBException {
+        if (run.isEmpty()) return 0;
+        int written = pool.writeBack(run);
+        // another writer cleaned the whole run since it was listed
+        if (written == 0) return 0;
+        writes.addAndGet(written);
+        pagesFlushed.addAndGet(run.size());
+        return run.size();
+    }
+
+    /** Pages written by this writer since it was started. */
+    public long getPagesFlushed() {
+        return pagesFlushed.get();
+    }
+
+    /** Write calls issued to the files; lower than pages flushed when runs are coalesced. */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /** Dirty pages currently waiting in the pool. */
+    public int getBacklog() {
+        return pool.dirtyFrames().size();
+    }
+
+    /** Average flush throughput since the writer was started, in pages per second. */
+    public double getPagesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? pagesFlushed.get() / seconds : 0;
+    }
+}
@@ -0,0 +1,74 @@
+package mydb.Database;
+
+/**
+ * ReplacementPolicy decides which buffer pool frame is reused when the pool
+ * is full.
+ * <p>
+ * Frames are identified by their index in the pool (0 .. numFrames-1), so an
+ * implementation can keep its bookkeeping in plain arrays and never has to
+ * search for a page: every call below is O(1) for {@link LruPolicy},
+ * {@link ClockPolicy} and {@link TwoQueuePolicy}, and O(log n) for
+ * {@link LruKPolicy}.
+ * <p>
+ * Accesses flagged as <i>sequential</i> come from a table scan that will not
+ * come back to the page soon. Policies should not let them count as evidence
+ * that a page is hot, so that one large scan cannot flush the working set.
+ * <p>
+ * Implementations are not thread safe; the buffer pool serializes calls.
+ *
+ * @see BufferPool
+ */
+public interface ReplacementPolicy {
+
+    /** The policies the buffer pool can be constructed with. */
+    enum Kind {
+        LRU, CLOCK, LRU_K, TWO_Q;
+
+        public ReplacementPolicy create(int numFrames) {
+            switch (this) {
+                case CLOCK:
+                    return new ClockPolicy(numFrames);
+                case LRU_K:
+                    return new LruKPolicy(numFrames, LruKPolicy.DEFAULT_K);
+                case TWO_Q:
+                    return new TwoQueuePolicy(numFrames);
+                default:
+                    return new LruPolicy(numFrames);
+            }
+        }
+    }
+
+    /** Decides whether a tracked frame may be evicted right now. */
+    interface FrameFilter {
+        boolean accept(int frame);
+    }
+
+    /** Accepts every frame. */
+    FrameFilter ANY_FRAME = new FrameFilter() {
+        @Override
+        public boolean accept(int frame) {
+            return true;
+        }
+    };
+
+    /**
+     * A new page has been read into the frame; any history the policy kept
+     * about the frame's previous page is discarded.
+     */
+    void recordLoad(int frame, boolean sequential);
+
+    /** The page held by the frame has been requested again (a cache hit). */
+    void recordAccess(int frame, boolean sequential);
+
+    /** The frame has been emptied and must no longer be chosen as a victim. */
+    void remove(int frame);
+
+    /**
+     * Chooses the frame to evict next, skipping frames the filter rejects
+     * (for example, frames that are pinned). The frame stays tracked until
+     * the caller actually empties it through {@link #remove}.
+     *
+     * @return the frame index, or -1 if no acceptable frame holds a page
+     */
+    int victim(FrameFilter filter);
+}
@@ -0,0 +1,62 @@
+package mydb.Database;
+
+/**
+ * 2Q replacement (Johnson and Shasha), in its simplified form with a
+ * resident probationary queue.
+ * <p>
+ * A newly read page enters the probationary FIFO queue. Only a second,
+ * non-sequential reference while it is still resident promotes it to the
+ * protected LRU queue. Victims come from the probationary queue whenever it
+ * holds more than its share of the pool, so pages streamed through by a
+ * sequential scan only ever displace each other and the protected hot set
+ * survives the scan.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+
+    // fraction of the pool the probationary queue may use before the
+    // protected queue has to give up frames
+    static final double PROBATION_SHARE = 0.25;
+
+    private final FrameList probation;
+    private final FrameList protect;
+    private final int probationTarget;
+
+    public TwoQueuePolicy(int numFrames) {
+        probation = new FrameList(numFrames);
+        protect = new FrameList(numFrames);
+        probationTarget = Math.max(1, (int) (numFrames * PROBATION_SHARE));
+    }
+
+    public void recordLoad(int frame, boolean sequential) {
+        protect.remove(frame);
+        probation.addLast(frame);
+    }
+
+    public void recordAccess(int frame, boolean sequential) {
+        if (protect.contains(frame)) {
+            protect.addLast(frame);
+        } else if (!sequential) {
+            probation.remove(frame);
+            protect.addLast(frame);
+        }
+    }
+
+    public void remove(int frame) {
+        probation.remove(frame);
+        protect.remove(frame);
+    }
+
+    public int victim(FrameFilter filter) {
+        FrameList preferred = probation.size() > probationTarget ? probation : protect;
+        FrameList other = preferred == probation ? protect : probation;
+        int frame = firstAccepted(preferred, filter);
+        return frame >= 0 ? frame : firstAccepted(other, filter);
+    }
+
+    private static int firstAccepted(FrameList list, FrameFilter filter) {
+        for (int frame = list.first(); frame >= 0; frame = list.next(frame)) {
+            if (filter.accept(frame)) return frame;
+        }
+        return -1;
+    }
+}
@@ -36,6 +36,12 @@ public interface DbFile extends Serializable {
      */
     public void writePage(Page p) throws IOException, DBException;
 
+    /**
+     * Releases the operating system resources (file handles) held by this
+     * file. Implementations may reopen the file if it is used again.
+     */
+    public void close() throws IOException;
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -92,4 +98,10 @@ public interface DbFile extends Serializable {
      * @return TupleDesc of this DbFile.
      */
     public TupleDetail getTupleDetail();
+
+    /**
+     * Returns the size in bytes of the pages of this file. The buffer pool
+     * charges each cached page this many bytes.
+     */
+    public int getPageSize();
 }
@@ -0,0 +1,277 @@
+package mydb;
+
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Returns the tuples of its child sorted on one field, with an external
+ * merge sort: up to {@link #MEMORY} bytes of tuples are sorted at a time,
+ * and if the child does not fit, each sorted run but the last is written to
+ * a {@link SpillFile}. The runs are merged with a priority queue as tuples
+ * are fetched, after merging groups of {@link #MERGE_FANIN} runs into longer
+ * ones first if there are more. Equal tuples keep the order of the child.
+ * <p>
+ * The child is read once, when the operator is opened; rewind merges the
+ * runs again. The run files are deleted on close, and when opening or
+ * merging fails.
+ */
+public class ExternalSort extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Bytes of tuples sorted in memory at a time, counted by {@link TupleDetail#getSize}. */
+    public static final int MEMORY = 4 * 1024 * 1024;
+
+    /** Runs merged at once; each needs a page of memory while merging. */
+    public static final int MERGE_FANIN = 64;
+
+    private DbIterator child;
+    private final int sortField;
+    private final boolean asc;
+    private final int memory;
+    private final Comparator<Tuple> order;
+    // the run still in memory, sorted; the child's last tuples
+    private List<Tuple> lastRun;
+    private List<SpillFile> runs;
+    // every run file written, for deleting them
+    private List<SpillFile> files;
+    private PriorityQueue<Run> merge;
+    private int spilledRuns;
+    private long spilledBytes;
+
+    public ExternalSort(int sortField, boolean asc, DbIterator child) {
+        this(sortField, asc, child, MEMORY);
+    }
+
+    /**
+     * @param memory bytes of tuples sorted in memory at a time
+     */
+    public ExternalSort(int sortField, boolean asc, DbIterator child, int memory) {
+        this.child = child;
+        this.sortField = sortField;
+        this.asc = asc;
+        this.memory = memory;
+        order = new TupleComparator(sortField, asc);
+    }
+
+    public int getSortField() {
+        return sortField;
+    }
+
+    public boolean isASC() {
+        return asc;
+    }
+
+    public TupleDetail getTupleDetail() {
+        return child.getTupleDetail();
+    }
+
+    /**
+     * @return the number of run files written since the operator was
+     *   opened, including those of intermediate merges; 0 if the child fit
+     *   in memory
+     */
+    public int spilledRuns() {
+        return spilledRuns;
+    }
+
+    /** @return the bytes of the run files counted by {@link #spilledRuns} */
+    public long spilledBytes() {
+        return spilledBytes;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        child.open();
+        boolean sorted = false;
+        try {
+            sortRuns();
+            startMerge();
+            sorted = true;
+        } finally {
+            child.close();
+            if (!sorted) close();
+        }
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (files != null) {
+            for (SpillFile file : files)
+                file.delete();
+        }
+        files = null;
+        runs = null;
+        lastRun = null;
+        merge = null;
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        boolean started = false;
+        try {
+            startMerge();
+            started = true;
+        } finally {
+            if (!started) close();
+        }
+    }
+
+    // reads the child, writing every full run to a file
+    private void sortRuns() throws DBException, TransactionAbortedException, IOException {
+        runs = new ArrayList<>();
+        files = new ArrayList<>();
+        spilledRuns = 0;
+        spilledBytes = 0;
+        int size = child.getTupleDetail().getSize();
+        List<Tuple> run = new ArrayList<>();
+        long bytes = 0;
+        while (child.hasNext()) {
+            if (bytes + size > memory && !run.isEmpty()) {
+                runs.add(spill(sorted(run)));
+                run = new ArrayList<>();
+                bytes = 0;
+            }
+            run.add(child.next());
+            bytes += size;
+        }
+        lastRun = sorted(run);
+        // keep the memory a merge needs bounded
+        while (runs.size() >= MERGE_FANIN) {
+            List<SpillFile> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MERGE_FANIN) {
+                List<SpillFile> group = runs.subList(i, Math.min(i + MERGE_FANIN, runs.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                PriorityQueue<Run> queue = queue(group, null);
+                SpillFile out = newFile();
+                Tuple t;
+                while ((t = poll(queue)) != null)
+                    out.add(t);
+                out.finish();
+                spilledRuns++;
+                spilledBytes += out.bytes();
+                for (SpillFile in : group)
+                    in.delete();
+                merged.add(out);
+            }
+            runs = merged;
+        }
+    }
+
+    private List<Tuple> sorted(List<Tuple> run) {
+        // a stable sort, so equal tuples stay in the child's order
+        Collections.sort(run, order);
+        return run;
+    }
+
+    private SpillFile newFile() throws IOException {
+        SpillFile file = new SpillFile(getTupleDetail());
+        files.add(file);
+        return file;
+    }
+
+    private SpillFile spill(List<Tuple> run) throws DBException, IOException {
+        SpillFile file = newFile();
+        for (Tuple t : run)
+            file.add(t);
+        file.finish();
+        spilledRuns++;
+        spilledBytes += file.bytes();
+        return file;
+    }
+
+    private void startMerge() throws DBException, TransactionAbortedException, IOException {
+        merge = queue(runs, lastRun);
+    }
+
+    /** @return a queue holding the first tuple of every run that has one */
+    private PriorityQueue<Run> queue(List<SpillFile> files, List<Tuple> inMemory)
+            throws DBException, TransactionAbortedException, IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>(files.size() + 1);
+        for (int i = 0; i < files.size(); i++) {
+            DbFileIterator it = files.get(i).iterator();
+            it.open();
+            Run run = new Run(i, it, null);
+            if (run.advance()) queue.add(run);
+        }
+        // last, so it comes after the files among equal tuples
+        if (inMemory != null) {
+            Run run = new Run(files.size(), null, inMemory.iterator());
+            if (run.advance()) queue.add(run);
+        }
+        return queue;
+    }
+
+    private Tuple poll(PriorityQueue<Run> queue) throws DBException, TransactionAbortedException, IOException {
+        Run run = queue.poll();
+        if (run == null) return null;
+        Tuple t = run.head;
+        if (run.advance()) queue.add(run);
+        return t;
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        if (merge == null) return null;
+        boolean polled = false;
+        try {
+            Tuple t = poll(merge);
+            polled = true;
+            return t;
+        } finally {
+            if (!polled) close();
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] {child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child = children[0];
+    }
+
+    /** The next tuple of one sorted run, and the rest of it. */
+    private class Run implements Comparable<Run> {
+        // the position of the run in the child, for ties
+        final int index;
+        final DbFileIterator file;
+        final Iterator<Tuple> memory;
+        Tuple head;
+
+        Run(int index, DbFileIterator file, Iterator<Tuple> memory) {
+            this.index = index;
+            this.file = file;
+            this.memory = memory;
+        }
+
+        // moves head to the next tuple; false at the end of the run
+        boolean advance() throws DBException, TransactionAbortedException, IOException {
+            if (file != null) {
+                head = file.hasNext() ? file.next() : null;
+                if (head == null) file.close();
+            } else {
+                head = memory.hasNext() ? memory.next() : null;
+            }
+            return head != null;
+        }
+
+        public int compareTo(Run o) {
+            int c = order.compare(head, o.head);
+            return c != 0 ? c : Integer.compare(index, o.index);
+        }
+    }
+}
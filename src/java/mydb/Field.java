@@ -12,6 +12,10 @@ public interface Field extends Serializable {
     // use dataoutputsream to write the dos into disk
     void serialize(DataOutputStream dos) throws IOException;
 
+    // same bytes as serialize(dos), written into dest starting at offset;
+    // used on the page write path, where it must not allocate
+    void serialize(byte[] dest, int offset);
+
     // define hashCode of tuples to compare value
     int hashCode();
 
@@ -0,0 +1,134 @@
+package mydb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Free-space map of a {@link HeapFile}: the number of free tuple slots on
+ * each page, so insertTuple can go straight to a page with room instead of
+ * reading every page of the file.
+ * <p>
+ * The counts are hints. A page whose count is not known yet (the map was
+ * missing, or the file grew behind its back) counts as possibly free, and
+ * the caller reports the real count after looking at the page. A page with
+ * room is found in amortized constant time: pages below {@code searchFrom}
+ * are all known to be full, and appends only ever fill the last pages.
+ * <p>
+ * The map is kept in a sidecar file next to the table ({@code <table>.fsm})
+ * and written back when the table is closed. A stale or damaged sidecar only
+ * costs extra page reads, never a wrong insert.
+ */
+public class FreeSpaceMap {
+
+    /** Count of a page that has not been looked at. */
+    public static final int UNKNOWN = -1;
+
+    // "FSM1"
+    private static final int MAGIC = 0x46534d31;
+
+    private final File sidecar;
+    private short[] free;
+    private int pages;
+    // pages that may have a free slot: known free or unknown
+    private final BitSet candidates = new BitSet();
+    // no candidate below this page
+    private int searchFrom;
+    private boolean dirty;
+
+    /**
+     * Loads the map stored in sidecar, or starts with every page unknown.
+     *
+     * @param pageCount the number of pages the table has now
+     */
+    public FreeSpaceMap(File sidecar, int pageCount) {
+        this.sidecar = sidecar;
+        free = new short[Math.max(pageCount, 16)];
+        Arrays.fill(free, (short) UNKNOWN);
+        pages = pageCount;
+        if (sidecar.exists()) {
+            try {
+                load(pageCount);
+            } catch (IOException e) {
+                // fall back to learning the counts again
+                Arrays.fill(free, (short) UNKNOWN);
+            }
+        }
+        for (int i = 0; i < pages; i++) {
+            if (free[i] != 0) candidates.set(i);
+        }
+        searchFrom = 0;
+    }
+
+    private void load(int pageCount) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a free space map: " + sidecar);
+            int stored = in.readInt();
+            // pages the table has lost are ignored, new ones stay unknown
+            for (int i = 0; i < stored; i++) {
+                short count = in.readShort();
+                if (i < pageCount) free[i] = count;
+            }
+        }
+    }
+
+    /**
+     * @return a page that may have a free slot, or -1 if every page is
+     *   known to be full
+     */
+    public synchronized int pageWithSpace() {
+        int page = candidates.nextSetBit(searchFrom);
+        if (page < 0 || page >= pages) {
+            searchFrom = pages;
+            return -1;
+        }
+        searchFrom = page;
+        return page;
+    }
+
+    /** Records the number of free slots of a page; pageNo may be a new page. */
+    public synchronized void update(int pageNo, int freeSlots) {
+        if (pageNo >= free.length) {
+            int oldLength = free.length;
+            free = Arrays.copyOf(free, Math.max(pageNo + 1, oldLength * 2));
+            Arrays.fill(free, oldLength, free.length, (short) UNKNOWN);
+        }
+        for (int i = pages; i < pageNo; i++)
+            candidates.set(i);
+        pages = Math.max(pages, pageNo + 1);
+        short count = (short) Math.min(freeSlots, Short.MAX_VALUE);
+        if (free[pageNo] == count) return;
+        free[pageNo] = count;
+        dirty = true;
+        if (count != 0) {
+            candidates.set(pageNo);
+            searchFrom = Math.min(searchFrom, pageNo);
+        } else {
+            candidates.clear(pageNo);
+        }
+    }
+
+    /** @return the free slots recorded for the page, or {@link #UNKNOWN} */
+    public synchronized int freeSlots(int pageNo) {
+        return pageNo < pages ? free[pageNo] : UNKNOWN;
+    }
+
+    /** Writes the map to its sidecar file if it changed since it was loaded. */
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(pages);
+            for (int i = 0; i < pages; i++)
+                out.writeShort(free[i]);
+        }
+        dirty = false;
+    }
+}
@@ -0,0 +1,484 @@
+package mydb;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Secondary index on one field of a {@link HeapFile}: an extendible hash
+ * table from the hash of a field value to the RecordIds of the tuples that
+ * have it. The HeapFile keeps it up to date as tuples are inserted and
+ * deleted; see {@link HeapFile#addIndex}.
+ * <p>
+ * The index lives in a sidecar file next to the table
+ * ({@code <table>.<field>.hash}) of 4 KB pages. Page 0 is a header, every
+ * other page is a bucket, an overflow page of a bucket, or free. A bucket
+ * holds (hash, page, slot) entries and splits when it is full, doubling the
+ * directory if it has to; a bucket whose entries all have the same hash
+ * (one value on many tuples) grows a chain of overflow pages instead.
+ * Buckets are not merged again when entries are deleted.
+ * <p>
+ * The directory is not stored: every bucket records its depth and the hash
+ * bits it stands for, and the directory is rebuilt from them when the index
+ * is opened. The header records whether the index was closed cleanly and the
+ * size and time of the table when it was; if anything does not match, the
+ * index is rebuilt from the table.
+ * <p>
+ * Index pages are written straight to the file, not through the BufferPool
+ * or the log, so the index can run ahead of the table's pages on disk. The
+ * first change after opening clears the clean mark, and close only sets it
+ * again if the BufferPool holds no dirty page of the table; an index that
+ * was open, or closed before the table reached the disk, when the process
+ * stopped is rebuilt. Lookups read every tuple an entry points at and check
+ * its value, skipping entries past the end of the table or on empty slots.
+ */
+public class HashIndex {
+
+    // "HIX1"
+    private static final int MAGIC = 0x48495831;
+    static final int PAGE_SIZE = 4096;
+    // [depth][hash bits][entry count][next overflow page]
+    private static final int BUCKET_HEADER = 16;
+    // [hash][page number][slot]
+    private static final int ENTRY_SIZE = 12;
+    /** Entries that fit on one bucket page. */
+    public static final int BUCKET_CAPACITY = (PAGE_SIZE - BUCKET_HEADER) / ENTRY_SIZE;
+    // the depth field of pages that are not the first page of a bucket
+    private static final int OVERFLOW = -1;
+    private static final int FREE = -2;
+    // past this many hash bits a full bucket only grows overflow pages
+    private static final int MAX_DEPTH = 24;
+
+    private final HeapFile table;
+    private final int field;
+    private final File file;
+    // null until the index is opened
+    private FileChannel channel;
+    // bucket page for each value of the low globalDepth hash bits
+    private int[] directory;
+    private int globalDepth;
+    private int pageCount;
+    private final ArrayDeque<Integer> freePages = new ArrayDeque<>();
+    // whether the header on disk says the index matches the table
+    private boolean clean;
+    private final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+
+    /**
+     * The index is opened, or built, the first time it is used, since
+     * reading the table needs the table to be in the catalog.
+     */
+    HashIndex(HeapFile table, int field) {
+        this.table = table;
+        this.field = field;
+        this.file = new File(table.getFile().getPath() + "." + field + ".hash");
+    }
+
+    public int getField() {
+        return field;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Adds the entry of a tuple that was inserted into the table. */
+    public synchronized void insert(Field value, RecordId rid) throws IOException {
+        open();
+        markChanged();
+        int hash = hash(value);
+        for (;;) {
+            int bucket = directory[hash & (directory.length - 1)];
+            Chain chain = readChain(bucket);
+            if (chain.size >= BUCKET_CAPACITY && chain.canSplit()) {
+                split(bucket, chain);
+                continue;
+            }
+            chain.add(hash, rid.getPageId().pageNumber(), rid.tupleno());
+            // only the page the entry went to, and the one before if that
+            // page is new, change
+            int from = (chain.size - 1) / BUCKET_CAPACITY;
+            if (from >= chain.pages.size()) from--;
+            writeChain(chain, from);
+            return;
+        }
+    }
+
+    /** Removes the entry of a tuple that was deleted from the table, if there is one. */
+    public synchronized void delete(Field value, RecordId rid) throws IOException {
+        open();
+        markChanged();
+        int hash = hash(value);
+        Chain chain = readChain(directory[hash & (directory.length - 1)]);
+        int pageNo = rid.getPageId().pageNumber();
+        for (int i = 0; i < chain.size; i++) {
+            if (chain.hashes[i] == hash && chain.pageNos[i] == pageNo && chain.slots[i] == rid.tupleno()) {
+                chain.remove(i);
+                writeChain(chain, i / BUCKET_CAPACITY);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the RecordIds of the tuples whose field may be equal to value;
+     *   values with the same hash are not told apart
+     */
+    public synchronized List<RecordId> lookup(Field value) throws IOException {
+        open();
+        int hash = hash(value);
+        Chain chain = readChain(directory[hash & (directory.length - 1)]);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < chain.size; i++) {
+            if (chain.hashes[i] == hash)
+                rids.add(new RecordId(new HeapPageId(table.getId(), chain.pageNos[i]), chain.slots[i]));
+        }
+        return rids;
+    }
+
+    /**
+     * @return the tuples of the table whose field is equal to value, read
+     *   through the buffer pool
+     */
+    public DbFileIterator iterator(TransactionId tid, Field value) {
+        return new LookupIterator(tid, value);
+    }
+
+    /**
+     * Closes the index file, marking the index as matching the table unless
+     * changes to the table are still in the BufferPool only.
+     */
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        // otherwise a crash before they are written leaves the table as it
+        // was when the index is closed, and the index would be trusted
+        writeHeader(!Database.getBufferPool().hasDirtyPages(table.getId()));
+        channel.close();
+        channel = null;
+    }
+
+    /** Spreads the bits of the field's hash code over the low bits the directory uses. */
+    static int hash(Field value) {
+        return Utility.mixHash(value.hashCode());
+    }
+
+    /**
+     * Opens the index file, building the index from the table if it is
+     * missing or stale. HeapFile calls this before it changes a page, so a
+     * build does not see the change that is about to be added.
+     */
+    synchronized void open() throws IOException {
+        if (channel != null) return;
+        boolean existed = file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        try {
+            if (existed && isCurrent()) {
+                try {
+                    loadDirectory();
+                    return;
+                } catch (IOException e) {
+                    // a damaged index is built again
+                }
+            }
+            rebuild();
+        } catch (IOException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+    }
+
+    // whether the header says the index was closed cleanly when the table
+    // looked as it does now
+    private boolean isCurrent() throws IOException {
+        if (channel.size() < 2 * PAGE_SIZE) return false;
+        readPage(0);
+        return buffer.getInt(0) == MAGIC && buffer.getInt(4) == field && buffer.getInt(8) == 1
+                && buffer.getLong(12) == table.getFile().length()
+                && buffer.getLong(20) == table.getFile().lastModified();
+    }
+
+    private void loadDirectory() throws IOException {
+        freePages.clear();
+        pageCount = (int) (channel.size() / PAGE_SIZE);
+        List<int[]> buckets = new ArrayList<>();
+        globalDepth = 0;
+        for (int p = 1; p < pageCount; p++) {
+            readPage(p);
+            int depth = buffer.getInt(0);
+            if (depth == FREE) {
+                freePages.add(p);
+            } else if (depth >= 0) {
+                buckets.add(new int[] {p, depth, buffer.getInt(4)});
+                globalDepth = Math.max(globalDepth, depth);
+            }
+        }
+        directory = new int[1 << globalDepth];
+        for (int[] bucket : buckets) {
+            for (int i = bucket[2]; i < directory.length; i += 1 << bucket[1])
+                directory[i] = bucket[0];
+        }
+        clean = true;
+        for (int p : directory) {
+            if (p == 0) throw new IOException("corrupt hash index " + file);
+        }
+    }
+
+    // starts an empty index and adds every tuple of the table to it
+    private void rebuild() throws IOException {
+        channel.truncate(0);
+        freePages.clear();
+        clean = false;
+        writeHeader(false);
+        pageCount = 2;
+        globalDepth = 0;
+        directory = new int[] {1};
+        Chain empty = new Chain();
+        empty.pages.add(1);
+        writeChain(empty, 0);
+        DbFileIterator it = table.iterator(new TransactionId());
+        try {
+            it.open();
+            while (it.hasNext()) {
+                Tuple tuple = it.next();
+                insert(tuple.getField(field), tuple.getRecordId());
+            }
+        } catch (DBException | TransactionAbortedException e) {
+            throw new IOException("cannot build hash index " + file + ": " + e.getMessage());
+        } finally {
+            it.close();
+        }
+    }
+
+    // the first change after the index is opened clears the clean mark
+    private void markChanged() throws IOException {
+        if (clean) writeHeader(false);
+    }
+
+    private void writeHeader(boolean matchesTable) throws IOException {
+        buffer.clear();
+        Arrays.fill(buffer.array(), (byte) 0);
+        buffer.putInt(MAGIC).putInt(field).putInt(matchesTable ? 1 : 0);
+        buffer.putLong(table.getFile().length()).putLong(table.getFile().lastModified());
+        writePage(0);
+        clean = matchesTable;
+    }
+
+    // splits a full bucket on its next hash bit
+    private void split(int bucket, Chain chain) throws IOException {
+        int depth = chain.depth;
+        if (depth == globalDepth) {
+            int n = directory.length;
+            directory = Arrays.copyOf(directory, 2 * n);
+            System.arraycopy(directory, 0, directory, n, n);
+            globalDepth++;
+        }
+        Chain high = new Chain();
+        high.depth = chain.depth = depth + 1;
+        high.bits = chain.bits | (1 << depth);
+        high.pages.add(allocatePage());
+        for (int i = chain.size - 1; i >= 0; i--) {
+            if ((chain.hashes[i] >>> depth & 1) == 1) {
+                high.add(chain.hashes[i], chain.pageNos[i], chain.slots[i]);
+                chain.remove(i);
+            }
+        }
+        for (int i = 0; i < directory.length; i++) {
+            if (directory[i] == bucket && (i >>> depth & 1) == 1) directory[i] = high.pages.get(0);
+        }
+        writeChain(chain, 0);
+        writeChain(high, 0);
+    }
+
+    private int allocatePage() {
+        Integer page = freePages.poll();
+        return page != null ? page : pageCount++;
+    }
+
+    // reads a bucket and its overflow pages
+    private Chain readChain(int bucket) throws IOException {
+        Chain chain = new Chain();
+        int page = bucket;
+        while (page != 0) {
+            readPage(page);
+            if (chain.pages.isEmpty()) {
+                chain.depth = buffer.getInt(0);
+                chain.bits = buffer.getInt(4);
+            }
+            chain.pages.add(page);
+            int count = buffer.getInt(8);
+            if (count < 0 || count > BUCKET_CAPACITY) throw new IOException("corrupt hash index page " + page);
+            for (int i = 0; i < count; i++) {
+                int at = BUCKET_HEADER + i * ENTRY_SIZE;
+                chain.add(buffer.getInt(at), buffer.getInt(at + 4), buffer.getInt(at + 8));
+            }
+            page = buffer.getInt(12);
+        }
+        return chain;
+    }
+
+    /**
+     * Writes the entries of a chain back, packed from its first page on,
+     * adding or freeing overflow pages as needed. Pages before from are
+     * known not to have changed.
+     */
+    private void writeChain(Chain chain, int from) throws IOException {
+        int needed = Math.max(1, (chain.size + BUCKET_CAPACITY - 1) / BUCKET_CAPACITY);
+        while (chain.pages.size() < needed)
+            chain.pages.add(allocatePage());
+        while (chain.pages.size() > needed) {
+            int page = chain.pages.remove(chain.pages.size() - 1);
+            buffer.clear();
+            Arrays.fill(buffer.array(), (byte) 0);
+            buffer.putInt(0, FREE);
+            writePage(page);
+            freePages.add(page);
+            from = Math.min(from, needed - 1);
+        }
+        for (int p = Math.max(from, 0); p < needed; p++) {
+            int first = p * BUCKET_CAPACITY;
+            int count = Math.min(BUCKET_CAPACITY, chain.size - first);
+            buffer.clear();
+            Arrays.fill(buffer.array(), (byte) 0);
+            buffer.putInt(p == 0 ? chain.depth : OVERFLOW);
+            buffer.putInt(chain.bits);
+            buffer.putInt(count);
+            buffer.putInt(p + 1 < needed ? chain.pages.get(p + 1) : 0);
+            for (int i = first; i < first + count; i++)
+                buffer.putInt(chain.hashes[i]).putInt(chain.pageNos[i]).putInt(chain.slots[i]);
+            writePage(chain.pages.get(p));
+        }
+    }
+
+    private void readPage(int pageNo) throws IOException {
+        buffer.clear();
+        long position = (long) pageNo * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+        while (buffer.hasRemaining()) buffer.put((byte) 0);
+        buffer.clear();
+    }
+
+    private void writePage(int pageNo) throws IOException {
+        buffer.clear();
+        long position = (long) pageNo * PAGE_SIZE;
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+        buffer.clear();
+    }
+
+    /** The entries of a bucket and its overflow pages, and the pages they are on. */
+    private static class Chain {
+        final List<Integer> pages = new ArrayList<>();
+        int depth;
+        // the low depth hash bits all entries of the bucket have
+        int bits;
+        int size;
+        int[] hashes = new int[BUCKET_CAPACITY];
+        int[] pageNos = new int[BUCKET_CAPACITY];
+        int[] slots = new int[BUCKET_CAPACITY];
+
+        void add(int hash, int pageNo, int slot) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * size);
+                pageNos = Arrays.copyOf(pageNos, 2 * size);
+                slots = Arrays.copyOf(slots, 2 * size);
+            }
+            hashes[size] = hash;
+            pageNos[size] = pageNo;
+            slots[size] = slot;
+            size++;
+        }
+
+        // moves the last entry into position i
+        void remove(int i) {
+            size--;
+            hashes[i] = hashes[size];
+            pageNos[i] = pageNos[size];
+            slots[i] = slots[size];
+        }
+
+        // whether splitting on more hash bits would separate the entries
+        boolean canSplit() {
+            if (depth >= MAX_DEPTH) return false;
+            for (int i = 1; i < size; i++) {
+                if (hashes[i] != hashes[0]) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the tuples the index points at from their pages and skips those
+     * whose value only has the same hash.
+     */
+    private class LookupIterator implements DbFileIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final Field value;
+        // null until opened and after close
+        private List<RecordId> rids;
+        private int next;
+        private Tuple found;
+
+        LookupIterator(TransactionId tid, Field value) {
+            this.tid = tid;
+            this.value = value;
+        }
+
+        public void open() throws DBException, TransactionAbortedException, IOException {
+            rids = lookup(value);
+            next = 0;
+            found = null;
+        }
+
+        public boolean hasNext() throws DBException, TransactionAbortedException, IOException {
+            if (rids == null) return false;
+            BufferPool pool = Database.getBufferPool();
+            while (found == null && next < rids.size()) {
+                RecordId rid = rids.get(next++);
+                // the table may have lost pages the index saw
+                if (rid.getPageId().pageNumber() >= table.pageCount()) continue;
+                // pinned so an off-heap frame is not reused while it is decoded
+                TuplePage page = (TuplePage) pool.pinPage(tid, rid.getPageId(), Permissions.READ_ONLY, false);
+                try {
+                    Tuple tuple = page.getTuple(rid.tupleno());
+                    if (tuple != null && tuple.getField(field).equals(value)) found = tuple;
+                } finally {
+                    pool.unpinPage(rid.getPageId());
+                }
+            }
+            return found != null;
+        }
+
+        public Tuple next() throws DBException, TransactionAbortedException, NoSuchElementException, IOException {
+            if (!hasNext()) throw new NoSuchElementException("not opened or no tuple remained");
+            Tuple tuple = found;
+            found = null;
+            return tuple;
+        }
+
+        public void rewind() throws DBException, TransactionAbortedException, IOException {
+            open();
+        }
+
+        public void close() {
+            rids = null;
+        }
+    }
+}
@@ -9,11 +9,17 @@ import mydb.TupleDetail.TupleDetail;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 
 // store pages
@@ -21,16 +27,37 @@ public class HeapFile implements DbFile {
 
     private static final long serialVersionUID = -6321797794130816146L;
 
+    /** Smallest page size a HeapFile can have. */
+    public static final int MIN_PAGE_SIZE = 1024;
+    /** Largest page size; slotted pages address their bytes with 16 bits. */
+    public static final int MAX_PAGE_SIZE = 65536;
+
     private TupleDetail tupleDetail;
     // the file that stores the on-disk backing store for this heap
     private File file;
     private int pageCount;
+    private int pageSize;
+    private transient FileChannel channel;
+    private transient FreeSpaceMap freeSpace;
+    // hash indexes by field, kept up to date with the tuples
+    private transient Map<Integer, HashIndex> indexes;
 
 
     public HeapFile(File f, TupleDetail detail) {
+        this(f, detail, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * @param pageSize bytes per page, a power of two from
+     *   {@link #MIN_PAGE_SIZE} to {@link #MAX_PAGE_SIZE}
+     */
+    public HeapFile(File f, TupleDetail detail, int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1)
+            throw new IllegalArgumentException("invalid page size " + pageSize);
         file =  f;
         tupleDetail = detail;
-        pageCount = (int) (file.length() / BufferPool.PAGE_SIZE);
+        this.pageSize = pageSize;
+        pageCount = (int) (file.length() / pageSize);
     }
 
 
@@ -52,74 +79,297 @@ public class HeapFile implements DbFile {
         return tupleDetail;
     }
 
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the channel all reads and writes go through, opening it on
+     * first use or after {@link #close}. Reads and writes are positional,
+     * so threads sharing the channel never race on a file pointer.
+     */
+    protected synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+            } catch (AccessDeniedException e) {
+                // read-only table
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        }
+        return channel;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) throws IOException, DBException {
+        return readPage(pid, ByteBuffer.wrap(new byte[pageSize]));
+    }
+
+    /**
+     * Reads a page into the first page size bytes of dest, from its
+     * position, and makes the page over them without copying. Used by the
+     * BufferPool to read into its off-heap frames.
+     */
+    public Page readPage(PageId pid, ByteBuffer dest) throws IOException, DBException {
         if(pid == null) throw new DBException("readPage error:invalid page info");
-        byte[] data = new byte[BufferPool.PAGE_SIZE];
-        RandomAccessFile randomAccessFile = new RandomAccessFile(getFile(), "r");
-        randomAccessFile.seek(pid.pageNumber() * BufferPool.PAGE_SIZE);
-        randomAccessFile.read(data, 0, BufferPool.PAGE_SIZE);
-        return new HeapPage((HeapPageId) pid, data);
+        if (dest.remaining() < pageSize) throw new DBException("readPage error:buffer is smaller than a page");
+        ByteBuffer buffer = dest.slice();
+        buffer.limit(pageSize);
+        long position = (long) pid.pageNumber() * pageSize;
+        FileChannel ch = channel();
+        while (buffer.hasRemaining()) {
+            int n = ch.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+        // a page past the end of the file reads as zeros
+        while (buffer.hasRemaining()) buffer.put((byte) 0);
+        buffer.flip();
+        return newPage((HeapPageId) pid, buffer);
+    }
+
+    /**
+     * Makes a page of this file from the bytes read for it: a
+     * {@link SlottedHeapPage} if the tuples have variable length, a
+     * {@link HeapPage} otherwise. Pages of a table with strings that were
+     * written in the fixed-width format, before such tables used slotted
+     * pages, are still read as HeapPages; empty pages of the table become
+     * slotted, so one file may hold both formats.
+     */
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        if (SlottedHeapPage.isVariableLength(tupleDetail) && SlottedHeapPage.isSlotted(data, pageSize))
+            return new SlottedHeapPage(pid, data);
+        return new HeapPage(pid, data);
+    }
+
+    /** @return a new empty page with the given number */
+    public TuplePage emptyPage(int pageNo) throws IOException {
+        return newPage(new HeapPageId(getId(), pageNo), ByteBuffer.wrap(new byte[pageSize]));
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException, DBException {
         if(page == null) throw new DBException("invalid page info");
-        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-        randomAccessFile.seek(page.getId().pageNumber() * BufferPool.PAGE_SIZE);
-        byte[] data = page.getPageData();
-        randomAccessFile.write(data);
+        ByteBuffer buffer = writeBuffer(1);
+        page.writeTo(buffer.array(), 0);
+        write(buffer, (long) page.getId().pageNumber() * pageSize);
+    }
+
+    /**
+     * Writes pages with consecutive, ascending page numbers with a single
+     * write call.
+     */
+    public void writePages(List<Page> pages) throws IOException, DBException {
+        if (pages == null || pages.isEmpty()) throw new DBException("invalid page info");
+        int first = pages.get(0).getId().pageNumber();
+        ByteBuffer buffer = writeBuffer(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (page.getId().getTableId() != getId() || page.getId().pageNumber() != first + i)
+                throw new DBException("writePages error: pages are not consecutive");
+            page.writeTo(buffer.array(), i * pageSize);
+        }
+        write(buffer, (long) first * pageSize);
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        FileChannel ch = channel();
+        while (buffer.hasRemaining())
+            ch.write(buffer, position + buffer.position());
     }
 
+    // per-thread buffer pages are serialized into before they are written,
+    // so the write path does not allocate a page array per write
+    private static final ThreadLocal<ByteBuffer> WRITE_BUFFER = new ThreadLocal<>();
+
+    /** @return the calling thread's write buffer, cleared and limited to pages pages */
+    private ByteBuffer writeBuffer(int pages) {
+        int bytes = pages * pageSize;
+        ByteBuffer buffer = WRITE_BUFFER.get();
+        if (buffer == null || buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes);
+            WRITE_BUFFER.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    /**
+     * Appends pages at the end of the file with one write call, bypassing
+     * the buffer pool and the log. The pages must be numbered from the
+     * current {@link #pageCount()} on.
+     */
+    public void appendPages(List<Page> pages) throws IOException, DBException {
+        if (pages.isEmpty()) return;
+        List<HashIndex> indexes = openIndexes();
+        synchronized (this) {
+            if (pages.get(0).getId().pageNumber() != pageCount)
+                throw new DBException("appendPages error: pages do not start at the end of the file");
+            writePages(pages);
+            FreeSpaceMap freeSpace = freeSpace();
+            for (Page page : pages)
+                freeSpace.update(page.getId().pageNumber(), ((TuplePage) page).getNumEmptySlots());
+            pageCount += pages.size();
+        }
+        for (HashIndex index : indexes) {
+            for (Page page : pages) {
+                Iterator<Tuple> it = ((TuplePage) page).iterator();
+                while (it.hasNext()) {
+                    Tuple tuple = it.next();
+                    index.insert(tuple.getField(index.getField()), tuple.getRecordId());
+                }
+            }
+        }
+    }
+
+    /** Forces everything written to this file to the disk. */
+    public void force() throws IOException {
+        channel().force(false);
+    }
+
+    /**
+     * Saves the free-space map, closes the file channel and then the hash
+     * indexes. The file stays usable: the next read or write opens it again.
+     */
+    public synchronized void close() throws IOException {
+        if (freeSpace != null)
+            freeSpace.save();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (indexes != null) {
+            for (HashIndex index : indexes.values())
+                index.close();
+        }
+    }
+
+    /**
+     * Adds a hash index on a field, or returns the one the file already has.
+     * The index is stored next to the file and kept up to date by
+     * insertTuple, deleteTuple and appendPages; it is built from the table
+     * the first time it is used if it does not exist yet.
+     */
+    public synchronized HashIndex addIndex(int field) {
+        if (field < 0 || field >= tupleDetail.fieldNumber())
+            throw new IllegalArgumentException("no field " + field + " to index");
+        if (indexes == null) indexes = new TreeMap<>();
+        HashIndex index = indexes.get(field);
+        if (index == null) {
+            index = new HashIndex(this, field);
+            indexes.put(field, index);
+        }
+        return index;
+    }
+
+    /** @return the hash index on a field, or null if there is none */
+    public synchronized HashIndex getIndex(int field) {
+        return indexes == null ? null : indexes.get(field);
+    }
+
+    // opened outside the file's monitor: building an index reads the table
+    // through the buffer pool
+    private List<HashIndex> openIndexes() throws IOException {
+        List<HashIndex> open;
+        synchronized (this) {
+            if (indexes == null) return Collections.emptyList();
+            open = new ArrayList<>(indexes.values());
+        }
+        for (HashIndex index : open)
+            index.open();
+        return open;
+    }
+
+
+    /** The free-space map of this file, loaded from its sidecar on first use. */
+    protected synchronized FreeSpaceMap freeSpace() {
+        if (freeSpace == null)
+            freeSpace = new FreeSpaceMap(new File(file.getPath() + ".fsm"), pageCount);
+        return freeSpace;
+    }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId transactionId, Tuple tuple)
             throws DBException, IOException, TransactionAbortedException {
         if(tuple == null) throw new DBException("Page insert error tuple is null");
         ArrayList<Page> pageArrayList = new ArrayList<>();
-        boolean mark  = false;
-        //find pages can be inserted
-        for(int i = 0; i< pageCount; i++){
-            // read the database by the ids
-            HeapPage page = (HeapPage) Database.getBufferPool().
-                    // heapPage is creates by hashcode and i in pageNo
-                    getPage(transactionId, new HeapPageId(getId(),i), Permissions.READ_WRITE);
-            if(page == null) throw new DBException("heapPage page is not found error");
-            if(page.getNumEmptySlots() == 0) continue;
-            page.insertTuple(tuple);
-            page.markDirty(true,transactionId);
+        List<HashIndex> indexes = openIndexes();
+        BufferPool pool = Database.getBufferPool();
+        FreeSpaceMap freeSpace = freeSpace();
+        for (;;) {
+            // the free-space map points at a page that may have room; a
+            // wrong guess only corrects the map
+            int pageNo = freeSpace.pageWithSpace();
+            HeapPageId pid;
+            boolean appended = pageNo < 0;
+            if (appended) {
+                pid = appendEmptyPage(freeSpace);
+                if (pid == null) continue;
+            } else {
+                pid = new HeapPageId(getId(), pageNo);
+            }
+            // pinned so the page cannot be evicted between the change and markDirty
+            TuplePage page = (TuplePage) pool.pinPage(transactionId, pid, Permissions.READ_WRITE, false);
+            try {
+                if (!page.hasRoomFor(tuple)) {
+                    if (appended && page.getTupleNumber() == 0)
+                        throw new DBException("Page insert error tuple does not fit in a page");
+                    // a variable-length page may still fit smaller tuples, but
+                    // is skipped until a delete makes room
+                    freeSpace.update(pid.pageNumber(), 0);
+                    continue;
+                }
+                page.insertTuple(tuple);
+                page.markDirty(true,transactionId);
+                freeSpace.update(pid.pageNumber(), page.getNumEmptySlots());
+            } finally {
+                pool.unpinPage(pid);
+            }
+            for (HashIndex index : indexes)
+                index.insert(tuple.getField(index.getField()), tuple.getRecordId());
             pageArrayList.add(page);
-            mark = true;
+            return pageArrayList;
         }
-        if(mark) return pageArrayList;
+    }
+
+    /**
+     * Adds an empty page at the end of the file.
+     *
+     * @return the new page, or null if another thread made room meanwhile
+     */
+    private synchronized HeapPageId appendEmptyPage(FreeSpaceMap freeSpace) throws IOException, DBException {
+        if (freeSpace.pageWithSpace() >= 0) return null;
         // page is full to insert more tuples
         // create a new page and download it
         HeapPageId heapPageId = new HeapPageId(getId(),pageCount);
         // use the function
-        HeapPage heapPage = new HeapPage(heapPageId, HeapPage.createEmptyPageData());
+        TuplePage heapPage = emptyPage(pageCount);
         writePage(heapPage);
-
-        HeapPage page = (HeapPage) Database.getBufferPool().
-                // heapPage is creates by hashcode and pageCount in pageNo
-                        getPage(transactionId, new HeapPageId(getId(),pageCount), Permissions.READ_WRITE);
-        page.insertTuple(tuple);
-        page.markDirty(true,transactionId);
-        pageArrayList.add(page);
         pageCount++;
-        return pageArrayList;
+        freeSpace.update(heapPageId.pageNumber(), heapPage.getNumEmptySlots());
+        return heapPageId;
     }
 
     // see DbFile.java for javadocs
     public Page deleteTuple(TransactionId transactionId, Tuple tuple) throws DBException,
             TransactionAbortedException, IOException {
         if(tuple == null) throw new DBException("Page delete error tuple is null");
-        PageId pageId = tuple.getRecordId().getPageId();
+        RecordId rid = tuple.getRecordId();
+        PageId pageId = rid.getPageId();
         if(pageId.pageNumber()<pageCount) {
-            HeapPage page = (HeapPage) Database.getBufferPool().
-                    // heapPage is created by hashcode and i in pageNo
-                            getPage(transactionId, pageId, Permissions.READ_WRITE);
-            page.deleteTuple(tuple);
-            page.markDirty(true,transactionId);
+            List<HashIndex> indexes = openIndexes();
+            BufferPool pool = Database.getBufferPool();
+            TuplePage page = (TuplePage) pool.pinPage(transactionId, pageId, Permissions.READ_WRITE, false);
+            try {
+                page.deleteTuple(tuple);
+                page.markDirty(true,transactionId);
+                freeSpace().update(pageId.pageNumber(), page.getNumEmptySlots());
+            } finally {
+                pool.unpinPage(pageId);
+            }
+            for (HashIndex index : indexes)
+                index.delete(tuple.getField(index.getField()), rid);
             return page;
         }else return null;
     }
@@ -129,39 +379,46 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(tid);
     }
 
+    /**
+     * Returns the tuples of the file a page at a time. The page being read
+     * is pinned in the buffer pool until the iterator moves past it or is
+     * closed, so at most one frame is held per open scan.
+     */
     public class HeapFileIterator implements DbFileIterator{
         private static final long serialVersionUID = 5179878128589131222L;
 
         private int pageNo;
         private TransactionId tid;
-        private cachePage cachePool;
+        // null until opened and after close
+        private Iterator<Tuple> tuples;
+        // the page tuples comes from, and the pool it is pinned in
+        private HeapPageId pinned;
+        private BufferPool pinnedIn;
 
         public HeapFileIterator(TransactionId transactionId) {
             tid = transactionId;
         }
 
-        Iterator<Tuple> getTuplesInPage(HeapPageId pid) throws TransactionAbortedException, DBException, IOException {
-            HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
-            if (heapPage.getTupleNumber()==0) return null;
-            return heapPage.iterator();
-        }
-
         @Override
         public void open() throws TransactionAbortedException, DBException, IOException {
-            pageNo = 0;
-            cachePool = new cachePage(cacheRate, pageCount);
-            pageNo += fillCache(pageNo);
+            close();
+            tuples = Collections.emptyIterator();
         }
 
         @Override
         public boolean hasNext() throws DBException, TransactionAbortedException, IOException {
-            if (cachePool == null) return false;
-            if (cachePool.hasNext()) return true;
-
-            // add new page to cache
-            int addNum = fillCache(pageNo);
-            if(addNum == 0) return false;
-            pageNo += addNum;
+            if (tuples == null) return false;
+            while (!tuples.hasNext()) {
+                unpin();
+                if (pageNo >= pageCount) return false;
+                HeapPageId pid = new HeapPageId(getId(), pageNo++);
+                BufferPool pool = Database.getBufferPool();
+                // scans touch each page once, tell the buffer pool not to keep them around
+                TuplePage heapPage = (TuplePage) pool.pinPage(tid, pid, Permissions.READ_ONLY, true);
+                pinned = pid;
+                pinnedIn = pool;
+                tuples = heapPage.iterator();
+            }
             return true;
         }
 
@@ -170,7 +427,7 @@ public class HeapFile implements DbFile {
             if (!hasNext()) {
                 throw new NoSuchElementException("not opened or no tuple remained");
             }
-            return cachePool.next();
+            return tuples.next();
         }
 
         @Override
@@ -180,106 +437,16 @@ public class HeapFile implements DbFile {
 
         @Override
         public void close() {
+            unpin();
             pageNo = 0;
-            cachePool = null;
-        }
-
-        private final double cacheRate = 0.1;
-
-        private int fillCache(int initPos) throws TransactionAbortedException, DBException, IOException {
-            int addNum = 0;//这次调用实际添加的Page数目
-            //先清空之前的缓存页
-            cachePool.clear();
-            int pagePos = initPos;
-            for (; pagePos < pageCount && addNum < cachePool.getNum(); ) {
-                HeapPageId pid = new HeapPageId(getId(), pagePos);
-                Iterator<Tuple> tuples = getTuplesInPage(pid);
-                if (tuples != null) {
-                    cachePool.addPage(tuples);
-                    addNum = ++pagePos - initPos;
-                }else{
-                    ++pagePos;
-                }
-            }
-            if (addNum != 0) {
-                cachePool.init();
-            }
-            return addNum;
-        }
-
-
-
-    }
-
-
-    private class cachePage {
-
-        private int pageNumber;
-
-        private int index;
-
-        private List<Iterator<Tuple>> cachePages;
-
-        private Iterator<Tuple> current;
-
-        /**
-         * @param cacheRate 缓存的Page比例
-         * @param pageNum   HeapFile所有的Page数目
-         */
-        public cachePage(double cacheRate, int pageNum) {
-            cachePages = new ArrayList<>();
-            int tmp = (int) (pageNum * cacheRate);
-            pageNumber = Math.max(tmp, 1);
-        }
-
-        /**
-         * 需要在缓存完page后调用
-         */
-        public void init() {
-            if (cachePages.size() == 0) {
-                throw new RuntimeException("cache has no page");
-            }
-            index = 0;
-            current = cachePages.get(index);
-        }
-
-        public Tuple next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException("not opened or no tuple remained");
-            }
-            return current.next();
-        }
-
-        public boolean hasNext() {
-            if (cachePages.size() == 0 || current == null) {//还未调用addPage或init
-                return false;
-            }
-            if (current.hasNext()) {//判断当前访问的Page是否还有tuple未访问
-                return true;
-            }
-            if (index +1 < cachePages.size()) {//判断是否还有缓存的Page未访问
-                index++;
-                current = cachePages.get(index);
-                return current.hasNext();
-            }
-            return false;
-        }
-
-        public int getNum() {
-            return pageNumber;
-        }
-
-        /**
-         * 清空缓存
-         */
-        public void clear() {
-            cachePages.clear();
+            tuples = null;
         }
 
-        public void addPage(Iterator<Tuple> tuples) {
-            if (cachePages.size() <= pageNumber) {
-                cachePages.add(tuples);
-            } else throw new RuntimeException("cache is full");
+        private void unpin() {
+            if (pinned == null) return;
+            pinnedIn.unpinPage(pinned);
+            pinned = null;
+            pinnedIn = null;
         }
     }
 
@@ -1,8 +1,16 @@
 package mydb;
 
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mydb.TupleDetail.TupleDetail;
 
 // Pages are padded out to a specified length
 public class HeapFileEncoder {
@@ -68,136 +76,345 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, 1);
+  }
 
-      int nrecbytes = 0;
-      for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
-      }
-      int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
-      
-    //  per record, we need one bit; there are nrecords per page, so we need
-    // nrecords bits, i.e., ((nrecords/32)+1) integers.
-    int nheaderbytes = (nrecords / 8);
-    if (nheaderbytes * 8 < nrecords)
-        nheaderbytes++;  //ceiling
-    int nheaderbits = nheaderbytes * 8;
-
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
-
-    // our numbers probably won't be much larger than 1024 digits
-    char[] buf = new char[1024];
-
-    int curpos = 0;
-    int recordcount = 0;
-    int npages = 0;
-    int fieldNo = 0;
-
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-        // Ignore Windows/Notepad special line endings
-        if (c == '\r')
-            continue;
-
-        if (c == '\n') {
-            if (first)
-                continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == fieldSeparator || c == '\n') {
-            String s = new String(buf, 0, curpos);
-            if (typeAr[fieldNo] == Type.INT_TYPE) {
-                try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
-                } catch (NumberFormatException e) {
-                    System.out.println ("BAD LINE : " + s);
+    /** Bytes of input handed to a worker at a time. */
+    static final int CHUNK_BYTES = 4 << 20;
+
+    /**
+     * Converts a text file with threads parsing workers.
+     * <p>
+     * The input is read in chunks of {@link #CHUNK_BYTES} split at line
+     * boundaries. Each chunk is parsed by a worker straight from the bytes,
+     * without a String per field, into packed records; this thread takes
+     * the chunks back in input order and copies their records into pages,
+     * so the output is the same for any number of threads. At most two
+     * chunks per worker are in flight.
+     * <p>
+     * Tables with a string field get {@link SlottedHeapPage} pages with
+     * variable-length records, all others {@link HeapPage} pages.
+     * <p>
+     * Empty lines are skipped. A line with a malformed integer or the wrong
+     * number of fields is reported as a BAD LINE and skipped.
+     */
+    public static void convert(File inFile, File outFile, int npagebytes,
+                               int numFields, Type[] typeAr, char fieldSeparator, int threads)
+            throws IOException {
+        convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, threads, CHUNK_BYTES);
+    }
+
+    static void convert(File inFile, File outFile, int npagebytes, int numFields, Type[] typeAr,
+                        char fieldSeparator, int threads, int chunkBytes) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        RecordFormat format = new RecordFormat(Arrays.copyOf(typeAr, numFields), (byte) fieldSeparator);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Records>> inFlight = new ArrayDeque<>();
+        try (FileInputStream in = new FileInputStream(inFile);
+             PageAssembler out = new PageAssembler(new FileOutputStream(outFile), format, npagebytes)) {
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            while (!eof) {
+                byte[] chunk = Arrays.copyOf(carry, carry.length + chunkBytes);
+                int length = carry.length;
+                // fill the chunk; a partial read is not the end of the file
+                while (length < chunk.length) {
+                    int n = in.read(chunk, length, chunk.length - length);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    length += n;
+                }
+                // the worker gets whole lines, the rest waits for the next chunk
+                int end = length;
+                if (!eof) {
+                    while (end > 0 && chunk[end - 1] != '\n') end--;
+                    if (end == 0) {
+                        // a line longer than the chunk; read more of it first
+                        carry = Arrays.copyOf(chunk, length);
+                        continue;
+                    }
                 }
+                carry = Arrays.copyOfRange(chunk, end, length);
+                inFlight.add(workers.submit(new ParseTask(format, chunk, end)));
+                while (inFlight.size() >= 2 * threads || eof && !inFlight.isEmpty())
+                    out.add(result(inFlight.poll()));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static Records result(Future<Records> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while converting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /** The types of a record and how a text line maps onto them. */
+    static class RecordFormat {
+        final Type[] types;
+        final byte separator;
+        // the fixed size of a record, an upper bound for variable ones
+        final int recordBytes;
+        // records in the SlottedHeapPage format
+        final boolean variable;
+
+        RecordFormat(Type[] types, byte separator) {
+            this.types = types;
+            this.separator = separator;
+            int bytes = 0;
+            for (Type t : types)
+                bytes += t.getLen();
+            recordBytes = bytes;
+            variable = SlottedHeapPage.isVariableLength(new TupleDetail(types));
+        }
+
+        /**
+         * Encodes the line buf[from, to) into dest at offset.
+         *
+         * @return the length of the record, or -1 if the line is malformed;
+         *   dest may be partly written
+         */
+        int encode(byte[] buf, int from, int to, byte[] dest, int offset) {
+            int field = 0;
+            int start = from;
+            int at = offset;
+            for (int i = from; i <= to; i++) {
+                if (i < to && buf[i] != separator) continue;
+                if (field == types.length) return -1;
+                int len = encodeField(types[field], buf, start, i, dest, at);
+                if (len < 0) return -1;
+                at += len;
+                field++;
+                start = i + 1;
             }
-            else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
-                s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
-                if (overflow < 0) {
-                    s  = s.substring(0,Type.STRING_LEN);
+            return field == types.length ? at - offset : -1;
+        }
+
+        /** @return the bytes written, or -1 if the field is malformed */
+        private int encodeField(Type type, byte[] buf, int from, int to, byte[] dest, int offset) {
+            // trim like String.trim
+            while (from < to && (buf[from] & 0xff) <= ' ') from++;
+            while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+            if (type == Type.STRING_TYPE) {
+                int len = Math.min(to - from, Type.STRING_LEN);
+                if (variable) {
+                    dest[offset] = (byte) (len >>> 8);
+                    dest[offset + 1] = (byte) len;
+                    System.arraycopy(buf, from, dest, offset + 2, len);
+                    return 2 + len;
                 }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
+                writeInt(len, dest, offset);
+                System.arraycopy(buf, from, dest, offset + 4, len);
+                Arrays.fill(dest, offset + 4 + len, offset + type.getLen(), (byte) 0);
+                return type.getLen();
+            }
+            boolean negative = from < to && buf[from] == '-';
+            if (from < to && (buf[from] == '-' || buf[from] == '+')) from++;
+            if (from == to) return -1;
+            // accumulate negatively, as Long.parseLong does, so the most
+            // negative value does not overflow
+            long limit = type == Type.INT_TYPE
+                    ? (negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE)
+                    : (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = buf[i] - '0';
+                if (digit < 0 || digit > 9) return -1;
+                if (value < limit / 10) return -1;
+                value *= 10;
+                if (value < limit + digit) return -1;
+                value -= digit;
+            }
+            if (!negative) value = -value;
+            if (type == Type.INT_TYPE) {
+                writeInt((int) value, dest, offset);
+            } else {
+                writeInt((int) (value >>> 32), dest, offset);
+                writeInt((int) value, dest, offset + 4);
             }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
-                fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
+            return type.getLen();
         }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-            byte headerbyte = 0;
-            
-            for (i=0; i<nheaderbits; i++) {
-                if (i < recordcount)
-                    headerbyte |= (1 << (i % 8));
-                
-                if (((i+1) % 8) == 0) {
-                    headerStream.writeByte(headerbyte);
-                    headerbyte = 0;
+
+        private static void writeInt(int v, byte[] dest, int offset) {
+            dest[offset] = (byte) (v >>> 24);
+            dest[offset + 1] = (byte) (v >>> 16);
+            dest[offset + 2] = (byte) (v >>> 8);
+            dest[offset + 3] = (byte) v;
+        }
+    }
+
+    /** Records parsed from one chunk, packed back to back. */
+    static class Records {
+        final byte[] data;
+        final int count;
+        // the length of each record if they are variable, else null
+        final int[] lengths;
+
+        Records(byte[] data, int count, int[] lengths) {
+            this.data = data;
+            this.count = count;
+            this.lengths = lengths;
+        }
+    }
+
+    /** Parses the lines of one chunk. */
+    static class ParseTask implements Callable<Records> {
+        private final RecordFormat format;
+        private final byte[] buf;
+        private final int length;
+
+        ParseTask(RecordFormat format, byte[] buf, int length) {
+            this.format = format;
+            this.buf = buf;
+            this.length = length;
+        }
+
+        public Records call() {
+            int lines = 1;
+            for (int i = 0; i < length; i++)
+                if (buf[i] == '\n') lines++;
+            byte[] data = new byte[lines * format.recordBytes];
+            int[] lengths = format.variable ? new int[lines] : null;
+            int count = 0;
+            int used = 0;
+            int start = 0;
+            while (start < length) {
+                int end = start;
+                while (end < length && buf[end] != '\n') end++;
+                int lineEnd = end;
+                // Ignore Windows/Notepad special line endings
+                while (lineEnd > start && buf[lineEnd - 1] == '\r') lineEnd--;
+                if (lineEnd > start) {
+                    int len = format.encode(buf, start, lineEnd, data, used);
+                    if (len >= 0) {
+                        if (lengths != null) lengths[count] = len;
+                        used += len;
+                        count++;
+                    } else {
+                        System.out.println("BAD LINE : " + new String(buf, start, lineEnd - start));
+                    }
                 }
+                start = end + 1;
+            }
+            return new Records(data, count, lengths);
+        }
+    }
+
+    /**
+     * Packs records into pages and writes them out a batch of pages at a
+     * time. Fixed-size records fill HeapPage slots and set their header
+     * bits; variable ones are laid out as in SlottedHeapPage. An empty input
+     * still gets one empty page.
+     */
+    static class PageAssembler implements Closeable {
+        private static final int BATCH_PAGES = 64;
+
+        private final OutputStream out;
+        private final boolean variable;
+        private final int recordBytes;
+        private final int pageBytes;
+        private final int recordsPerPage;
+        private final int headerBytes;
+        private final byte[] batch;
+        private int page;
+        private int recordsInPage;
+        // variable records: where the records of the current page start
+        private int recordStart;
+        private int pagesWritten;
+
+        PageAssembler(OutputStream out, RecordFormat format, int pageBytes) {
+            this.out = out;
+            variable = format.variable;
+            recordBytes = format.recordBytes;
+            recordStart = pageBytes;
+            this.pageBytes = pageBytes;
+            recordsPerPage = (pageBytes * 8) / (recordBytes * 8 + 1);
+            headerBytes = (recordsPerPage + 7) / 8;
+            batch = new byte[BATCH_PAGES * pageBytes];
+        }
+
+        void add(Records records) throws IOException {
+            if (variable) {
+                addVariable(records);
+                return;
+            }
+            int done = 0;
+            while (done < records.count) {
+                int n = Math.min(records.count - done, recordsPerPage - recordsInPage);
+                int base = page * pageBytes;
+                System.arraycopy(records.data, done * recordBytes,
+                        batch, base + headerBytes + recordsInPage * recordBytes, n * recordBytes);
+                for (int slot = recordsInPage; slot < recordsInPage + n; slot++)
+                    batch[base + slot / 8] |= 1 << (slot % 8);
+                recordsInPage += n;
+                done += n;
+                if (recordsInPage == recordsPerPage) {
+                    recordsInPage = 0;
+                    if (++page == BATCH_PAGES) flushBatch();
+                }
+            }
+        }
+
+        private void addVariable(Records records) throws IOException {
+            int from = 0;
+            for (int i = 0; i < records.count; i++) {
+                int len = records.lengths[i];
+                // header, slot directory with this record's entry, records
+                if (SlottedHeapPage.HEADER_BYTES + SlottedHeapPage.SLOT_BYTES * (recordsInPage + 1)
+                        > recordStart - len) {
+                    if (recordsInPage == 0) throw new IOException("record does not fit in a page");
+                    recordsInPage = 0;
+                    recordStart = pageBytes;
+                    if (++page == BATCH_PAGES) flushBatch();
+                }
+                int base = page * pageBytes;
+                recordStart -= len;
+                System.arraycopy(records.data, from, batch, base + recordStart, len);
+                int slot = base + SlottedHeapPage.HEADER_BYTES + SlottedHeapPage.SLOT_BYTES * recordsInPage;
+                writeShort(slot, recordStart);
+                writeShort(slot + 2, len);
+                recordsInPage++;
+                writeShort(base, SlottedHeapPage.MAGIC >>> 16);
+                writeShort(base + 2, SlottedHeapPage.MAGIC);
+                writeShort(base + 4, recordsInPage);
+                writeShort(base + 6, recordStart);
+                from += len;
+            }
+        }
+
+        private void writeShort(int at, int v) {
+            batch[at] = (byte) (v >>> 8);
+            batch[at + 1] = (byte) v;
+        }
+
+        private void flushBatch() throws IOException {
+            out.write(batch, 0, page * pageBytes);
+            pagesWritten += page;
+            Arrays.fill(batch, 0, page * pageBytes, (byte) 0);
+            page = 0;
+        }
+
+        public void close() throws IOException {
+            try {
+                if (recordsInPage > 0 || pagesWritten + page == 0) {
+                    page++;
+                    recordsInPage = 0;
+                    recordStart = pageBytes;
+                }
+                flushBatch();
+            } finally {
+                out.close();
             }
-            
-            if (i % 8 > 0)
-                headerStream.writeByte(headerbyte);
-            
-            // pad the rest of the page with zeroes
-            
-            for (i=0; i<(npagebytes - (recordcount * nrecbytes + nheaderbytes)); i++)
-                pageStream.writeByte(0);
-            
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
         }
     }
-    br.close();
-    os.close();
-  }
 }
@@ -8,7 +8,8 @@ import mydb.TupleDetail.Tuple;
 import mydb.TupleDetail.TupleDetail;
 
 import java.io.*;
-import java.text.ParseException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -16,19 +17,48 @@ import java.util.NoSuchElementException;
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * Tuples are stored in fixed-size slots; tables with string fields use
+ * {@link SlottedHeapPage} instead.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     private HeapPageId heapPageId;
     private TupleDetail tupleDetail;
-    private byte[] header;
+    private final int pageSize;
+    // the header bitmap, 64 slots per word: slot i is bit i % 64 of word
+    // i / 64, which is the on-disk byte order read as little-endian longs
+    private long[] usedSlots;
+    private int headerSize;
+    private int usedCount;
+    // decoded tuples; a used slot whose entry is null has not been decoded
+    // yet and is read from data on demand. Allocated on first decode.
     private Tuple[] tuples;
     private int tupleNumbersInPage;
-
+    // byte offset of each field inside a tuple slot
+    private int[] fieldOffsets;
+
+    // the page as it was read; never written to. Modified slots live in
+    // tuples[] and header, so data stays the before-image until
+    // setBeforeImage is called. detach replaces it while other threads may
+    // be reading, so readers load it once into a local.
+    private volatile ByteBuffer data;
+    // false while data may be shared (a mapped file, the caller's array)
+    private boolean ownsData;
+    // reusable cursor over the data buffer the page was read from, if that
+    // is direct (mapped or off-heap); kept after detach for readers that
+    // still hold the old buffer
+    private final ByteBuffer dataView;
+    // slots filled by insertTuple since the page was read, same layout as
+    // usedSlots; they are encoded from their Tuple, every other used slot
+    // is copied from data
+    private long[] inserted;
+
+    // set by setBeforeImage; null means data is the before-image
     private byte[] oldData;
 
     private TransactionId transactionId;
@@ -38,48 +68,57 @@ public class HeapPage implements Page {
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
-     * database table, which can be determined via {@link Catalog#getTupleDetail}.
+     * database table, which can be determined via {@link Catalog#getTupleDetail},
+     * and page size that of its file, see {@link Catalog#getPageSize}.
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
      * @see Database#getCatalog
      * @see Catalog#getTupleDetail
-     * @see BufferPool#PAGE_SIZE
+     * @see Catalog#getPageSize
      */
     //read from which page and table
     //download data
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from the remaining page size bytes of a buffer, for example a slice of a mapped file. The buffer's
+     * position is not changed.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         // get page id
         this.heapPageId = id;
         // get tuple detail : by get table info  in catalog
         this.tupleDetail = Database.getCatalog().getTupleDetail(heapPageId.getTableId());
-        // define : tuple number = floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
-        tupleNumbersInPage = (BufferPool.PAGE_SIZE * 8 )/ (tupleDetail.getSize() * 8 + 1);
-        // read data by bytes
-        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+        pageSize = Database.getCatalog().getPageSize(heapPageId.getTableId());
+        // define : tuple number = floor((pageSize*8) / (tuple size * 8 + 1))
+        tupleNumbersInPage = (pageSize * 8 )/ (tupleDetail.getSize() * 8 + 1);
+        if (data.remaining() < pageSize) throw new IOException("page data is too short");
+        this.data = data.slice();
+        this.data.limit(pageSize);
+        ownsData = false;
+        dataView = this.data.hasArray() ? null : this.data.duplicate();
 
         // allocate and read the header slots of this page
-        int headerSize = (int) Math.ceil(((double) tupleNumbersInPage) / 8.0);
-
-        // put data into head
-        header = new byte[headerSize];
-        for (int i = 0; i< headerSize; i++)
-            header[i] = dataInputStream.readByte();
-
-        try{
-            // allocate and read the actual records of this page
-            tuples = new Tuple[tupleNumbersInPage];
-            for (int i = 0; i< tupleNumbersInPage; i++)
-                tuples[i] = readNextTuple(dataInputStream,i);
-
-        }catch(NoSuchElementException | ParseException e){
-            e.printStackTrace();
-        }
-        dataInputStream.close();
-        setBeforeImage();
+        headerSize = (int) Math.ceil(((double) tupleNumbersInPage) / 8.0);
+        usedSlots = new long[(tupleNumbersInPage + 63) / 64];
+        for (int b = 0; b < headerSize; b++)
+            usedSlots[b >>> 3] |= (this.data.get(b) & 0xffL) << ((b & 7) * 8);
+        // bits past the last slot are not slots
+        if (tupleNumbersInPage % 64 != 0)
+            usedSlots[usedSlots.length - 1] &= (1L << tupleNumbersInPage) - 1;
+        for (long word : usedSlots)
+            usedCount += Long.bitCount(word);
+
+        // tuples are decoded on demand, see getTuple
+        fieldOffsets = new int[tupleDetail.fieldNumber()];
+        for (int i = 1; i < fieldOffsets.length; i++)
+            fieldOffsets[i] = fieldOffsets[i - 1] + tupleDetail.getFieldType(i - 1).getLen();
     }
 
 
@@ -95,7 +134,7 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            return new HeapPage(heapPageId,oldData);
+            return oldData != null ? new HeapPage(heapPageId, oldData) : new HeapPage(heapPageId, data);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -104,16 +143,18 @@ public class HeapPage implements Page {
         return null;
     }
     
+    /**
+     * Snapshots the current content as the before-image. The snapshot array
+     * is reused, so a page returned by an earlier getBeforeImage must not be
+     * kept across this call.
+     */
     public void setBeforeImage() {
-        oldData = getPageData().clone();
+        if (oldData == null) oldData = new byte[pageSize];
+        writeTo(oldData, 0);
     }
 
     public int getTupleNumber() {
-        int result = 0;
-        for(int i = 0; i< tuples.length ; i++)
-            if (tuples[i] != null)
-                result++;
-        return result;
+        return usedCount;
     }
 
     /**
@@ -123,25 +164,61 @@ public class HeapPage implements Page {
         return heapPageId;
     }
 
+    private int slotOffset(int slotId) {
+        return headerSize + slotId * tupleDetail.getSize();
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in a slot, decoding it from the page data the first
+     * time it is asked for, or null if the slot is empty.
      */
-    private Tuple readNextTuple(DataInputStream dataInputStream, int slotId)
-            throws NoSuchElementException, ParseException, IOException {
-        // if associated bit is not set, read forward to the next tuple, and return null
-        Tuple tuple = null;
-        if(isSlotUsed(slotId)){
+    public Tuple getTuple(int slotId) {
+        if (!isSlotUsed(slotId)) return null;
+        Tuple tuple = tuples != null ? tuples[slotId] : null;
+        if (tuple == null) {
+            ByteBuffer bytes = data;
+            int offset = slotOffset(slotId);
             tuple = new Tuple(tupleDetail);
-            for(int i = 0; i< tupleDetail.fieldNumber();i++)
-                tuple.setField(i,tupleDetail.getFieldType(i).parse(dataInputStream));
-            tuple.setRecordId( new RecordId(heapPageId, slotId));
-        }else {
-            for(int i = 0; i< tupleDetail.getSize(); i++)
-                dataInputStream.readByte();
+            for (int i = 0; i < fieldOffsets.length; i++)
+                tuple.setField(i, tupleDetail.getFieldType(i).parse(bytes, offset + fieldOffsets[i]));
+            tuple.setRecordId(new RecordId(heapPageId, slotId));
+            // pages over direct memory decode in place every time rather
+            // than keep their tuples on the heap
+            if (bytes.hasArray()) {
+                if (tuples == null) tuples = new Tuple[tupleNumbersInPage];
+                tuples[slotId] = tuple;
+            }
         }
         return tuple;
     }
 
+    /**
+     * Returns one field of the tuple in a slot without building the tuple,
+     * for callers that only need a single column.
+     */
+    public Field getField(int slotId, int fieldIndex) {
+        if (!isSlotUsed(slotId)) throw new NoSuchElementException("slot " + slotId + " is empty");
+        if (tuples != null && tuples[slotId] != null) return tuples[slotId].getField(fieldIndex);
+        return tupleDetail.getFieldType(fieldIndex).parse(data, slotOffset(slotId) + fieldOffsets[fieldIndex]);
+    }
+
+    /**
+     * Called before the page is first changed. Slots that are not decoded
+     * are still read from data, so data must stop being shared with a file
+     * mapping or a caller's array that could be overwritten under us.
+     */
+    private void copyOnWrite() {
+        detach();
+    }
+
+    public synchronized void detach() {
+        if (ownsData) return;
+        byte[] copy = new byte[pageSize];
+        data.duplicate().get(copy);
+        data = ByteBuffer.wrap(copy);
+        ownsData = true;
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -154,64 +231,54 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream output = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(output);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j< tupleDetail.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
+        byte[] pageData = new byte[pageSize];
+        writeTo(pageData, 0);
+        return pageData;
+    }
 
-            // non-empty slot
-            for (int j = 0; j< tupleDetail.fieldNumber(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Serializes the page into dest without allocating. Runs of slots that
+     * still hold the bytes they were read with are copied in bulk from the
+     * page data; only tuples inserted since then are encoded field by field.
+     */
+    public void writeTo(byte[] dest, int offset) {
+        for (int b = 0; b < headerSize; b++)
+            dest[offset + b] = (byte) (usedSlots[b >>> 3] >>> ((b & 7) * 8));
+        int slot = 0;
+        while (slot < tupleNumbersInPage) {
+            int end;
+            if (!isSlotUsed(slot)) {
+                // empty slots are zero
+                end = nextSlot(usedSlots, slot, true);
+                Arrays.fill(dest, offset + slotOffset(slot), offset + slotOffset(end), (byte) 0);
+            } else if (inserted != null && isSet(inserted, slot)) {
+                end = slot + 1;
+                int at = offset + slotOffset(slot);
+                Arrays.fill(dest, at, at + tupleDetail.getSize(), (byte) 0);
+                for (int j = 0; j < fieldOffsets.length; j++)
+                    tuples[slot].getField(j).serialize(dest, at + fieldOffsets[j]);
+            } else {
+                end = nextSlot(usedSlots, slot, false);
+                if (inserted != null)
+                    end = Math.min(end, nextSlot(inserted, slot, true));
+                copyData(slotOffset(slot), dest, offset + slotOffset(slot), slotOffset(end) - slotOffset(slot));
             }
+            slot = end;
         }
-
         // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + tupleDetail.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Arrays.fill(dest, offset + slotOffset(tupleNumbersInPage), offset + pageSize, (byte) 0);
+    }
 
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void copyData(int from, byte[] dest, int at, int length) {
+        ByteBuffer bytes = data;
+        if (bytes.hasArray()) {
+            System.arraycopy(bytes.array(), bytes.arrayOffset() + from, dest, at, length);
+        } else {
+            synchronized (dataView) {
+                dataView.position(from);
+                dataView.get(dest, at, length);
+            }
         }
-
-        return output.toByteArray();
     }
 
     /**
@@ -226,7 +293,12 @@ public class HeapPage implements Page {
     // create the empty bytes
     // write in the page
     public static byte[] createEmptyPageData() {
-        return new byte[BufferPool.PAGE_SIZE]; //all 0
+        return createEmptyPageData(BufferPool.PAGE_SIZE);
+    }
+
+    /** Same as {@link #createEmptyPageData()} for a table with pageSize pages. */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -240,7 +312,9 @@ public class HeapPage implements Page {
         if(!(heapPageId).equals(tuple.getRecordId().getPageId())) throw new DBException("delete tuple heappageId not equal");
         int TupleNo = tuple.getRecordId().tupleno();
         if(!isSlotUsed(TupleNo)) throw new DBException("tuple slot is already empty");
-        tuples[TupleNo] = null;
+        copyOnWrite();
+        if (tuples != null) tuples[TupleNo] = null;
+        if (inserted != null) inserted[TupleNo >>> 6] &= ~(1L << TupleNo);
         markSlotUsed(TupleNo, false);
     }
 
@@ -253,15 +327,16 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple tuple) throws DBException {
         if (tuple == null) throw new DBException("insert tuple is invalid");
         if (!tuple.getTupleDetail().equals(tupleDetail)) throw new DBException("insert error: tupledetail not match");
-        for (int i = 0; i < tupleNumbersInPage; i++){
-            if (isSlotUsed(i)) continue;
-            tuples[i] = tuple;
-            markSlotUsed(i, true);
-            RecordId recordId = new RecordId(heapPageId,i);
-            tuple.setRecordId(recordId);
-            return;
-        }
-        throw new DBException("insert error: page cannot be inserted tuples");
+        int i = nextSlot(usedSlots, 0, false);
+        if (i >= tupleNumbersInPage) throw new DBException("insert error: page cannot be inserted tuples");
+        copyOnWrite();
+        if (tuples == null) tuples = new Tuple[tupleNumbersInPage];
+        if (inserted == null) inserted = new long[usedSlots.length];
+        tuples[i] = tuple;
+        inserted[i >>> 6] |= 1L << i;
+        markSlotUsed(i, true);
+        RecordId recordId = new RecordId(heapPageId,i);
+        tuple.setRecordId(recordId);
     }
 
     /**
@@ -283,34 +358,53 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int result = 0;
-        for(int i = 0; i< tupleNumbersInPage; i++){
-            result = isSlotUsed(i)? result:result+1;
-        }
-        return result;
+        return tupleNumbersInPage - usedCount;
+    }
+
+    public boolean hasRoomFor(Tuple tuple) {
+        return usedCount < tupleNumbersInPage;
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
-        // i/8 to calculate where section the data is
-        int t = i/8;
-        int d = i%8;
-        // if head[i] == 1 return true
-        return (byte) (header[t] << (7 - d)) < 0;
+        if (i < 0 || i >= tupleNumbersInPage) throw new IndexOutOfBoundsException("no slot " + i);
+        return isSet(usedSlots, i);
+    }
+
+    private static boolean isSet(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns the first slot at or after from whose bit is set (set true)
+     * or clear (set false), or the number of slots if there is none. Scans
+     * a word of 64 slots per step.
+     */
+    private int nextSlot(long[] bits, int from, boolean set) {
+        int w = from >>> 6;
+        if (w >= bits.length) return tupleNumbersInPage;
+        long word = (set ? bits[w] : ~bits[w]) & (-1L << from);
+        for (;;) {
+            if (word != 0) return Math.min(w * 64 + Long.numberOfTrailingZeros(word), tupleNumbersInPage);
+            if (++w == bits.length) return tupleNumbersInPage;
+            word = set ? bits[w] : ~bits[w];
+        }
     }
 
     /**
      * Abstraction to fill or clear a slot on this page.
      */
-    // TODO: site: 补位
-    // https://blog.csdn.net/weixx3/article/details/78560048
     private void markSlotUsed(int i, boolean value) {
-        int t = i/8;
-        int d = i%8;
-        byte a = (byte) ((byte)1 << d);
-        header[t] = value? (byte)(header[t] | a): (byte) (header[t] & ~a);
+        if (isSet(usedSlots, i) == value) return;
+        if (value) {
+            usedSlots[i >>> 6] |= 1L << i;
+            usedCount++;
+        } else {
+            usedSlots[i >>> 6] &= ~(1L << i);
+            usedCount--;
+        }
     }
 
     /**
@@ -321,26 +415,27 @@ public class HeapPage implements Page {
         return new UsedTupleIterator();
     }
 
+    // walks the set bits of the header bitmap
     class UsedTupleIterator implements Iterator<Tuple> {
 
-        int divide = 0;
-        int count = 0;
-        int usedTuplesNum = tupleNumbersInPage - getNumEmptySlots();
+        int next = nextSlot(usedSlots, 0, true);
 
         @Override
         public boolean hasNext() {
-            return tupleNumbersInPage > count && divide < usedTuplesNum;
+            return next < tupleNumbersInPage;
         }
 
         @Override
         public Tuple next() {
             if(!hasNext()) throw new NoSuchElementException();
-//            while (!isSlotUsed(count)) count++;
-            for (; !isSlotUsed(count); count++) {
-            }
-            divide++;
-            //count = count +1;
-            return tuples[count++];
+            Tuple tuple = getTuple(next);
+            next = next + 1 < tupleNumbersInPage ? nextSlot(usedSlots, next + 1, true) : tupleNumbersInPage;
+            return tuple;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
     }
 
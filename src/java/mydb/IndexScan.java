@@ -0,0 +1,124 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the tuples of a table that satisfy a comparison on one field through
+ * an index instead of reading the whole table: the hash index of a HeapFile
+ * field (see {@link HeapFile#addIndex}) for equality, or the key of a
+ * {@link BTreeFile} for equality and ranges. Returns the same tuples, with
+ * the same TupleDetail, as a {@link SeqScan} under a {@link Filter}.
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId transactionId;
+    private final int tableId;
+    private final String tableAlias;
+    private final Comparison comparison;
+    private final DbFileIterator tupleIterator;
+
+    /**
+     * @param comparison the comparison on a field of the table, by its index
+     *   in the table
+     * @throws IllegalArgumentException if the table has no index that can
+     *   answer the comparison, see {@link #canUse}
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Comparison comparison) {
+        if (!canUse(tableid, comparison.getField(), comparison.getOperation()))
+            throw new IllegalArgumentException("no index on field " + comparison.getField() + " for "
+                    + comparison.getOperation());
+        this.transactionId = tid;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.comparison = comparison;
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (file instanceof BTreeFile)
+            tupleIterator = ((BTreeFile) file).indexIterator(tid, comparison);
+        else
+            tupleIterator = ((HeapFile) file).getIndex(comparison.getField()).iterator(tid, comparison.getOperand());
+    }
+
+    /**
+     * @return true if the table has an index that answers a comparison with
+     *   op on field
+     */
+    public static boolean canUse(int tableid, int field, Comparison.Operation op) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (file instanceof BTreeFile) {
+            return ((BTreeFile) file).keyField() == field && op != Comparison.Operation.LIKE
+                    && op != Comparison.Operation.NOT_EQUALS;
+        }
+        return op == Comparison.Operation.EQUALS && file instanceof HeapFile
+                && ((HeapFile) file).getIndex(field) != null;
+    }
+
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableId);
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public TransactionId getTransactionId() {
+        return transactionId;
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public Comparison getComparison() {
+        return comparison;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        tupleIterator.open();
+    }
+
+    /**
+     * @return the TupleDetail of the table with field names prefixed by the
+     *   alias, as {@link SeqScan#getTupleDetail} returns it
+     */
+    public TupleDetail getTupleDetail() {
+        TupleDetail desc = Database.getCatalog().getTupleDetail(tableId);
+        int fieldNumber = desc.fieldNumber();
+        Type[] types = new Type[fieldNumber];
+        String[] names = new String[fieldNumber];
+        for (int i = 0; i < fieldNumber; i++) {
+            types[i] = desc.getFieldType(i);
+            String prefix = getAlias() == null ? "null." : getAlias() + ".";
+            String fieldName = desc.getFieldName(i);
+            fieldName = fieldName == null ? "null" : fieldName;
+            names[i] = prefix + fieldName;
+        }
+        return new TupleDetail(types, names);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DBException, IOException {
+        return tupleIterator.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException, TransactionAbortedException, DBException, IOException {
+        if (!hasNext()) throw new NoSuchElementException();
+        return tupleIterator.next();
+    }
+
+    public void close() {
+        tupleIterator.close();
+    }
+
+    public void rewind() throws DBException, NoSuchElementException, TransactionAbortedException, IOException {
+        tupleIterator.rewind();
+    }
+}
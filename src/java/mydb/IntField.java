@@ -41,6 +41,13 @@ public class IntField implements Field {
         dos.writeInt(value);
     }
 
+    public void serialize(byte[] dest, int offset) {
+        dest[offset] = (byte) (value >>> 24);
+        dest[offset + 1] = (byte) (value >>> 16);
+        dest[offset + 2] = (byte) (value >>> 8);
+        dest[offset + 3] = (byte) value;
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
@@ -0,0 +1,120 @@
+package mydb;
+
+import mydb.Operation.Join.Comparison;
+
+/**
+ * A fixed-width histogram over the values of one integer field, used by
+ * {@link TableStats} to estimate how many tuples a predicate selects.
+ * Within a bucket values are assumed to be spread evenly.
+ */
+public class IntHistogram {
+
+    private final int[] counts;
+    private final int min;
+    private final int max;
+    // values per bucket, at least 1
+    private final double width;
+    private int total;
+
+    /**
+     * @param buckets the number of buckets; fewer are used if the range has
+     *   fewer values
+     * @param min the smallest value that will be added
+     * @param max the largest value that will be added
+     */
+    public IntHistogram(int buckets, int min, int max) {
+        if (buckets <= 0 || min > max) throw new IllegalArgumentException("invalid histogram " + min + ".." + max);
+        long range = (long) max - min + 1;
+        counts = new int[(int) Math.min(buckets, range)];
+        this.min = min;
+        this.max = max;
+        width = (double) range / counts.length;
+    }
+
+    private int bucket(int v) {
+        return Math.min((int) (((long) v - min) / width), counts.length - 1);
+    }
+
+    // the smallest value that falls into bucket b
+    private long bucketStart(int b) {
+        return min + (long) Math.ceil(b * width);
+    }
+
+    public void addValue(int v) {
+        if (v < min || v > max) throw new IllegalArgumentException("value " + v + " is out of range");
+        counts[bucket(v)]++;
+        total++;
+    }
+
+    /**
+     * @return the fraction of the values added that satisfy
+     *   {@code value op v}
+     */
+    public double estimateSelectivity(Comparison.Operation op, int v) {
+        if (total == 0) return 0;
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return countEqual(v) / total;
+        case NOT_EQUALS:
+            return 1 - countEqual(v) / total;
+        case GREATER_THAN:
+            return countAbove(v) / total;
+        case GREATER_THAN_OR_EQ:
+            return (countAbove(v) + countEqual(v)) / total;
+        case LESS_THAN:
+            return Math.max(0, total - countAbove(v) - countEqual(v)) / total;
+        case LESS_THAN_OR_EQ:
+            return Math.max(0, total - countAbove(v)) / total;
+        default:
+            throw new IllegalArgumentException("unknown operation " + op);
+        }
+    }
+
+    private double countEqual(int v) {
+        if (v < min || v > max) return 0;
+        int b = bucket(v);
+        long values = (b + 1 < counts.length ? bucketStart(b + 1) : (long) max + 1) - bucketStart(b);
+        return (double) counts[b] / Math.max(values, 1);
+    }
+
+    // values greater than v
+    private double countAbove(int v) {
+        if (v < min) return total;
+        if (v >= max) return 0;
+        int b = bucket(v);
+        long end = b + 1 < counts.length ? bucketStart(b + 1) : (long) max + 1;
+        long values = end - bucketStart(b);
+        double above = (double) counts[b] * (end - 1 - v) / Math.max(values, 1);
+        for (int i = b + 1; i < counts.length; i++)
+            above += counts[i];
+        return above;
+    }
+
+    /**
+     * @return the expected selectivity of {@code value op v} for a v drawn
+     *   from the values added
+     */
+    public double avgSelectivity(Comparison.Operation op) {
+        if (total == 0) return 0;
+        double equal = 0;
+        for (int b = 0; b < counts.length; b++) {
+            long end = b + 1 < counts.length ? bucketStart(b + 1) : (long) max + 1;
+            double p = (double) counts[b] / total;
+            equal += p * p / Math.max(end - bucketStart(b), 1);
+        }
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return equal;
+        case NOT_EQUALS:
+            return 1 - equal;
+        default:
+            return 0.5;
+        }
+    }
+
+    public String toString() {
+        return "IntHistogram(" + min + ".." + max + ", " + counts.length + " buckets, " + total + " values)";
+    }
+}
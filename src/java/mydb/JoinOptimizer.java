@@ -1,10 +1,15 @@
 package mydb;
 
+import mydb.Database.BufferPool;
 import mydb.Database.Database;
 import mydb.Exception.ParserException;
 import mydb.Operation.CostCard;
 import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.Filter;
+import mydb.Operation.Join.HashJoin;
+import mydb.Operation.Join.IndexNestedLoopJoin;
 import mydb.Operation.Join.Join;
+import mydb.Operation.Join.SortMergeJoin;
 
 import java.util.*;
 
@@ -40,6 +45,11 @@ public class JoinOptimizer {
      * inner/outer here -- because DbIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * If plan2 reads a single table, possibly through filters, and that
+     * table has an index on the join field, the join probes the index for
+     * each tuple of plan1 ({@link IndexNestedLoopJoin}); otherwise it is a
+     * block sort-merge {@link Join}.
      * 
      * @param lj
      *            The join being considered
@@ -74,12 +84,85 @@ public class JoinOptimizer {
 
         JoinCompare p = new JoinCompare(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        // merging two sorted inputs reads each once and needs no memory
+        if (lj.p == Comparison.Operation.EQUALS && sortedOn(plan1, t1id) && sortedOn(plan2, t2id))
+            return new SortMergeJoin(p, plan1, plan2, true, true);
+        if (!(lj instanceof LogicalSubplanJoinNode)) {
+            j = indexJoin(p, plan1, plan2);
+            if (j != null) return j;
+        }
+        if (lj.p == Comparison.Operation.EQUALS)
+            j = new HashJoin(p, plan1, plan2);
+        else
+            j = new Join(p,plan1,plan2);
 
         return j;
 
     }
 
+    /**
+     * @return true if plan returns its tuples in ascending order of field:
+     *   an ascending OrderBy or ExternalSort on it, a scan of a BTreeFile
+     *   keyed on it or a SortMergeJoin on it, possibly under filters
+     */
+    static boolean sortedOn(DbIterator plan, int field) {
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        if (plan instanceof OrderBy)
+            return ((OrderBy) plan).isASC() && ((OrderBy) plan).getOrderByField() == field;
+        if (plan instanceof ExternalSort)
+            return ((ExternalSort) plan).isASC() && ((ExternalSort) plan).getSortField() == field;
+        if (plan instanceof SeqScan)
+            return keyedOn(((SeqScan) plan).getTableId(), field);
+        if (plan instanceof IndexScan)
+            return keyedOn(((IndexScan) plan).getTableId(), field);
+        if (plan instanceof SortMergeJoin) {
+            JoinCompare p = ((SortMergeJoin) plan).getJoinPredicate();
+            int n1 = ((SortMergeJoin) plan).getChildren()[0].getTupleDetail().fieldNumber();
+            return field == p.getField1() || field == n1 + p.getField2();
+        }
+        return false;
+    }
+
+    // true if the table is a BTreeFile keyed on field
+    private static boolean keyedOn(int tableId, int field) {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == field;
+    }
+
+    /**
+     * @return an IndexNestedLoopJoin of plan1 with the table plan2 reads, or
+     *   null if plan2 is not a scan under filters or the table has no index
+     *   that answers the join predicate
+     */
+    private static DbIterator indexJoin(JoinCompare p, DbIterator plan1, DbIterator plan2) {
+        ArrayList<Comparison> filters = new ArrayList<Comparison>();
+        DbIterator scan = plan2;
+        while (scan instanceof Filter) {
+            filters.add(((Filter) scan).getPredicate());
+            scan = ((Filter) scan).getChildren()[0];
+        }
+        int tableId;
+        String alias;
+        TransactionId tid;
+        if (scan instanceof SeqScan) {
+            tableId = ((SeqScan) scan).getTableId();
+            alias = ((SeqScan) scan).getAlias();
+            tid = ((SeqScan) scan).getTransactionId();
+        } else if (scan instanceof IndexScan) {
+            // its comparison becomes one more filter on the probed tuples
+            filters.add(((IndexScan) scan).getComparison());
+            tableId = ((IndexScan) scan).getTableId();
+            alias = ((IndexScan) scan).getAlias();
+            tid = ((IndexScan) scan).getTransactionId();
+        } else {
+            return null;
+        }
+        if (!IndexScan.canUse(tableId, p.getField2(), IndexNestedLoopJoin.probeOperation(p.getOperator())))
+            return null;
+        return new IndexNestedLoopJoin(p, plan1, plan2, tid, tableId, alias, filters);
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -112,13 +195,69 @@ public class JoinOptimizer {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 4.
             return card1 + cost1 + cost2;
-        } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return -1.0;
         }
+        if (j.p == Comparison.Operation.EQUALS && keyedOn(j.t1Alias, j.f1PureName)
+                && keyedOn(j.t2Alias, j.f2PureName)) {
+            // instantiateJoin merges the two scans in key order
+            return cost1 + cost2 + card1 + card2;
+        }
+        double probeCost = indexProbeCost(j);
+        if (probeCost < Double.POSITIVE_INFINITY) {
+            // instantiateJoin probes the index of t2 once per outer tuple
+            return cost1 + card1 * probeCost + card1;
+        }
+        if (j.p == Comparison.Operation.EQUALS) {
+            // HashJoin reads each side once; if neither fits in memory both
+            // are written to partition files and read back
+            double bytes1 = (double) card1 * tupleSize(j.t1Alias);
+            double bytes2 = (double) card2 * tupleSize(j.t2Alias);
+            double cost = cost1 + cost2 + card1 + card2;
+            if (Math.min(bytes1, bytes2) > HashJoin.MEMORY)
+                cost += 2 * Math.ceil((bytes1 + bytes2) / BufferPool.PAGE_SIZE) * TableStats.IOCOSTPERPAGE;
+            return cost;
+        }
+        // Join reads the inner side again for every block of outer tuples,
+        // and sorts and merges each pair of blocks
+        double blocks = Math.max(1, Math.ceil((double) card1 * tupleSize(j.t1Alias) / Join.BLOCK_MEMORY));
+        return cost1 + blocks * cost2 + blocks * card2 + card1;
+    }
+
+    /**
+     * @return the cost of one probe into an index of t2 on f2 for the join
+     *   predicate, or infinity if t2 has no such index. Assumes t2 is a
+     *   base table; the statistics come from {@link TableStats#getTableStats}.
+     */
+    private double indexProbeCost(LogicalJoinNode j) {
+        Integer tableId = j.t2Alias == null ? null : p.getTableId(j.t2Alias);
+        if (tableId == null) return Double.POSITIVE_INFINITY;
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDetail(tableId).fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Comparison.Operation op = IndexNestedLoopJoin.probeOperation(j.p);
+        if (!IndexScan.canUse(tableId, field, op)) return Double.POSITIVE_INFINITY;
+        TableStats stats = TableStats.getTableStats(Database.getCatalog().getTableName(tableId));
+        // without statistics, one index page and one table page
+        return stats != null ? stats.estimateIndexProbeCost(field, op) : 2.0 * TableStats.IOCOSTPERPAGE;
+    }
+
+    // true if the table behind an alias is a BTreeFile keyed on the field
+    private boolean keyedOn(String alias, String field) {
+        Integer tableId = alias == null ? null : p.getTableId(alias);
+        if (tableId == null) return false;
+        try {
+            return keyedOn(tableId, Database.getCatalog().getTupleDetail(tableId).fieldNameToIndex(field));
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    // bytes per tuple of the table behind an alias, or a guess for subplans
+    private int tupleSize(String alias) {
+        Integer tableId = alias == null ? null : p.getTableId(alias);
+        return tableId == null ? 8 : Database.getCatalog().getTupleDetail(tableId).getSize();
     }
 
     /**
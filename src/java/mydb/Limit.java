@@ -0,0 +1,72 @@
+package mydb;
+
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+
+/**
+ * Limit implements a LIMIT without an ORDER BY: it returns the first n
+ * tuples of its child and stops reading it after them.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child;
+    private final int limit;
+    private int returned;
+
+    /**
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public Limit(int limit, DbIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.limit = limit;
+        this.child = child;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public TupleDetail getTupleDetail() {
+        return child.getTupleDetail();
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        child.open();
+        returned = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        child.rewind();
+        returned = 0;
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        if (returned >= limit || !child.hasNext())
+            return null;
+        returned++;
+        return child.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child = children[0];
+    }
+}
@@ -31,6 +31,7 @@ must not be declared synchronized and must begin with a block like:
 </pre>
 */
 
+import mydb.Database.BufferPool;
 import mydb.Database.Database;
 
 import java.io.EOFException;
@@ -100,6 +101,9 @@ public class LogFile {
     long currentOffset = -1;
     int pageSize;
     int totalRecords = 0; // for PatchTest
+    // page images are serialized here by writePageData; grows to the
+    // largest page size logged
+    byte[] pageBuffer = new byte[BufferPool.PAGE_SIZE];
 
     HashMap<Long,Long> tidToFirstLogRecord = new HashMap<Long,Long>();
 
@@ -250,9 +254,12 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        // callers hold the LogFile lock, so one buffer serves every page
+        int pageSize = Database.getCatalog().getPageSize(pid.getTableId());
+        if (pageBuffer.length < pageSize) pageBuffer = new byte[pageSize];
+        p.writeTo(pageBuffer, 0);
+        raf.writeInt(pageSize);
+        raf.write(pageBuffer, 0, pageSize);
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -275,7 +282,6 @@ public class LogFile {
             }
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -285,7 +291,9 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            // pages may have more than one constructor, pick (id, byte[])
+            Constructor<?> pageConst = pageClass.getDeclaredConstructor(pid.getClass(), byte[].class);
+            newPage = (Page)pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e){
@@ -300,6 +308,9 @@ public class LogFile {
         } catch (InvocationTargetException e) {
             e.printStackTrace();
             throw new IOException();
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+            throw new IOException();
         }
         return newPage;
 
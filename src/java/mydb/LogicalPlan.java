@@ -45,6 +45,7 @@ public class LogicalPlan {
     private String aggField;
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
+    private int limit = -1;
     private String query;
 //    private Query owner;
 
@@ -226,6 +227,22 @@ public class LogicalPlan {
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT: return at most n tuples, the first n in the ORDER BY
+        order if there is one.
+        @param n the number of tuples to return at most
+     * @throws ParserException if n is negative
+    */
+    public void addLimit(int n) throws ParserException {
+        if (n < 0)
+            throw new ParserException("Negative LIMIT " + n);
+        limit = n;
+    }
+
+    /** @return the LIMIT of the query, or -1 if it has none */
+    public int getLimit() {
+        return limit;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -281,6 +298,60 @@ public class LogicalPlan {
         throw new ParserException("Unknown predicate " + s);
     }
 
+    /**
+     * Chooses the access path of every table: a SeqScan with the filters on
+     * top, or an IndexScan for the filter an index answers most cheaply,
+     * whichever {@link TableStats} estimates to read fewer pages. Prints
+     * the choice when explain is set.
+     *
+     * @return the filter read through an index, by table alias; tables
+     *   without an entry are scanned
+     */
+    private HashMap<String, LogicalFilterNode> chooseAccessPaths(Map<String, TableStats> statsMap, boolean explain) {
+        HashMap<String, LogicalFilterNode> chosen = new HashMap<String, LogicalFilterNode>();
+        HashMap<String, Double> costs = new HashMap<String, Double>();
+        for (LogicalFilterNode lf : filters) {
+            Integer tableId = getTableId(lf.tableAlias);
+            TableStats s = tableId == null ? null : statsMap.get(Database.getCatalog().getTableName(tableId));
+            if (s == null) continue;
+            TupleDetail td = Database.getCatalog().getTupleDetail(tableId);
+            int field;
+            try {
+                field = td.fieldNameToIndex(lf.fieldPureName);
+            } catch (NoSuchElementException e) {
+                // reported when the filter is planned
+                continue;
+            }
+            if (!IndexScan.canUse(tableId, field, lf.p)) continue;
+            double cost = s.estimateIndexScanCost(field, lf.p, constant(lf, td.getFieldType(field)));
+            Double best = costs.get(lf.tableAlias);
+            if (cost < (best != null ? best : s.estimateScanCost())) {
+                chosen.put(lf.tableAlias, lf);
+                costs.put(lf.tableAlias, cost);
+            }
+        }
+        if (explain) {
+            for (LogicalScanNode table : tables) {
+                TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+                String scanCost = s == null ? "unknown" : String.format("%.0f", s.estimateScanCost());
+                LogicalFilterNode lf = chosen.get(table.alias);
+                if (lf == null)
+                    System.out.println("Access path for " + table.alias + ": SeqScan, cost " + scanCost);
+                else
+                    System.out.printf("Access path for %s: IndexScan on %s %s %s, cost %.0f (SeqScan cost %s)%n",
+                            table.alias, lf.fieldQuantifiedName, lf.p, lf.c, costs.get(table.alias), scanCost);
+            }
+        }
+        return chosen;
+    }
+
+    // the constant of a filter as a field of the given type
+    private static Field constant(LogicalFilterNode lf, Type type) {
+        if (type == Type.INT_TYPE)
+            return new IntField(new Integer(lf.c).intValue());
+        return new StringField(lf.c, Type.STRING_LEN);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -316,7 +387,13 @@ public class LogicalPlan {
 
         }
 
-        Iterator<LogicalFilterNode> filterIt = filters.iterator();        
+        // filters read through an index go first, so they replace the
+        // SeqScan of their table before other filters are stacked on it
+        HashMap<String, LogicalFilterNode> indexFilters = chooseAccessPaths(statsMap, explain);
+        ArrayList<LogicalFilterNode> ordered = new ArrayList<LogicalFilterNode>(indexFilters.values());
+        for (LogicalFilterNode lf : filters)
+            if (!indexFilters.containsValue(lf)) ordered.add(lf);
+        Iterator<LogicalFilterNode> filterIt = ordered.iterator();
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
             DbIterator subplan = subplanMap.get(lf.tableAlias);
@@ -333,10 +410,7 @@ public class LogicalPlan {
             } catch (java.util.NoSuchElementException e) {
                 throw new ParserException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            f = constant(lf, ftyp);
 
             Comparison p = null;
             try {
@@ -344,7 +418,10 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParserException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            if (indexFilters.get(lf.tableAlias) == lf)
+                subplanMap.put(lf.tableAlias, new IndexScan(t, this.getTableId(lf.tableAlias), lf.tableAlias, p));
+            else
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -483,7 +560,11 @@ public class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDetail().fieldNameToIndex(oByField), oByAsc, node);
+            int field = node.getTupleDetail().fieldNameToIndex(oByField);
+            // only the first tuples are wanted, so do not sort the rest
+            node = limit >= 0 ? new TopN(field, oByAsc, limit, node) : new OrderBy(field, oByAsc, node);
+        } else if (limit >= 0) {
+            node = new Limit(limit, node);
         }
 
         return new Project(outFields, outTypes, node);
@@ -42,6 +42,11 @@ public class LongField implements Field {
         dos.writeLong(value);
     }
 
+    public void serialize(byte[] dest, int offset) {
+        for (int i = 0; i < 8; i++)
+            dest[offset + i] = (byte) (value >>> (56 - 8 * i));
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
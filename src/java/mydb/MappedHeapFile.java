@@ -0,0 +1,96 @@
+package mydb;
+
+import mydb.Exception.DBException;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A HeapFile that reads pages through memory-mapped segments of the file
+ * instead of copying each page into a new array with a read call. Meant for
+ * tables that are read far more often than they are written, such as
+ * dimension tables that do not change after loading.
+ * <p>
+ * The file is mapped read-only in segments of {@link #SEGMENT_PAGES} pages,
+ * each on first use. Writes still go through the file channel; the mapping
+ * shares the OS page cache, so it sees them. A segment that does not cover
+ * a page the file has grown to is mapped again.
+ * <p>
+ * Select it per table in the catalog file with {@code storage=mmap}.
+ */
+public class MappedHeapFile extends HeapFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Pages per mapped segment (4 MB with 4 KB pages). */
+    public static final int SEGMENT_PAGES = 1024;
+
+    // indexed by segment number; guarded by this
+    private transient List<MappedByteBuffer> segments;
+
+    public MappedHeapFile(File f, TupleDetail detail) {
+        super(f, detail);
+    }
+
+    public MappedHeapFile(File f, TupleDetail detail, int pageSize) {
+        super(f, detail, pageSize);
+    }
+
+    private long segmentBytes() {
+        return (long) SEGMENT_PAGES * getPageSize();
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) throws IOException, DBException {
+        if(pid == null) throw new DBException("readPage error:invalid page info");
+        int pageSize = getPageSize();
+        long position = (long) pid.pageNumber() * pageSize;
+        ByteBuffer segment = segment((int) (position / segmentBytes()), position + pageSize);
+        // a page past the end of the file reads as zeros
+        if (segment == null) return super.readPage(pid);
+        ByteBuffer page = segment.duplicate();
+        int offset = (int) (position % segmentBytes());
+        page.position(offset);
+        page.limit(offset + pageSize);
+        return newPage((HeapPageId) pid, page.slice());
+    }
+
+    /**
+     * Returns the mapping of a segment, remapping it if it ends before
+     * requiredEnd (an absolute file offset).
+     *
+     * @return null if the file itself ends before requiredEnd
+     */
+    private synchronized ByteBuffer segment(int index, long requiredEnd) throws IOException {
+        if (segments == null) segments = new ArrayList<>();
+        while (segments.size() <= index)
+            segments.add(null);
+        long start = index * segmentBytes();
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null || start + segment.capacity() < requiredEnd) {
+            FileChannel channel = channel();
+            long size = Math.min(segmentBytes(), channel.size() - start);
+            if (start + size < requiredEnd) return null;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            segments.set(index, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Drops the mappings and closes the channel. The mappings themselves go
+     * away when they are garbage collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segments = null;
+        super.close();
+    }
+}
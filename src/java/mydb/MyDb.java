@@ -6,6 +6,7 @@ import mydb.TupleDetail.Tuple;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class MyDb {
     public static void main (String[] args)
@@ -14,6 +15,12 @@ public class MyDb {
         switch (args[0]) {
             case "convert":
                 try {
+                    // convert <file> <columns> [types [separator]] [--threads N] [--page-size BYTES]
+                    String threadsOption = option(args, "--threads");
+                    String pageSizeOption = option(args, "--page-size");
+                    args = withoutOption(withoutOption(args, "--threads"), "--page-size");
+                    int threads = threadsOption == null ? 1 : Integer.parseInt(threadsOption);
+                    int pageSize = pageSizeOption == null ? BufferPool.PAGE_SIZE : Integer.parseInt(pageSizeOption);
                     if (args.length < 3 || args.length > 5) {
                         System.err.println("Unexpected number of arguments to convert ");
                         return;
@@ -50,7 +57,7 @@ public class MyDb {
                     }
 
                     HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                            BufferPool.PAGE_SIZE, numOfAttributes, ts, fieldSeparator);
+                            pageSize, numOfAttributes, ts, fieldSeparator, threads);
 
                 } catch (IOException e) {
                     throw new RuntimeException(e);
@@ -100,5 +107,21 @@ public class MyDb {
         }
     }
 
+    // the value following name in args, or null
+    private static String option(String[] args, String name) {
+        int at = Arrays.asList(args).indexOf(name);
+        if (at < 0) return null;
+        if (at + 1 >= args.length) throw new IllegalArgumentException(name + " needs a value");
+        return args[at + 1];
+    }
 
+    // args without name and its value
+    private static String[] withoutOption(String[] args, String name) {
+        int at = Arrays.asList(args).indexOf(name);
+        if (at < 0) return args;
+        String[] rest = new String[args.length - 2];
+        System.arraycopy(args, 0, rest, 0, at);
+        System.arraycopy(args, at + 2, rest, at, args.length - at - 2);
+        return rest;
+    }
 }
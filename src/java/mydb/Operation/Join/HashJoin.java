@@ -0,0 +1,435 @@
+package mydb.Operation.Join;
+
+import mydb.DbFileIterator;
+import mydb.DbIterator;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.Field;
+import mydb.JoinCompare;
+import mydb.Operator;
+import mydb.SpillFile;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.Utility;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Joins two children on an equality predicate by building a hash table on
+ * the smaller one and streaming the other one through it, reading each child
+ * once, where {@link Join} reads the inner child again for every block of
+ * outer tuples.
+ * <p>
+ * The build side is found while reading: up to {@link #MEMORY} bytes of
+ * each child are read, and the table is built on the smaller one if it
+ * ended there. If neither fits, both are split by a hash of the join field into
+ * {@link #FANOUT} partitions written to temporary HeapFiles (Grace hash
+ * join), and each pair of partitions is joined the same way, splitting it
+ * again with another hash if its smaller side still does not fit. A pair
+ * still too large after {@code MAX_LEVEL} splits, because most of its tuples
+ * have one join value, is joined by a block nested-loop {@link Join}, which
+ * is slower but needs no more memory as the pair grows. The
+ * partitions are {@link SpillFile}s, deleted when the join is closed or
+ * rewound, or fails.
+ */
+public class HashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Bytes of tuples kept in the hash table before the join spills to disk. */
+    public static final int MEMORY = 4 * Join.BLOCK_MEMORY;
+
+    /** Partitions each side is split into when it spills. */
+    public static final int FANOUT = 16;
+
+    // splits of a partition pair before it is joined by nested loops, e.g.
+    // when most tuples have the same join value
+    private static final int MAX_LEVEL = 4;
+
+    private final JoinCompare p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final int memory;
+    // of the joined tuples, made on first use
+    private TupleDetail tupleDetail;
+
+    // partition pairs not joined yet
+    private Deque<Partition[]> pending;
+    private List<Partition> partitions;
+    // build tuples by join value, and whether they come from child1
+    private HashMap<Field, List<Tuple>> table;
+    private boolean buildLeft;
+    // null when the current pair is done
+    private Input probe;
+    private Tuple probeTuple;
+    private List<Tuple> matches;
+    private int match;
+    // the pair being joined by nested loops, and its partitions
+    private Join nested;
+    private Partition[] nestedPair;
+    private int nestedPairs;
+
+    /**
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public HashJoin(JoinCompare p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, MEMORY);
+    }
+
+    /**
+     * @param memory bytes of tuples kept in the hash table before spilling,
+     *   counted by {@link TupleDetail#getSize}
+     */
+    public HashJoin(JoinCompare p, DbIterator child1, DbIterator child2, int memory) {
+        if (p.getOperator() != Comparison.Operation.EQUALS)
+            throw new IllegalArgumentException("hash join needs an equality, not " + p.getOperator());
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memory = memory;
+    }
+
+    public JoinCompare getJoinPredicate() {
+        return p;
+    }
+
+    public TupleDetail getTupleDetail() {
+        if (tupleDetail == null)
+            tupleDetail = TupleDetail.merge(child1.getTupleDetail(), child2.getTupleDetail());
+        return tupleDetail;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        super.open();
+        child1.open();
+        child2.open();
+        boolean started = false;
+        try {
+            start();
+            started = true;
+        } finally {
+            if (!started) discard();
+        }
+    }
+
+    public void close() {
+        discard();
+        child1.close();
+        child2.close();
+        super.close();
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        discard();
+        child1.rewind();
+        child2.rewind();
+        boolean started = false;
+        try {
+            start();
+            started = true;
+        } finally {
+            if (!started) discard();
+        }
+    }
+
+    /**
+     * @return true if the hash table of the pair being joined holds tuples
+     *   of the left child, false if of the right one
+     */
+    public boolean buildsLeft() {
+        return buildLeft;
+    }
+
+    /**
+     * @return the number of partition pairs joined by nested loops since the
+     *   join was opened or rewound, because they did not fit in memory
+     */
+    public int nestedLoopPairs() {
+        return nestedPairs;
+    }
+
+    /**
+     * @return the number of partition files written since the join was
+     *   opened or rewound, 0 if it ran in memory
+     */
+    public int spilledPartitions() {
+        return partitions == null ? 0 : partitions.size();
+    }
+
+    // reads the memory's worth of both children, and builds on the smaller
+    // one if it fits, or partitions both
+    private void start() throws DBException, TransactionAbortedException, IOException {
+        pending = new ArrayDeque<>();
+        partitions = new ArrayList<>();
+        nestedPairs = 0;
+        int size1 = child1.getTupleDetail().getSize();
+        int size2 = child2.getTupleDetail().getSize();
+        List<Tuple> left = new ArrayList<>();
+        boolean leftEnded = fill(child1, left, size1);
+        List<Tuple> right = new ArrayList<>();
+        boolean rightEnded = fill(child2, right, size2);
+        if (leftEnded && (!rightEnded || (long) left.size() * size1 <= (long) right.size() * size2)) {
+            build(left, true);
+            probe = new Input(right, child2, null);
+            return;
+        }
+        if (rightEnded) {
+            build(right, false);
+            probe = new Input(left, child1, null);
+            return;
+        }
+        Partition[] lefts = split(new Input(left, child1, null), child1.getTupleDetail(), p.getField1(), 0);
+        left = null;
+        Partition[] rights = split(new Input(right, child2, null), child2.getTupleDetail(), p.getField2(), 0);
+        for (int i = 0; i < FANOUT; i++)
+            pending.add(new Partition[] {lefts[i], rights[i]});
+    }
+
+    /**
+     * Reads tuples of child into tuples until it ends or they take more
+     * than the memory.
+     * @return true if the child ended
+     */
+    private boolean fill(DbIterator child, List<Tuple> tuples, int size)
+            throws DBException, TransactionAbortedException, IOException {
+        long bytes = 0;
+        while (child.hasNext()) {
+            tuples.add(child.next());
+            bytes += size;
+            if (bytes > memory) return false;
+        }
+        return true;
+    }
+
+    private void build(List<Tuple> tuples, boolean left) {
+        buildLeft = left;
+        int field = left ? p.getField1() : p.getField2();
+        table = new HashMap<>(tuples.size() * 4 / 3 + 1);
+        for (Tuple t : tuples) {
+            Field key = t.getField(field);
+            List<Tuple> same = table.get(key);
+            if (same == null) {
+                same = new ArrayList<>(1);
+                table.put(key, same);
+            }
+            same.add(t);
+        }
+    }
+
+    /**
+     * Starts joining the next pair of partitions, splitting it again first
+     * if neither side fits in memory, or joining it by nested loops if it
+     * has been split too often.
+     * @return false if no pair is left
+     */
+    private boolean nextPair() throws DBException, TransactionAbortedException, IOException {
+        while (!pending.isEmpty()) {
+            Partition[] pair = pending.poll();
+            Partition l = pair[0];
+            Partition r = pair[1];
+            if (l.tuples == 0 || r.tuples == 0) {
+                l.delete();
+                r.delete();
+                continue;
+            }
+            boolean left = l.bytes <= r.bytes;
+            Partition build = left ? l : r;
+            if (build.bytes > memory && l.level < MAX_LEVEL) {
+                Partition[] lefts = split(new Input(Collections.<Tuple>emptyList(), null, l), l.detail,
+                        p.getField1(), l.level + 1);
+                Partition[] rights = split(new Input(Collections.<Tuple>emptyList(), null, r), r.detail,
+                        p.getField2(), r.level + 1);
+                l.delete();
+                r.delete();
+                for (int i = FANOUT - 1; i >= 0; i--)
+                    pending.push(new Partition[] {lefts[i], rights[i]});
+                continue;
+            }
+            if (build.bytes > memory) {
+                nestedPair = pair;
+                nestedPairs++;
+                nested = new Join(p, l.file.scan(), r.file.scan());
+                nested.open();
+                return true;
+            }
+            List<Tuple> tuples = new ArrayList<>(build.tuples);
+            Input in = new Input(Collections.<Tuple>emptyList(), null, build);
+            for (Tuple t = in.next(); t != null; t = in.next())
+                tuples.add(t);
+            build.delete();
+            build(tuples, left);
+            probe = new Input(Collections.<Tuple>emptyList(), null, left ? r : l);
+            return true;
+        }
+        return false;
+    }
+
+    // writes the tuples of in to FANOUT new partitions by the hash of field
+    private Partition[] split(Input in, TupleDetail detail, int field, int level)
+            throws DBException, TransactionAbortedException, IOException {
+        Partition[] parts = new Partition[FANOUT];
+        for (int i = 0; i < FANOUT; i++) {
+            parts[i] = new Partition(detail, level);
+            partitions.add(parts[i]);
+        }
+        for (Tuple t = in.next(); t != null; t = in.next())
+            parts[partition(t.getField(field), level)].add(t);
+        for (Partition part : parts)
+            part.finish();
+        return parts;
+    }
+
+    /** @return the partition of a join value, with a different hash on every level */
+    static int partition(Field value, int level) {
+        int h = Utility.mixHash(value.hashCode() + level * 0x9e3779b9);
+        return (h & 0x7fffffff) % FANOUT;
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        boolean fetched = false;
+        try {
+            Tuple t = fetch();
+            fetched = true;
+            return t;
+        } finally {
+            // the partitions are of no use after a failure
+            if (!fetched) discard();
+        }
+    }
+
+    private Tuple fetch() throws DBException, TransactionAbortedException, IOException {
+        for (;;) {
+            if (nested != null) {
+                if (nested.hasNext()) return nested.next();
+                closeNested();
+                continue;
+            }
+            if (matches != null) {
+                while (match < matches.size()) {
+                    Tuple t = matches.get(match++);
+                    Tuple t1 = buildLeft ? t : probeTuple;
+                    Tuple t2 = buildLeft ? probeTuple : t;
+                    if (p.filter(t1, t2)) return Join.mergeTuple(getTupleDetail(), t1, t2);
+                }
+                matches = null;
+            }
+            if (probe == null) {
+                if (pending == null || !nextPair()) return null;
+                if (nested != null) continue;
+            }
+            probeTuple = probe.next();
+            if (probeTuple == null) {
+                probe.done();
+                probe = null;
+                table = null;
+                continue;
+            }
+            matches = table.get(probeTuple.getField(buildLeft ? p.getField2() : p.getField1()));
+            match = 0;
+        }
+    }
+
+    private void closeNested() {
+        nested.close();
+        nested = null;
+        nestedPair[0].delete();
+        nestedPair[1].delete();
+        nestedPair = null;
+    }
+
+    // drops the hash table and deletes the partition files
+    private void discard() {
+        if (nested != null) closeNested();
+        if (partitions != null) {
+            for (Partition part : partitions)
+                part.delete();
+        }
+        partitions = null;
+        pending = null;
+        table = null;
+        probe = null;
+        matches = null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] {child1, child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+        tupleDetail = null;
+    }
+
+    /**
+     * The tuples already read from a child, then the rest of the child, or
+     * the tuples of a partition.
+     */
+    private static class Input {
+        private final Iterator<Tuple> read;
+        private final DbIterator child;
+        private final Partition partition;
+        private final DbFileIterator spilled;
+
+        Input(List<Tuple> read, DbIterator child, Partition partition) throws DBException,
+                TransactionAbortedException, IOException {
+            this.read = read.iterator();
+            this.child = child;
+            this.partition = partition;
+            spilled = partition == null ? null : partition.file.iterator();
+            if (spilled != null) spilled.open();
+        }
+
+        /** @return the next tuple, or null at the end */
+        Tuple next() throws DBException, TransactionAbortedException, IOException {
+            if (read.hasNext()) return read.next();
+            if (child != null) return child.hasNext() ? child.next() : null;
+            return spilled.hasNext() ? spilled.next() : null;
+        }
+
+        /** Deletes the partition read, if any. */
+        void done() {
+            if (partition == null) return;
+            spilled.close();
+            partition.delete();
+        }
+    }
+
+    /** The tuples of one side of the join with the same hash. */
+    private static class Partition {
+        final TupleDetail detail;
+        final int level;
+        final SpillFile file;
+        int tuples;
+        long bytes;
+
+        Partition(TupleDetail detail, int level) throws IOException {
+            this.detail = detail;
+            this.level = level;
+            file = new SpillFile(detail);
+        }
+
+        void add(Tuple tuple) throws DBException, IOException {
+            file.add(tuple);
+            tuples++;
+            bytes += detail.getSize();
+        }
+
+        void finish() throws DBException, IOException {
+            file.finish();
+        }
+
+        void delete() {
+            file.delete();
+        }
+    }
+}
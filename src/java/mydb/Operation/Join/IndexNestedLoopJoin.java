@@ -0,0 +1,155 @@
+package mydb.Operation.Join;
+
+import mydb.DbIterator;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.Field;
+import mydb.IndexScan;
+import mydb.JoinCompare;
+import mydb.Operator;
+import mydb.TransactionId;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins each tuple of the outer child with the tuples of an inner table that
+ * an index on the inner join field finds for it, instead of reading the
+ * inner table again for every block of outer tuples as {@link Join} does.
+ * Filters the plan had on the inner table are applied to the tuples the
+ * index returns. See {@link mydb.JoinOptimizer#instantiateJoin}, which
+ * chooses it.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinCompare p;
+    private DbIterator outer;
+    // the plan the index replaces; only its TupleDetail is used
+    private DbIterator inner;
+    private final TransactionId tid;
+    private final int innerTableId;
+    private final String innerAlias;
+    private final List<Comparison> innerFilters;
+    // the join operation with the inner field on the left
+    private final Comparison.Operation probeOperation;
+    // of the joined tuples, made on first use
+    private TupleDetail tupleDetail;
+    private Tuple outerTuple;
+    // null between outer tuples
+    private IndexScan probe;
+
+    /**
+     * @param p the join predicate; field 1 is in the outer tuples, field 2
+     *   in the inner table
+     * @param inner the plan the join replaces: a scan of the inner table
+     *   under the filters in innerFilters
+     * @throws IllegalArgumentException if the inner table has no index that
+     *   answers the join predicate
+     */
+    public IndexNestedLoopJoin(JoinCompare p, DbIterator outer, DbIterator inner, TransactionId tid,
+            int innerTableId, String innerAlias, List<Comparison> innerFilters) {
+        this.probeOperation = probeOperation(p.getOperator());
+        if (!IndexScan.canUse(innerTableId, p.getField2(), probeOperation))
+            throw new IllegalArgumentException("no index on inner field " + p.getField2() + " for " + p.getOperator());
+        this.p = p;
+        this.outer = outer;
+        this.inner = inner;
+        this.tid = tid;
+        this.innerTableId = innerTableId;
+        this.innerAlias = innerAlias;
+        this.innerFilters = new ArrayList<>(innerFilters);
+    }
+
+    /**
+     * @return the operation r for which {@code v r o} holds exactly when
+     *   {@code o op v} does: the join predicate seen from the inner table
+     */
+    public static Comparison.Operation probeOperation(Comparison.Operation op) {
+        switch (op) {
+        case GREATER_THAN:
+            return Comparison.Operation.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Comparison.Operation.LESS_THAN_OR_EQ;
+        case LESS_THAN:
+            return Comparison.Operation.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Comparison.Operation.GREATER_THAN_OR_EQ;
+        default:
+            return op;
+        }
+    }
+
+    public JoinCompare getJoinPredicate() {
+        return p;
+    }
+
+    public TupleDetail getTupleDetail() {
+        if (tupleDetail == null)
+            tupleDetail = TupleDetail.merge(outer.getTupleDetail(), inner.getTupleDetail());
+        return tupleDetail;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        super.open();
+        outer.open();
+        outerTuple = null;
+        probe = null;
+    }
+
+    public void close() {
+        closeProbe();
+        outer.close();
+        super.close();
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        closeProbe();
+        outer.rewind();
+    }
+
+    private void closeProbe() {
+        if (probe != null) probe.close();
+        probe = null;
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        for (;;) {
+            if (probe != null) {
+                while (probe.hasNext()) {
+                    Tuple t = probe.next();
+                    if (passesFilters(t) && p.filter(outerTuple, t)) return Join.mergeTuple(getTupleDetail(), outerTuple, t);
+                }
+                closeProbe();
+            }
+            if (!outer.hasNext()) return null;
+            outerTuple = outer.next();
+            Field key = outerTuple.getField(p.getField1());
+            probe = new IndexScan(tid, innerTableId, innerAlias, new Comparison(p.getField2(), probeOperation, key));
+            probe.open();
+        }
+    }
+
+    private boolean passesFilters(Tuple t) {
+        for (Comparison filter : innerFilters) {
+            if (!filter.filter(t)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] {outer, inner};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        outer = children[0];
+        inner = children[1];
+        tupleDetail = null;
+    }
+}
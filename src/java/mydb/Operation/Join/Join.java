@@ -11,25 +11,44 @@ import java.io.IOException;
 import java.util.*;
 
 // The Join operator implements the relational join operation.
+// It is a block nested-loop join that sorts each pair of blocks to merge
+// them, so it handles any predicate; equi-joins have HashJoin and
+// SortMergeJoin, which read each child once.
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1421683959262591903L;
     // The predicate to use to join the children
     private JoinCompare p;
+    // left field > right field, for skipping right tuples in equality merges
+    private JoinCompare greaterThan;
     // Iterator for the left(outer) relation to join
     private DbIterator child1;
     // Iterator for the right(inner) relation to join
     private DbIterator child2;
+    // blocks of the children, sorted on the join fields
     private Tuple[] leftBuffer;
     private Tuple[] rightBuffer;
-    private ArrayList<Tuple> tempTps;
+    // tuples in the buffers
+    private int leftSize;
+    private int rightSize;
+    // the left tuple being joined, and the right tuples left to try for it
+    private int leftIndex;
+    private int rightIndex;
+    private int rightEnd;
+    // first right tuple that can still match, for the sorted operations
+    private int rightStart;
+    // child2 is rewound for every left block but the first
+    private boolean rewindRight;
+    private TupleDetail tupleDetail;
 
     //131072 is the default buffer of mysql join operation
-    private static final int BLOCK_MEMORY = 131072 * 5;
+    /** Bytes of tuples of each child that are sorted and merged at a time. */
+    public static final int BLOCK_MEMORY = 131072 * 5;
 
 
     public Join(JoinCompare p, DbIterator child1, DbIterator child2) {
         this.p = p;
+        this.greaterThan = new JoinCompare(p.getField1(), Comparison.Operation.GREATER_THAN, p.getField2());
         this.child1 = child1;
         this.child2 = child2;
     }
@@ -50,9 +69,12 @@ public class Join extends Operator {
     }
 
     public TupleDetail getTupleDetail() {
-        TupleDetail td1 = child1.getTupleDetail();
-        TupleDetail td2 = child2.getTupleDetail();
-        return TupleDetail.merge(td1, td2);
+        if (tupleDetail == null) {
+            TupleDetail td1 = child1.getTupleDetail();
+            TupleDetail td2 = child2.getTupleDetail();
+            tupleDetail = TupleDetail.merge(td1, td2);
+        }
+        return tupleDetail;
     }
 
     public void open() throws DBException, NoSuchElementException,
@@ -60,31 +82,29 @@ public class Join extends Operator {
         super.open();
         child1.open();
         child2.open();
-        tpIter = getAllFetchNext();
+        leftBuffer = new Tuple[Math.max(1, BLOCK_MEMORY / child1.getTupleDetail().getSize())];
+        rightBuffer = new Tuple[Math.max(1, BLOCK_MEMORY / child2.getTupleDetail().getSize())];
+        reset();
     }
 
     public void close() {
         child1.close();
         child2.close();
         super.close();
-        tpIter = null;
+        leftBuffer = null;
+        rightBuffer = null;
     }
 
     public void rewind() throws DBException, TransactionAbortedException, IOException {
         child1.rewind();
         child2.rewind();
-        tpIter = getAllFetchNext();
+        reset();
     }
-    private Iterator<Tuple> tpIter = null;
 
-    // Returns the next tuple generated by the join
-    protected Tuple fetchNext() throws TransactionAbortedException, DBException {
-        if (tpIter == null) return null;
-        Tuple tp = null;
-        if (tpIter.hasNext()){
-            tp = tpIter.next();
-        }
-        return tp;
+    private void reset() {
+        leftSize = rightSize = 0;
+        leftIndex = rightIndex = rightEnd = rightStart = 0;
+        rewindRight = false;
     }
 
     /*执行 sort-merge 算法 link(https://en.wikipedia.org/wiki/Sort-merge_join)
@@ -93,193 +113,108 @@ public class Join extends Operator {
      * 2. 用数组缓存，使用BNL算法，缺点是速度还是满，第一个query用了0.3s，第二个query用了2s，第三个query用了423.04s，第三个速度太慢
      * 3. sort-merge 算法 排序算法决定整个程序运行速度下限，刚开始使用冒泡排序，第二个query用了140多秒，第三个就更不用说了
      *    之后使用java内置的sort速度明显提高，第一个0.40s，第二个2.30s，第三个6.28s
+     *
+     * Returns the next tuple generated by the join. The join of a left block
+     * with a right block is resumed where the last call stopped, so only
+     * the two blocks are held in memory, never the result.
      */
-    private Iterator<Tuple> getAllFetchNext() throws TransactionAbortedException, DBException, IOException {
-        tempTps = new ArrayList<>();
-
-        //use sorted-merge algorithm
-        int leftBufferSize = BLOCK_MEMORY / child1.getTupleDetail().getSize();
-        int rightBufferSize = BLOCK_MEMORY / child2.getTupleDetail().getSize();
-
-        leftBuffer = new Tuple[leftBufferSize];
-        rightBuffer = new Tuple[rightBufferSize];
-
-        int leftIndex = 0;
-        int rightIndex = 0;
-
-        //先将数据读取到buffer里面
-        while (child1.hasNext()){
-            Tuple tp1 = child1.next();
-            leftBuffer[leftIndex++] = tp1;
-
-            //左缓存没有读满就一直读
-            if (leftIndex < leftBufferSize) continue;
-
-            //左缓存读满，读右表，直至读满
-            while (child2.hasNext()){
-                Tuple tp2 = child2.next();
-                rightBuffer[rightIndex++] = tp2;
-
-                //右缓存没有读满就一直读
-                if (rightIndex < rightBufferSize) continue;
-
-                //右缓存读满 && 左缓存读满
-
-                sortMerge(leftIndex, rightIndex);
-
-                //重置右缓存
-                rightIndex = 0;
+    protected Tuple fetchNext() throws TransactionAbortedException, DBException, IOException {
+        if (leftBuffer == null) return null;
+        for (;;) {
+            while (rightIndex < rightEnd) {
+                Tuple rtp = rightBuffer[rightIndex++];
+                if (p.filter(leftBuffer[leftIndex], rtp))
+                    return mergeTuple(getTupleDetail(), leftBuffer[leftIndex], rtp);
             }
-
-            //处理剩余的右缓存（右缓存没满 && 左缓存已满）
-            if (rightIndex < rightBufferSize) {
-
-                sortMerge(leftIndex, rightIndex);
-
-                //重置右缓存
-                rightIndex = 0;
+            if (leftIndex + 1 < leftSize) {
+                leftIndex++;
+                matchRange();
+                continue;
             }
-
-            //reset buffer
-            leftIndex = 0;
-            child2.rewind();
-        }
-
-        //左缓存没满
-        if (leftIndex != 0) {
-
-            //读右表，直至读满
-            while (child2.hasNext()){
-                Tuple tp2 = child2.next();
-                rightBuffer[rightIndex++] = tp2;
-
-                //右缓存没有读满就一直读
-                if (rightIndex < rightBufferSize) continue;
-
-                //右缓存读满 && 左缓存没满
-
-                sortMerge(leftIndex, rightIndex);
-
-                //重置右缓存
-                rightIndex = 0;
+            // the block pair is done: next right block, or next left block
+            // from the start of child2
+            if (leftSize == 0 || !readRightBlock()) {
+                if (!readLeftBlock() || !readRightBlock()) return null;
             }
-
-            //（右缓存没满 && 左缓存没满）
-            if (rightIndex < rightBufferSize) {
-
-                sortMerge(leftIndex, rightIndex);
-
-                //重置右缓存
-                rightIndex = 0;
-            }
-
+            leftIndex = 0;
+            rightStart = 0;
+            matchRange();
         }
+    }
 
-        return tempTps.iterator();
+    // reads and sorts the next left block; false if child1 is exhausted
+    private boolean readLeftBlock() throws TransactionAbortedException, DBException, IOException {
+        leftSize = 0;
+        while (leftSize < leftBuffer.length && child1.hasNext())
+            leftBuffer[leftSize++] = child1.next();
+        if (leftSize == 0) return false;
+        if (rewindRight) child2.rewind();
+        rewindRight = true;
+        sort(leftBuffer, leftSize, p.getField1());
+        return true;
     }
 
-    private void sortMerge(int leftSize, int rightSize) {
-        if (leftSize == 0 || rightSize == 0 ) return;
+    // reads and sorts the next right block; false if child2 is exhausted
+    private boolean readRightBlock() throws TransactionAbortedException, DBException, IOException {
+        rightSize = 0;
+        while (rightSize < rightBuffer.length && child2.hasNext())
+            rightBuffer[rightSize++] = child2.next();
+        if (rightSize == 0) return false;
+        sort(rightBuffer, rightSize, p.getField2());
+        return true;
+    }
 
-        //EQUALS, GREATER_THAN, LESS_THAN, LESS_THAN_OR_EQ, GREATER_THAN_OR_EQ, LIKE, NOT_EQUALS;
-        switch (p.getOperator()){
+    /**
+     * Sets the range of the right block to try for the current left tuple.
+     * Both blocks are sorted so that the tuples matching successive left
+     * tuples start at a position that only moves forward.
+     */
+    private void matchRange() {
+        Tuple ltp = leftBuffer[leftIndex];
+        switch (p.getOperator()) {
             case EQUALS:
-                handleEqual(leftSize, rightSize);
+                // skip the right tuples smaller than the left one; the equal
+                // ones follow
+                while (rightStart < rightSize && greaterThan.filter(ltp, rightBuffer[rightStart]))
+                    rightStart++;
+                rightEnd = rightStart;
+                while (rightEnd < rightSize && p.filter(ltp, rightBuffer[rightEnd]))
+                    rightEnd++;
                 break;
             case GREATER_THAN:
             case GREATER_THAN_OR_EQ:
-                handleGreaterThan(leftSize, rightSize);
-                break;
             case LESS_THAN:
             case LESS_THAN_OR_EQ:
-                handleLessThan(leftSize, rightSize);
+                // the first match and everything after it match
+                while (rightStart < rightSize && !p.filter(ltp, rightBuffer[rightStart]))
+                    rightStart++;
+                rightEnd = rightSize;
+                break;
+            default:
+                // no order helps: try every right tuple
+                rightStart = 0;
+                rightEnd = rightSize;
                 break;
         }
-
-    }
-
-    private void handleLessThan(int leftSize, int rightSize) {
-        sort(leftBuffer, leftSize, p.getField1(), false);
-        sort(rightBuffer, rightSize, p.getField2(), false);
-
-        int left = 0;
-        int right = 0;
-
-        mergeTuple(leftSize, rightSize, left, right);
-    }
-
-    private void mergeTuple(int leftSize, int rightSize, int left, int right) {
-        while (left < leftSize && right < rightSize) {
-            Tuple ltp = leftBuffer[left];
-            Tuple rtp = rightBuffer[right];
-
-            if (p.filter(ltp, rtp)){
-                for (int i = right; i < rightSize; i++) {
-                    Tuple rtpTemp = rightBuffer[i];
-                    Tuple tp = mergeTuple(ltp, rtpTemp);
-                    tempTps.add(tp);
-                }
-                left++;
-            } else {
-                right++;
-            }
-        }
+        rightIndex = rightStart;
     }
 
-    private void handleGreaterThan(int leftSize, int rightSize) {
-        sort(leftBuffer, leftSize, p.getField1(), true);
-        sort(rightBuffer, rightSize, p.getField2(), true);
-
-        int left = 0;
-        int right = 0;
-
-        mergeTuple(leftSize, rightSize, left, right);
-    }
-
-    private void handleEqual(int leftSize, int rightSize) {
-        sort(leftBuffer, leftSize, p.getField1(), false);
-        sort(rightBuffer, rightSize, p.getField2(), false);
-
-        int left = 0;
-        int right = 0;
-
-        JoinCompare greatThan = new JoinCompare(p.getField1(), Comparison.Operation.GREATER_THAN, p.getField2());
-
-        boolean equalFlag = true;
-        int leftFlag = 0;
-
-        while (left < leftSize && right < rightSize) {
-            Tuple ltp = leftBuffer[left];
-            Tuple rtp = rightBuffer[right];
-
-            if (p.filter(ltp, rtp)){
-                if (equalFlag) {
-                    leftFlag = left;
-                    equalFlag = !equalFlag;
-                }
-                Tuple tp = mergeTuple(ltp, rtp);
-                tempTps.add(tp);
-                left++;
-
-                if (right < rightSize && left >= leftSize) {
-                    right++;
-                    left = leftFlag;
-                    equalFlag = !equalFlag;
-                }
-
-            } else if (greatThan.filter(ltp, rtp)){
-                right++;
-                left = leftFlag;
-                equalFlag = !equalFlag;
-            } else {
-                left++;
-            }
+    //根据tuple中的field进行排序: ascending, or descending for > and >=
+    private void sort(Tuple[] buffer, int length, int field) {
+        boolean reverse;
+        switch (p.getOperator()) {
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+                reverse = false;
+                break;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                reverse = true;
+                break;
+            default:
+                return;
         }
-    }
-
-    //根据tuple中的field进行排序
-    private void sort(Tuple[] buffer, int length, int field, boolean reverse) {
-
         CompareTp co = new CompareTp(reverse, field);
         Arrays.sort(buffer, 0, length, co);
 
@@ -311,11 +246,15 @@ public class Join extends Operator {
         }
     }
 
-    private Tuple mergeTuple(Tuple tp1, Tuple tp2) {
+    /**
+     * @return a tuple of td, which joins the details of tp1 and tp2, with
+     *   the fields of tp1 followed by those of tp2; shared by the joins
+     */
+    static Tuple mergeTuple(TupleDetail td, Tuple tp1, Tuple tp2) {
         int tpSize1 = tp1.getTupleDetail().fieldNumber();
         int tpSize2 = tp2.getTupleDetail().fieldNumber();
 
-        Tuple tempTp = new Tuple(getTupleDetail());
+        Tuple tempTp = new Tuple(td);
         int i = 0;
         for (; i < tpSize1; i++){
             tempTp.setField(i, tp1.getField(i));
@@ -337,6 +276,7 @@ public class Join extends Operator {
     public void setChildren(DbIterator[] children) {
         child1 = children[0];
         child2 = children[1];
+        tupleDetail = null;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package mydb.Operation.Join;
+
+import mydb.DbIterator;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.ExternalSort;
+import mydb.JoinCompare;
+import mydb.Operator;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins two children on an equality predicate by sorting each of them once
+ * on its join field, with an {@link ExternalSort}, and merging the two
+ * sorted streams in one pass. A child the caller knows to be sorted
+ * ascending on its join field already, e.g. an {@link mydb.OrderBy} or a
+ * scan of a {@link mydb.BTreeFile} keyed on it, is not sorted again.
+ * <p>
+ * The right tuples with the join value of the current left tuple are kept
+ * in memory while the left tuples with that value are joined with them.
+ * The result comes out ordered on the join field.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinCompare p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final boolean sorted1;
+    private final boolean sorted2;
+    // the children, sorted
+    private DbIterator input1;
+    private DbIterator input2;
+    // right field < left field, and right field = right field
+    private final JoinCompare rightBefore;
+    private final JoinCompare sameRight;
+    private TupleDetail tupleDetail;
+
+    private Tuple left;
+    // the right tuples equal to left, and the one after them
+    private List<Tuple> group;
+    private int match;
+    private Tuple nextRight;
+
+    /**
+     * @param sorted1 true if child1 is sorted ascending on field 1 of p
+     * @param sorted2 true if child2 is sorted ascending on field 2 of p
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public SortMergeJoin(JoinCompare p, DbIterator child1, DbIterator child2, boolean sorted1, boolean sorted2) {
+        if (p.getOperator() != Comparison.Operation.EQUALS)
+            throw new IllegalArgumentException("sort-merge join needs an equality, not " + p.getOperator());
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.sorted1 = sorted1;
+        this.sorted2 = sorted2;
+        rightBefore = new JoinCompare(p.getField1(), Comparison.Operation.GREATER_THAN, p.getField2());
+        sameRight = new JoinCompare(p.getField2(), Comparison.Operation.EQUALS, p.getField2());
+    }
+
+    public JoinCompare getJoinPredicate() {
+        return p;
+    }
+
+    public TupleDetail getTupleDetail() {
+        if (tupleDetail == null)
+            tupleDetail = TupleDetail.merge(child1.getTupleDetail(), child2.getTupleDetail());
+        return tupleDetail;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        super.open();
+        input1 = sorted1 ? child1 : new ExternalSort(p.getField1(), true, child1);
+        input2 = sorted2 ? child2 : new ExternalSort(p.getField2(), true, child2);
+        boolean started = false;
+        try {
+            input1.open();
+            input2.open();
+            start();
+            started = true;
+        } finally {
+            // the sorted runs of input1 must not outlive a failed open
+            if (!started) close();
+        }
+    }
+
+    public void close() {
+        if (input1 != null) input1.close();
+        if (input2 != null) input2.close();
+        input1 = input2 = null;
+        left = nextRight = null;
+        group = null;
+        super.close();
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        input1.rewind();
+        input2.rewind();
+        start();
+    }
+
+    private void start() throws DBException, TransactionAbortedException, IOException {
+        left = null;
+        group = null;
+        match = 0;
+        nextRight = readRight();
+    }
+
+    private Tuple readRight() throws DBException, TransactionAbortedException, IOException {
+        return input2.hasNext() ? input2.next() : null;
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        if (input1 == null) return null;
+        for (;;) {
+            if (left != null && group != null && match < group.size())
+                return Join.mergeTuple(getTupleDetail(), left, group.get(match++));
+            left = input1.hasNext() ? input1.next() : null;
+            if (left == null) return null;
+            match = 0;
+            // the next left tuple often has the same value
+            if (group != null && p.filter(left, group.get(0))) continue;
+            group = null;
+            while (nextRight != null && rightBefore.filter(left, nextRight))
+                nextRight = readRight();
+            if (nextRight == null) {
+                // no right tuple is left to match
+                left = null;
+                return null;
+            }
+            if (!p.filter(left, nextRight)) continue;
+            group = new ArrayList<>();
+            group.add(nextRight);
+            nextRight = readRight();
+            while (nextRight != null && sameRight.filter(group.get(0), nextRight)) {
+                group.add(nextRight);
+                nextRight = readRight();
+            }
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] {child1, child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+        tupleDetail = null;
+    }
+}
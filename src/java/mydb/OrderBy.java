@@ -2,7 +2,6 @@ package mydb;
 
 import mydb.Exception.DBException;
 import mydb.Exception.TransactionAbortedException;
-import mydb.Operation.Join.Comparison;
 import mydb.TupleDetail.Tuple;
 import mydb.TupleDetail.TupleDetail;
 
@@ -10,18 +9,22 @@ import java.io.IOException;
 import java.util.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY. The tuples
+ * are sorted with an {@link ExternalSort}, so at most a given number of
+ * bytes of them are held in memory; the rest is sorted in runs written to
+ * temporary files and merged.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1236724521661547763L;
     private DbIterator child;
     private TupleDetail td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
     private int orderByField;
     private String orderByFieldName;
-    private Iterator<Tuple> it;
     private boolean asc;
+    private int memory;
+    // the sorted child while open; kept after close for its spill counts
+    private ExternalSort sort;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -34,11 +37,21 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(orderbyField, asc, child, ExternalSort.MEMORY);
+    }
+
+    /**
+     * @param memory
+     *            bytes of tuples sorted in memory at a time, see
+     *            {@link ExternalSort}.
+     */
+    public OrderBy(int orderbyField, boolean asc, DbIterator child, int memory) {
         this.child = child;
         td = child.getTupleDetail();
         this.orderByField = orderbyField;
         this.orderByFieldName = td.getFieldName(orderbyField);
         this.asc = asc;
+        this.memory = memory;
     }
     
     public boolean isASC()
@@ -60,24 +73,33 @@ public class OrderBy extends Operator {
         return td;
     }
 
+    /**
+     * @return the number of sorted runs written to disk by the last open,
+     *   0 if the child fit in memory
+     */
+    public int spilledRuns() {
+        return sort == null ? 0 : sort.spilledRuns();
+    }
+
+    /** @return the bytes written to disk by the last open */
+    public long spilledBytes() {
+        return sort == null ? 0 : sort.spilledBytes();
+    }
+
     public void open() throws DBException, NoSuchElementException,
             TransactionAbortedException, IOException {
-        child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        sort = new ExternalSort(orderByField, asc, child, memory);
+        sort.open();
         super.open();
     }
 
     public void close() {
         super.close();
-        it = null;
+        if (sort != null) sort.close();
     }
 
-    public void rewind() throws DBException, TransactionAbortedException {
-        it = childTups.iterator();
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        sort.rewind();
     }
 
     /**
@@ -88,9 +110,9 @@ public class OrderBy extends Operator {
      *         tuples
      */
     protected Tuple fetchNext() throws NoSuchElementException,
-            TransactionAbortedException, DBException {
-        if (it != null && it.hasNext()) {
-            return it.next();
+            TransactionAbortedException, DBException, IOException {
+        if (sort != null && sort.hasNext()) {
+            return sort.next();
         } else
             return null;
     }
@@ -106,25 +128,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compareWith(Comparison.Operation.EQUALS, t2))
-            return 0;
-        if (t1.compareWith(Comparison.Operation.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-    
-}
@@ -46,6 +46,13 @@ public interface Page {
 
     public byte[] getPageData();
 
+    /**
+     * Writes the same bytes as {@link #getPageData} into dest, starting at
+     * offset, without allocating. Used on the write path with buffers that
+     * are reused from page to page.
+     */
+    public void writeTo(byte[] dest, int offset);
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
@@ -9,6 +9,8 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import mydb.Database.Database;
 import mydb.Exception.DBException;
@@ -291,10 +293,22 @@ public class Parser {
     public Query handleQueryStatement(ZQuery zQuery, TransactionId tId)
             throws TransactionAbortedException, DBException, IOException,
             ParserException, Zql.ParseException {
+        return handleQueryStatement(zQuery, tId, -1);
+    }
+
+    /**
+     * @param limit the LIMIT of the query, cut off by {@link #cutLimit}, or
+     *   -1 if it has none
+     */
+    public Query handleQueryStatement(ZQuery zQuery, TransactionId tId, int limit)
+            throws TransactionAbortedException, DBException, IOException,
+            ParserException, Zql.ParseException {
         // and run it
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, zQuery);
+        if (limit >= 0)
+            lp.addLimit(limit);
         DbIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -473,14 +487,38 @@ public class Parser {
         }
     }
 
+    // a LIMIT at the end of the first statement, which Zql does not parse
+    private static final Pattern LIMIT = Pattern.compile("\\s+limit\\s+(\\d{1,9})\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Removes a trailing "LIMIT n" from the first statement in sql.
+     *
+     * @return n, or -1 if the statement has no LIMIT
+     */
+    static int cutLimit(StringBuilder sql) {
+        int end = sql.indexOf(";");
+        Matcher m = LIMIT.matcher(sql);
+        m.region(0, end < 0 ? sql.length() : end);
+        if (!m.find())
+            return -1;
+        int limit = Integer.parseInt(m.group(1));
+        sql.delete(m.start(), m.end());
+        return limit;
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws ParserException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        StringBuilder sql = new StringBuilder(s);
+        int limit = cutLimit(sql);
+        ByteArrayInputStream bis = new ByteArrayInputStream(sql.toString().getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                if (limit >= 0)
+                    lp.addLimit(limit);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -509,8 +547,16 @@ public class Parser {
     public void processNextStatement(InputStream is) {
 
         try{
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = is.read(buf)) > 0; )
+                bytes.write(buf, 0, n);
+            StringBuilder sql = new StringBuilder(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            int limit = cutLimit(sql);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(sql.toString().getBytes(StandardCharsets.UTF_8)));
             ZStatement s = p.readStatement();
+            if (limit >= 0 && !(s instanceof ZQuery))
+                throw new ParserException("LIMIT is only supported in SELECT statements");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -533,7 +579,7 @@ public class Parser {
                                 curtrans.getId());
                     else if (s instanceof ZQuery)
                         query = handleQueryStatement((ZQuery) s,
-                                curtrans.getId());
+                                curtrans.getId(), limit);
                     else{
                         System.out.println("Can't parse "
                                         + s
@@ -581,7 +627,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit" };
 
     public static void main(String[] argv) throws IOException {
 
@@ -111,14 +111,32 @@ public class Query implements Serializable {
         }
         System.out.println();
 
-        this.start();
         int cnt = 0;
-        while (this.hasNext()) {
-            Tuple tup = this.next();
-            System.out.println(tup);
-            cnt++;
+        try {
+            this.start();
+            while (this.hasNext()) {
+                Tuple tup = this.next();
+                System.out.println(tup);
+                cnt++;
+            }
+        } finally {
+            // also on failure, so the plan's temporary files go
+            this.close();
         }
         System.out.println("\n " + cnt + " rows.");
-        this.close();
+        printSpills(op);
+    }
+
+    // reports the sorts of the plan that did not fit in memory
+    private static void printSpills(DbIterator op) throws DBException, TransactionAbortedException, IOException {
+        if (op instanceof OrderBy && ((OrderBy) op).spilledRuns() > 0) {
+            OrderBy o = (OrderBy) op;
+            System.out.println(" OrderBy on " + o.getOrderFieldName() + " spilled " + o.spilledRuns()
+                    + " runs, " + o.spilledBytes() + " bytes.");
+        }
+        if (op instanceof Operator) {
+            for (DbIterator child : ((Operator) op).getChildren())
+                printSpills(child);
+        }
     }
 }
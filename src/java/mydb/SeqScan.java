@@ -53,6 +53,14 @@ public class SeqScan implements DbIterator {
         return Database.getCatalog().getTableName(tableId);
     }
     
+    public int getTableId() {
+        return tableId;
+    }
+
+    public TransactionId getTransactionId() {
+        return transactionId;
+    }
+
     /**
      * @return Return the alias of the table this operator scans. 
      * */
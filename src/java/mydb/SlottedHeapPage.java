@@ -0,0 +1,380 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A page of a HeapFile whose tuples have variable length: every table with
+ * a string field. A string takes two length bytes plus its characters
+ * instead of a fixed {@link Type#STRING_LEN} + 4 bytes, so a page holds as
+ * many tuples as actually fit.
+ * <p>
+ * Layout, all numbers big-endian, the magic 32-bit and the rest unsigned
+ * 16-bit:
+ * <pre>
+ * [{@link #MAGIC}][slot count][start of record area, 0 for the page size][slot directory ...] free space [records]
+ * </pre>
+ * Each directory entry is the offset and length of a record; offset 0 marks
+ * an empty slot. Records are stored from the end of the page down. Deleting
+ * a record only empties its slot; the space is compacted when an insert
+ * needs it. Slot numbers, and with them RecordIds, never move. An all-zero
+ * page is an empty page.
+ * <p>
+ * The magic tells a slotted page from a fixed-width {@link HeapPage}, the
+ * format tables with strings were stored in before, see {@link #isSlotted}.
+ * <p>
+ * A record is its fields in order: ints and longs big-endian, strings as
+ * their length and then the low byte of each character, like
+ * {@link StringField#serialize}.
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    /** "SLOT", the first four bytes of every slotted page that is not empty. */
+    static final int MAGIC = 0x534c4f54;
+    static final int HEADER_BYTES = 8;
+    static final int SLOT_BYTES = 4;
+
+    private final HeapPageId heapPageId;
+    private final TupleDetail tupleDetail;
+    private final int pageSize;
+    // the page itself; read in place and copied on the first change
+    private ByteBuffer data;
+    // false while data may be shared (a mapped file, an off-heap frame,
+    // the caller's array)
+    private boolean ownsData;
+    // the before-image once data has changed; null means data is it
+    private ByteBuffer oldData;
+    private int slots;
+    private int recordStart;
+    private int emptySlots;
+    // bytes of deleted records below recordStart not compacted yet
+    private int garbage;
+    // size of a record with empty strings
+    private final int minRecordBytes;
+    private TransactionId transactionId;
+
+    /**
+     * @return true if tuples of td are stored in slotted pages, which is
+     *   the case when they have a string field
+     */
+    public static boolean isVariableLength(TupleDetail td) {
+        for (int i = 0; i < td.fieldNumber(); i++)
+            if (td.getFieldType(i) == Type.STRING_TYPE) return true;
+        return false;
+    }
+
+    /**
+     * @return true if the pageSize bytes at the buffer's position are a
+     *   slotted page: they start with {@link #MAGIC}, or are all zero, which
+     *   both formats read as an empty page. Otherwise they are a fixed-width
+     *   HeapPage written before tables with strings used slotted pages.
+     */
+    public static boolean isSlotted(ByteBuffer data, int pageSize) {
+        int at = data.position();
+        if (data.getInt(at) == MAGIC) return true;
+        for (int i = 0; i < pageSize; i++)
+            if (data.get(at + i) != 0) return false;
+        return true;
+    }
+
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a page over the remaining page size bytes of a buffer. The
+     * bytes are copied only when the page is first changed. The buffer's
+     * position is not changed.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.heapPageId = id;
+        this.tupleDetail = Database.getCatalog().getTupleDetail(id.getTableId());
+        this.pageSize = Database.getCatalog().getPageSize(id.getTableId());
+        if (data.remaining() < pageSize) throw new IOException("page data is too short");
+        this.data = data.slice();
+        this.data.limit(pageSize);
+
+        int magic = this.data.getInt(0);
+        slots = readShort(4);
+        recordStart = readShort(6);
+        if (magic != MAGIC && (magic != 0 || slots != 0 || recordStart != 0))
+            throw new IOException("page " + id.pageNumber() + " is not a slotted page");
+        if (recordStart == 0) recordStart = pageSize;
+        if (HEADER_BYTES + slots * SLOT_BYTES > recordStart || recordStart > pageSize)
+            throw new IOException("corrupt slotted page " + id.pageNumber());
+        int used = 0;
+        for (int i = 0; i < slots; i++) {
+            if (slotOffset(i) == 0) emptySlots++;
+            else used += slotLength(i);
+        }
+        garbage = pageSize - recordStart - used;
+
+        int min = 0;
+        for (int i = 0; i < tupleDetail.fieldNumber(); i++)
+            min += tupleDetail.getFieldType(i) == Type.STRING_TYPE ? 2 : tupleDetail.getFieldType(i).getLen();
+        minRecordBytes = min;
+    }
+
+    public HeapPageId getId() {
+        return heapPageId;
+    }
+
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            // owned data changes in place, so the image gets its own copy
+            ByteBuffer before = oldData != null ? oldData : ownsData ? copy(data) : data;
+            return new SlottedHeapPage(heapPageId, before);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = null;
+    }
+
+    private void copyOnWrite() {
+        if (!ownsData) {
+            // the shared bytes stay the before-image
+            if (oldData == null) oldData = data;
+            detach();
+        } else if (oldData == null) {
+            oldData = ByteBuffer.wrap(data.array().clone());
+        }
+    }
+
+    public void detach() {
+        if (!ownsData) {
+            data = copy(data);
+            ownsData = true;
+        }
+        if (oldData != null && !oldData.hasArray()) oldData = copy(oldData);
+    }
+
+    private ByteBuffer copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[pageSize];
+        buffer.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        transactionId = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return transactionId;
+    }
+
+    public byte[] getPageData() {
+        byte[] bytes = new byte[pageSize];
+        writeTo(bytes, 0);
+        return bytes;
+    }
+
+    public void writeTo(byte[] dest, int offset) {
+        data.duplicate().get(dest, offset, pageSize);
+    }
+
+    public int getTupleNumber() {
+        return slots - emptySlots;
+    }
+
+    private int freeBytes() {
+        return recordStart - HEADER_BYTES - slots * SLOT_BYTES + garbage;
+    }
+
+    public int getNumEmptySlots() {
+        int free = freeBytes();
+        // empty directory entries are reused before new ones are added
+        int reused = Math.min(emptySlots, free / minRecordBytes);
+        return reused + (free - reused * minRecordBytes) / (minRecordBytes + SLOT_BYTES);
+    }
+
+    public boolean hasRoomFor(Tuple tuple) {
+        return recordBytes(tuple) + (emptySlots > 0 ? 0 : SLOT_BYTES) <= freeBytes();
+    }
+
+    /** @return the number of bytes tuple takes on a page, without its slot */
+    public int recordBytes(Tuple tuple) {
+        int bytes = 0;
+        for (int i = 0; i < tupleDetail.fieldNumber(); i++) {
+            Field f = tuple.getField(i);
+            if (f instanceof StringField)
+                bytes += 2 + Math.min(((StringField) f).getValue().length(), Type.STRING_LEN);
+            else
+                bytes += f.getType().getLen();
+        }
+        return bytes;
+    }
+
+    public void insertTuple(Tuple tuple) throws DBException {
+        if (tuple == null) throw new DBException("insert tuple is invalid");
+        if (!tuple.getTupleDetail().equals(tupleDetail)) throw new DBException("insert error: tupledetail not match");
+        if (!hasRoomFor(tuple)) throw new DBException("insert error: page cannot be inserted tuples");
+        copyOnWrite();
+        int slot = 0;
+        if (emptySlots > 0) {
+            while (slotOffset(slot) != 0) slot++;
+        } else {
+            slot = slots;
+        }
+        int size = recordBytes(tuple);
+        int directoryEnd = HEADER_BYTES + Math.max(slots, slot + 1) * SLOT_BYTES;
+        if (recordStart - directoryEnd < size) compact();
+        if (slot == slots) slots++;
+        else emptySlots--;
+        recordStart -= size;
+        encode(tuple, recordStart);
+        writeShort(HEADER_BYTES + slot * SLOT_BYTES, recordStart);
+        writeShort(HEADER_BYTES + slot * SLOT_BYTES + 2, size);
+        writeHeader();
+        tuple.setRecordId(new RecordId(heapPageId, slot));
+    }
+
+    public void deleteTuple(Tuple tuple) throws DBException {
+        if (tuple == null) throw new DBException("delete tuple is invalid");
+        if (!heapPageId.equals(tuple.getRecordId().getPageId())) throw new DBException("delete tuple heappageId not equal");
+        int slot = tuple.getRecordId().tupleno();
+        if (slot < 0 || slot >= slots || slotOffset(slot) == 0) throw new DBException("tuple slot is already empty");
+        copyOnWrite();
+        garbage += slotLength(slot);
+        writeShort(HEADER_BYTES + slot * SLOT_BYTES, 0);
+        writeShort(HEADER_BYTES + slot * SLOT_BYTES + 2, 0);
+        emptySlots++;
+        // trailing empty entries are given back to the free space
+        while (slots > 0 && slotOffset(slots - 1) == 0) {
+            slots--;
+            emptySlots--;
+        }
+        writeHeader();
+    }
+
+    /** Moves the records to the end of the page, so all free space is contiguous. */
+    private void compact() {
+        Integer[] order = new Integer[slots - emptySlots];
+        int n = 0;
+        for (int i = 0; i < slots; i++)
+            if (slotOffset(i) != 0) order[n++] = i;
+        // highest first, so no record is overwritten before it moved
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(slotOffset(b), slotOffset(a));
+            }
+        });
+        int end = pageSize;
+        for (int slot : order) {
+            int length = slotLength(slot);
+            end -= length;
+            System.arraycopy(data.array(), slotOffset(slot), data.array(), end, length);
+            writeShort(HEADER_BYTES + slot * SLOT_BYTES, end);
+        }
+        Arrays.fill(data.array(), HEADER_BYTES + slots * SLOT_BYTES, end, (byte) 0);
+        recordStart = end;
+        garbage = 0;
+    }
+
+    private void writeHeader() {
+        data.putInt(0, MAGIC);
+        writeShort(4, slots);
+        writeShort(6, recordStart == pageSize ? 0 : recordStart);
+    }
+
+    private int slotOffset(int slot) {
+        return readShort(HEADER_BYTES + slot * SLOT_BYTES);
+    }
+
+    private int slotLength(int slot) {
+        return readShort(HEADER_BYTES + slot * SLOT_BYTES + 2);
+    }
+
+    private int readShort(int at) {
+        return data.getShort(at) & 0xffff;
+    }
+
+    private void writeShort(int at, int v) {
+        data.putShort(at, (short) v);
+    }
+
+    private void encode(Tuple tuple, int at) {
+        for (int i = 0; i < tupleDetail.fieldNumber(); i++) {
+            Field f = tuple.getField(i);
+            if (f instanceof StringField) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                writeShort(at, len);
+                at += 2;
+                for (int j = 0; j < len; j++)
+                    data.put(at++, (byte) s.charAt(j));
+            } else {
+                f.serialize(data.array(), at);
+                at += f.getType().getLen();
+            }
+        }
+    }
+
+    /**
+     * @return the tuple in slot, or null if the slot is empty
+     */
+    public Tuple getTuple(int slot) {
+        if (slot < 0 || slot >= slots || slotOffset(slot) == 0) return null;
+        Tuple tuple = new Tuple(tupleDetail);
+        int at = slotOffset(slot);
+        for (int i = 0; i < tupleDetail.fieldNumber(); i++) {
+            Type type = tupleDetail.getFieldType(i);
+            if (type == Type.STRING_TYPE) {
+                int len = readShort(at);
+                char[] chars = new char[len];
+                for (int j = 0; j < len; j++)
+                    chars[j] = (char) (data.get(at + 2 + j) & 0xff);
+                tuple.setField(i, new StringField(new String(chars), Type.STRING_LEN));
+                at += 2 + len;
+            } else {
+                tuple.setField(i, type.parse(data, at));
+                at += type.getLen();
+            }
+        }
+        tuple.setRecordId(new RecordId(heapPageId, slot));
+        return tuple;
+    }
+
+    /**
+     * @return an iterator over the tuples on this page, in slot order
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            int next = advance(0);
+
+            private int advance(int from) {
+                while (from < slots && slotOffset(from) == 0) from++;
+                return from;
+            }
+
+            public boolean hasNext() {
+                return next < slots;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Tuple tuple = getTuple(next);
+                next = advance(next + 1);
+                return tuple;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,185 @@
+package mydb;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A temporary HeapFile an operator writes tuples to when they do not fit in
+ * memory, and reads back in the order they were written. Pages are filled
+ * in memory and appended a few at a time, and read back straight from the
+ * file: like {@link BulkLoad}, neither goes through the BufferPool or the
+ * log. The file is in the catalog while it exists, since heap pages find
+ * their TupleDetail there; {@link #delete} removes it from both. Its owner
+ * must call delete when it is closed and when it fails: the file is not
+ * deleted on exit, which would keep a record of every spill until then.
+ */
+public class SpillFile {
+
+    // pages buffered before they are written with one call
+    private static final int WRITE_PAGES = 8;
+
+    private final TupleDetail detail;
+    private final HeapFile file;
+    private int tuples;
+    private TuplePage page;
+    private final List<Page> batch = new ArrayList<>(WRITE_PAGES);
+    private boolean deleted;
+
+    /**
+     * @param detail the TupleDetail of the tuples added; they are copied
+     *   into it, so theirs may differ in field names
+     */
+    public SpillFile(TupleDetail detail) throws IOException {
+        this.detail = detail;
+        File f = File.createTempFile("spill", ".dat");
+        file = new HeapFile(f, detail);
+        boolean added = false;
+        try {
+            Database.getCatalog().addTable(file);
+            added = true;
+        } finally {
+            if (!added) f.delete();
+        }
+    }
+
+    public TupleDetail getTupleDetail() {
+        return detail;
+    }
+
+    /** @return the number of tuples added */
+    public int tupleCount() {
+        return tuples;
+    }
+
+    /** @return the bytes written to the file so far */
+    public long bytes() {
+        return (long) file.pageCount() * file.getPageSize();
+    }
+
+    public void add(Tuple tuple) throws DBException, IOException {
+        // a copy, so the caller's tuple keeps its TupleDetail and RecordId
+        Tuple copy = new Tuple(detail);
+        for (int i = 0; i < detail.fieldNumber(); i++)
+            copy.setField(i, tuple.getField(i));
+        if (page == null || !page.hasRoomFor(copy)) {
+            if (batch.size() == WRITE_PAGES) {
+                file.appendPages(batch);
+                batch.clear();
+            }
+            page = file.emptyPage(file.pageCount() + batch.size());
+            batch.add(page);
+        }
+        page.insertTuple(copy);
+        tuples++;
+    }
+
+    /** Writes the tuples still buffered; call it before reading. */
+    public void finish() throws DBException, IOException {
+        file.appendPages(batch);
+        batch.clear();
+        page = null;
+    }
+
+    /** @return the tuples written, in order, a page at a time */
+    public DbFileIterator iterator() {
+        return new SpillIterator();
+    }
+
+    /** @return the tuples written, as the child of an operator */
+    public DbIterator scan() {
+        return new DbIterator() {
+            private static final long serialVersionUID = 1L;
+            private final DbFileIterator it = iterator();
+
+            public void open() throws DBException, TransactionAbortedException, IOException {
+                it.open();
+            }
+
+            public boolean hasNext() throws DBException, TransactionAbortedException, IOException {
+                return it.hasNext();
+            }
+
+            public Tuple next() throws DBException, TransactionAbortedException, NoSuchElementException, IOException {
+                return it.next();
+            }
+
+            public void rewind() throws DBException, TransactionAbortedException, IOException {
+                it.rewind();
+            }
+
+            public TupleDetail getTupleDetail() {
+                return detail;
+            }
+
+            public void close() {
+                it.close();
+            }
+        };
+    }
+
+    /** Removes the file from the catalog and the disk. Can be called more than once. */
+    public void delete() {
+        if (deleted) return;
+        deleted = true;
+        Database.getCatalog().removeTable(file.getId());
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        file.getFile().delete();
+        new File(file.getFile().getPath() + ".fsm").delete();
+    }
+
+    private class SpillIterator implements DbFileIterator {
+        private static final long serialVersionUID = 1L;
+
+        private int pageNo;
+        // null until opened and after close
+        private Iterator<Tuple> tuples;
+
+        @Override
+        public void open() {
+            pageNo = 0;
+            tuples = Collections.emptyIterator();
+        }
+
+        @Override
+        public boolean hasNext() throws DBException, IOException {
+            if (tuples == null) return false;
+            while (!tuples.hasNext()) {
+                if (pageNo >= file.pageCount()) return false;
+                HeapPageId pid = new HeapPageId(file.getId(), pageNo++);
+                tuples = ((TuplePage) file.readPage(pid)).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Tuple next() throws DBException, TransactionAbortedException, NoSuchElementException, IOException {
+            if (!hasNext()) throw new NoSuchElementException("not opened or no tuple remained");
+            return tuples.next();
+        }
+
+        @Override
+        public void rewind() {
+            open();
+        }
+
+        @Override
+        public void close() {
+            tuples = null;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import mydb.Operation.Join.Comparison;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 public class StringField implements Field {
@@ -43,6 +44,18 @@ public class StringField implements Field {
 		}
 	}
 
+	public void serialize(byte[] dest, int offset) {
+		int length = Math.min(value.length(), maxSize);
+		dest[offset] = (byte) (length >>> 24);
+		dest[offset + 1] = (byte) (length >>> 16);
+		dest[offset + 2] = (byte) (length >>> 8);
+		dest[offset + 3] = (byte) length;
+		// like writeBytes: the low byte of each char
+		for (int i = 0; i < length; i++)
+			dest[offset + 4 + i] = (byte) value.charAt(i);
+		Arrays.fill(dest, offset + 4 + length, offset + 4 + maxSize, (byte) 0);
+	}
+
 	public boolean compareWith(Comparison.Operation operation, Field field) {
 		StringField stringField = (StringField)field;
 		int cmpVal = value.compareTo(stringField.value);
@@ -0,0 +1,105 @@
+package mydb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mydb.Operation.Join.Comparison;
+
+/**
+ * A histogram over the values of one string field: strings are ordered by
+ * their first four characters, which are packed into an int and counted in
+ * an {@link IntHistogram} over the packed values seen.
+ * <p>
+ * Packed strings are sparse in their range, so spreading a bucket's count
+ * over all the values it covers would make equality far too selective.
+ * Equality is estimated from the count of each distinct packed value
+ * instead; strings that share their first four characters count as equal.
+ */
+public class StringHistogram {
+
+    private final IntHistogram histogram;
+    // values added per packed string
+    private final Map<Integer, Integer> counts = new HashMap<>();
+    private int total;
+
+    /**
+     * @param buckets the number of buckets
+     * @param min the smallest {@link #stringToInt} of the strings that will be added
+     * @param max the largest {@link #stringToInt} of the strings that will be added
+     */
+    public StringHistogram(int buckets, int min, int max) {
+        histogram = new IntHistogram(buckets, min, max);
+    }
+
+    /**
+     * @return an int with the order of the string's first four characters;
+     *   characters outside 0..255 count as 255
+     */
+    static int stringToInt(String s) {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = i < s.length() ? Math.min(s.charAt(i), 255) : 0;
+            v = (v << 8) | c;
+        }
+        // keep the order of unsigned bytes in a signed int
+        return v ^ Integer.MIN_VALUE;
+    }
+
+    public void addValue(String s) {
+        int v = stringToInt(s);
+        histogram.addValue(v);
+        Integer n = counts.get(v);
+        counts.put(v, n == null ? 1 : n + 1);
+        total++;
+    }
+
+    /**
+     * @return the fraction of the values added that satisfy
+     *   {@code value op s}
+     */
+    public double estimateSelectivity(Comparison.Operation op, String s) {
+        if (total == 0) return 0;
+        switch (op) {
+        case LIKE:
+            // a pattern may match anywhere, not only values with its prefix
+            return avgSelectivity(op);
+        case EQUALS:
+            return equal(s);
+        case NOT_EQUALS:
+            return 1 - equal(s);
+        case GREATER_THAN_OR_EQ:
+            return Math.min(1, histogram.estimateSelectivity(Comparison.Operation.GREATER_THAN, stringToInt(s)) + equal(s));
+        case LESS_THAN_OR_EQ:
+            return Math.min(1, histogram.estimateSelectivity(Comparison.Operation.LESS_THAN, stringToInt(s)) + equal(s));
+        default:
+            return histogram.estimateSelectivity(op, stringToInt(s));
+        }
+    }
+
+    private double equal(String s) {
+        Integer n = counts.get(stringToInt(s));
+        return n == null ? 0 : (double) n / total;
+    }
+
+    public double avgSelectivity(Comparison.Operation op) {
+        if (total == 0) return 0;
+        double equal = 0;
+        for (int n : counts.values()) {
+            double p = (double) n / total;
+            equal += p * p;
+        }
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return equal;
+        case NOT_EQUALS:
+            return 1 - equal;
+        default:
+            return 0.5;
+        }
+    }
+
+    public String toString() {
+        return "StringHistogram(" + histogram + ", " + counts.size() + " prefixes)";
+    }
+}
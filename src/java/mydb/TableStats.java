@@ -1,8 +1,14 @@
 package mydb;
 
 import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
 import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -10,9 +16,9 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * TableStats represents statistics (e.g., histograms) about base tables in a
- * query. 
- * 
- * This class is not needed in implementing proj1 and proj2.
+ * query: the number of pages and tuples, and a histogram of each integer
+ * and string field, from which it estimates the selectivity of predicates
+ * and the cost of reading a table by a scan or through an index.
  */
 public class TableStats {
 
@@ -63,9 +69,18 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    private final int tableId;
+    private final int ioCostPerPage;
+    private final int pages;
+    private int tuples;
+    // one per field; null for fields without a histogram
+    private final IntHistogram[] intHistograms;
+    private final StringHistogram[] stringHistograms;
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each
-     * column of a table
+     * column of a table. Reads the table twice: once for the range of each
+     * integer field, once to fill the histograms.
      * 
      * @param tableid
      *            The table over which to compute statistics
@@ -74,14 +89,65 @@ public class TableStats {
      *            sequential-scan IO and disk seeks.
      */
     public TableStats(int tableid, int ioCostPerPage) {
-        // For this function, you'll have to get the
-        // DbFile for the table in question,
-        // then scan through its tuples and calculate
-        // the values that you need.
-        // You should try to do this reasonably efficiently, but you don't
-        // necessarily have to (for example) do everything
-        // in a single scan of the table.
-        // some code goes here
+        this.tableId = tableid;
+        this.ioCostPerPage = ioCostPerPage;
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        TupleDetail td = file.getTupleDetail();
+        int fields = td.fieldNumber();
+        pages = pageCount(file);
+        intHistograms = new IntHistogram[fields];
+        stringHistograms = new StringHistogram[fields];
+        int[] min = new int[fields];
+        int[] max = new int[fields];
+        Arrays.fill(min, Integer.MAX_VALUE);
+        Arrays.fill(max, Integer.MIN_VALUE);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = file.iterator(tid);
+        try {
+            it.open();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                tuples++;
+                for (int i = 0; i < fields; i++) {
+                    int v;
+                    if (td.getFieldType(i) == Type.INT_TYPE)
+                        v = ((IntField) t.getField(i)).getValue();
+                    else if (td.getFieldType(i) == Type.STRING_TYPE)
+                        v = StringHistogram.stringToInt(((StringField) t.getField(i)).getValue());
+                    else
+                        continue;
+                    min[i] = Math.min(min[i], v);
+                    max[i] = Math.max(max[i], v);
+                }
+            }
+            if (tuples == 0) return;
+            for (int i = 0; i < fields; i++) {
+                if (td.getFieldType(i) == Type.INT_TYPE)
+                    intHistograms[i] = new IntHistogram(NUM_HIST_BINS, min[i], max[i]);
+                else if (td.getFieldType(i) == Type.STRING_TYPE)
+                    stringHistograms[i] = new StringHistogram(NUM_HIST_BINS, min[i], max[i]);
+            }
+            it.rewind();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                for (int i = 0; i < fields; i++) {
+                    if (intHistograms[i] != null)
+                        intHistograms[i].addValue(((IntField) t.getField(i)).getValue());
+                    else if (stringHistograms[i] != null)
+                        stringHistograms[i].addValue(((StringField) t.getField(i)).getValue());
+                }
+            }
+        } catch (DBException | TransactionAbortedException | IOException e) {
+            throw new RuntimeException("cannot compute statistics of table " + tableid, e);
+        } finally {
+            it.close();
+        }
+    }
+
+    private static int pageCount(DbFile file) {
+        if (file instanceof HeapFile) return ((HeapFile) file).pageCount();
+        if (file instanceof BTreeFile) return (int) (((BTreeFile) file).getFile().length() / file.getPageSize());
+        return 1;
     }
 
     /**
@@ -97,8 +163,55 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */
     public double estimateScanCost() {
-        // some code goes here
-        return 0;
+        return (double) pages * ioCostPerPage;
+    }
+
+    /**
+     * Estimates the cost of reading the tuples that satisfy
+     * <tt>field op constant</tt> through an index of the table, see
+     * {@link IndexScan}. A hash index reads the bucket pages of the value
+     * and then the table page of every match, once per distinct page; a
+     * B+tree reads one page per level down to the first leaf and then the
+     * leaves the matches are on.
+     * 
+     * @return The estimated cost, or {@link Double#POSITIVE_INFINITY} if no
+     *         index of the table answers the predicate
+     */
+    public double estimateIndexScanCost(int field, Comparison.Operation op, Field constant) {
+        if (!IndexScan.canUse(tableId, field, op)) return Double.POSITIVE_INFINITY;
+        return indexCost(field, estimateSelectivity(field, op, constant) * tuples);
+    }
+
+    /**
+     * Estimates the cost of one probe of an index join into this table, see
+     * {@link mydb.Operation.Join.IndexNestedLoopJoin}: the cost of
+     * {@link #estimateIndexScanCost} for a constant with the average
+     * selectivity of the field under op.
+     */
+    public double estimateIndexProbeCost(int field, Comparison.Operation op) {
+        if (!IndexScan.canUse(tableId, field, op)) return Double.POSITIVE_INFINITY;
+        return indexCost(field, avgSelectivity(field, op) * tuples);
+    }
+
+    // the cost of finding and reading matches tuples through the index on field
+    private double indexCost(int field, double matches) {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        if (file instanceof BTreeFile) {
+            int fanout = BTreeInternalPage.maxKeys(file.getPageSize(), file.getTupleDetail().getFieldType(field)) + 1;
+            int levels = 1;
+            for (long reach = fanout; reach < pages; reach *= fanout)
+                levels++;
+            double leaves = Math.max(1, Math.ceil(matches / Math.max(tuples, 1) * pages));
+            return (levels + leaves) * ioCostPerPage;
+        }
+        double indexPages = 1 + Math.floor(matches / HashIndex.BUCKET_CAPACITY);
+        return (indexPages + pagesHolding(matches)) * ioCostPerPage;
+    }
+
+    // the expected number of distinct pages n randomly placed tuples are on
+    private double pagesHolding(double n) {
+        if (pages == 0) return 0;
+        return pages * (1 - Math.pow(1 - 1.0 / pages, n));
     }
 
     /**
@@ -111,8 +224,7 @@ public class TableStats {
      *         selectivityFactor
      */
     public int estimateTableCardinality(double selectivityFactor) {
-        // some code goes here
-        return 0;
+        return (int) Math.round(tuples * selectivityFactor);
     }
 
     /**
@@ -126,8 +238,9 @@ public class TableStats {
      * expected selectivity. You may estimate this value from the histograms.
      * */
     public double avgSelectivity(int field, Comparison.Operation op) {
-        // some code goes here
-        return 1.0;
+        if (intHistograms[field] != null) return intHistograms[field].avgSelectivity(op);
+        if (stringHistograms[field] != null) return stringHistograms[field].avgSelectivity(op);
+        return defaultSelectivity(op);
     }
 
     /**
@@ -144,16 +257,31 @@ public class TableStats {
      *         predicate
      */
     public double estimateSelectivity(int field, Comparison.Operation op, Field constant) {
-        // some code goes here
-        return 1.0;
+        if (intHistograms[field] != null && constant instanceof IntField)
+            return intHistograms[field].estimateSelectivity(op, ((IntField) constant).getValue());
+        if (stringHistograms[field] != null && constant instanceof StringField)
+            return stringHistograms[field].estimateSelectivity(op, ((StringField) constant).getValue());
+        return tuples == 0 ? 0 : defaultSelectivity(op);
+    }
+
+    // for fields without a histogram
+    private static double defaultSelectivity(Comparison.Operation op) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return 0.1;
+        case NOT_EQUALS:
+            return 0.9;
+        default:
+            return 1.0 / 3;
+        }
     }
 
     /**
      * return the total number of tuples in this table
      * */
     public int totalTuples() {
-        // some code goes here
-        return 0;
+        return tuples;
     }
 
 }
@@ -0,0 +1,152 @@
+package mydb;
+
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * TopN implements ORDER BY ... LIMIT n: it returns the first n tuples of its
+ * child in the order of one field, without sorting the rest. The child is
+ * read once, when the operator is opened, into a heap that holds the n best
+ * tuples seen so far with the worst of them on top; a tuple that beats it
+ * replaces it. Memory is O(n) and time O(N log n) for a child of N tuples.
+ * Equal tuples keep the order of the child, as with {@link OrderBy}.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child;
+    private final TupleDetail td;
+    private final int orderByField;
+    private final String orderByFieldName;
+    private final boolean asc;
+    private final int limit;
+    private final Comparator<Tuple> order;
+    // the result, sorted
+    private List<Tuple> top;
+    private Iterator<Tuple> it;
+
+    /**
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param limit
+     *            the number of tuples to return at most.
+     * @param child
+     *            the tuples to sort.
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public TopN(int orderbyField, boolean asc, int limit, DbIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        td = child.getTupleDetail();
+        this.orderByField = orderbyField;
+        this.orderByFieldName = td.getFieldName(orderbyField);
+        this.asc = asc;
+        this.limit = limit;
+        order = new TupleComparator(orderbyField, asc);
+    }
+
+    public boolean isASC() {
+        return asc;
+    }
+
+    public int getOrderByField() {
+        return orderByField;
+    }
+
+    public String getOrderFieldName() {
+        return orderByFieldName;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public TupleDetail getTupleDetail() {
+        return td;
+    }
+
+    public void open() throws DBException, TransactionAbortedException, IOException {
+        top = new ArrayList<>();
+        if (limit > 0) {
+            child.open();
+            select();
+            child.close();
+        }
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        top = null;
+        it = null;
+    }
+
+    public void rewind() throws DBException, TransactionAbortedException, IOException {
+        it = top.iterator();
+    }
+
+    // keeps the best limit tuples of the child in top, sorted
+    private void select() throws DBException, TransactionAbortedException, IOException {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.min(limit, 1024) + 1);
+        long seq = 0;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (heap.size() < limit) {
+                heap.add(new Entry(t, seq++));
+            } else if (order.compare(t, heap.peek().tuple) < 0) {
+                // an equal tuple came later, so it loses
+                heap.poll();
+                heap.add(new Entry(t, seq++));
+            }
+        }
+        while (!heap.isEmpty())
+            top.add(heap.poll().tuple);
+        Collections.reverse(top);
+    }
+
+    protected Tuple fetchNext() throws DBException, TransactionAbortedException, IOException {
+        return it != null && it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child = children[0];
+    }
+
+    /** A tuple in the heap, the worst one first. */
+    private class Entry implements Comparable<Entry> {
+        final Tuple tuple;
+        // the position in the child, for ties
+        final long seq;
+
+        Entry(Tuple tuple, long seq) {
+            this.tuple = tuple;
+            this.seq = seq;
+        }
+
+        public int compareTo(Entry o) {
+            int c = order.compare(o.tuple, tuple);
+            return c != 0 ? c : Long.compare(o.seq, seq);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package mydb;
+
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+
+import java.util.Comparator;
+
+/**
+ * Orders tuples on one field, ascending or descending; used by the sorting
+ * operators ({@link OrderBy}, {@link ExternalSort}, {@link TopN}).
+ */
+class TupleComparator implements Comparator<Tuple> {
+    int field;
+    boolean asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this.field = field;
+        this.asc = asc;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        Field t1 = (o1).getField(field);
+        Field t2 = (o2).getField(field);
+        if (t1.compareWith(Comparison.Operation.EQUALS, t2))
+            return 0;
+        if (t1.compareWith(Comparison.Operation.GREATER_THAN, t2))
+            return asc ? 1 : -1;
+        else
+            return asc ? -1 : 1;
+    }
+    
+}
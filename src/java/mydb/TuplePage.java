@@ -0,0 +1,56 @@
+package mydb;
+
+import mydb.Exception.DBException;
+import mydb.TupleDetail.Tuple;
+
+import java.util.Iterator;
+
+/**
+ * A page of a HeapFile: a set of tuples addressed by slot number. The layout
+ * depends on the table, see {@link HeapPage} and {@link SlottedHeapPage}.
+ */
+public interface TuplePage extends Page {
+
+    public HeapPageId getId();
+
+    /** @return the number of tuples on this page */
+    public int getTupleNumber();
+
+    /**
+     * @return how many more tuples fit on this page; for variable-length
+     *   tuples, how many of the smallest possible size fit
+     */
+    public int getNumEmptySlots();
+
+    /** @return true if insertTuple(tuple) would succeed */
+    public boolean hasRoomFor(Tuple tuple);
+
+    /**
+     * Adds the tuple to the page and sets its RecordId.
+     * @throws DBException if the tuple does not fit or its TupleDetail does
+     *   not match the page's
+     */
+    public void insertTuple(Tuple tuple) throws DBException;
+
+    /**
+     * Removes the tuple from the page.
+     * @throws DBException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple tuple) throws DBException;
+
+    /** @return the tuple in a slot, with its RecordId set, or null if the slot is empty */
+    public Tuple getTuple(int slot);
+
+    /**
+     * Copies the page data if it is still read from memory the page does not
+     * own, so the page stays valid once that memory is reused. The
+     * BufferPool calls this before an off-heap frame gets another page.
+     * Safe to call while other threads read the page, but a reader that
+     * does not pin the page may decode bytes of the next page already; see
+     * {@link mydb.Database.BufferPool#pinPage}.
+     */
+    public void detach();
+
+    /** @return an iterator over the tuples on this page */
+    public Iterator<Tuple> iterator();
+}
@@ -3,6 +3,7 @@ package mydb;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 public enum Type implements Serializable {
@@ -22,6 +23,11 @@ public enum Type implements Serializable {
                 throw new ParseException("int parse error", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buffer, int offset) {
+            return new IntField(buffer.getInt(offset));
+        }
     },
 
     LONG_TYPE() {
@@ -39,6 +45,11 @@ public enum Type implements Serializable {
                 throw new ParseException("long parse error", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buffer, int offset) {
+            return new LongField(buffer.getLong(offset));
+        }
     },
 
     STRING_TYPE() {
@@ -65,6 +76,16 @@ public enum Type implements Serializable {
             }
 
         }
+
+        @Override
+        public Field parse(ByteBuffer buffer, int offset) {
+            int length = Math.min(Math.max(buffer.getInt(offset), 0), STRING_LEN);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4);
+            view.get(bytes);
+            return new StringField(new String(bytes), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -74,4 +95,11 @@ public enum Type implements Serializable {
     // read
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+    /**
+     * Decodes a field stored at an absolute offset of a buffer, in the
+     * format {@link #parse(DataInputStream)} reads. The buffer's position
+     * is not changed.
+     */
+    public abstract Field parse(ByteBuffer buffer, int offset);
+
 }
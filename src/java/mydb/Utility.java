@@ -158,5 +158,18 @@ public class Utility {
         }
         return out.toString();
     }
+
+    /**
+     * @return h with its bits mixed by the murmur3 finalizer, so that every
+     *   bit of h affects the low bits used to pick a bucket or partition
+     */
+    public static int mixHash(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
 }
 
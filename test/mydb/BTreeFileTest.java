@@ -0,0 +1,204 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Test;
+
+public class BTreeFileTest extends MyDbTestBase {
+
+    private static final TupleDetail DETAIL = Utility.getTupleDesc(2);
+
+    // 1 KB pages: 126 tuples per leaf and 126 keys per internal page
+    private static BTreeFile createTree(File f) {
+        BTreeFile tree = new BTreeFile(f, DETAIL, 0, 1024);
+        Database.getCatalog().addTable(tree, SystemTestUtil.getUUID());
+        return tree;
+    }
+
+    private static BTreeFile createTree() throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        return createTree(f);
+    }
+
+    private static Tuple tuple(int key, int value) {
+        return Utility.getHeapTuple(new int[] {key, value});
+    }
+
+    private static List<Integer> keys(DbFileIterator it) throws Exception {
+        List<Integer> keys = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        return keys;
+    }
+
+    private static DbFileIterator probe(BTreeFile tree, Comparison.Operation op, int key) {
+        return tree.indexIterator(new TransactionId(), new Comparison(0, op, new IntField(key)));
+    }
+
+    private static BTreePage page(BTreeFile tree, int pageNo) throws Exception {
+        return (BTreePage) Database.getBufferPool().getPage(new TransactionId(), new BTreePageId(tree.getId(), pageNo),
+                Permissions.READ_ONLY);
+    }
+
+    private static int height(BTreeFile tree) throws Exception {
+        int height = 1;
+        BTreePage page = page(tree, ((BTreeHeaderPage) page(tree, 0)).getRoot());
+        while (page instanceof BTreeInternalPage) {
+            page = page(tree, ((BTreeInternalPage) page).getChild(0));
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Random inserts split leaves and internal pages; a scan returns the
+     * keys in order.
+     */
+    @Test public void insertAndScan() throws Exception {
+        BTreeFile tree = createTree();
+        TransactionId tid = new TransactionId();
+        List<Integer> expected = new ArrayList<>();
+        Random r = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            int key = r.nextInt(1000000);
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(key, i));
+            expected.add(key);
+        }
+        Collections.sort(expected);
+        assertEquals(expected, keys(tree.iterator(tid)));
+        // more than 126 leaves need a second internal level
+        assertEquals(3, height(tree));
+    }
+
+    /**
+     * Equality and range probes return what a filtered scan would, also
+     * when equal keys span several leaves.
+     */
+    @Test public void indexProbes() throws Exception {
+        BTreeFile tree = createTree();
+        TransactionId tid = new TransactionId();
+        List<Integer> all = new ArrayList<>();
+        Random r = new Random(2);
+        for (int i = 0; i < 5000; i++) {
+            // key 7 fills a few leaves on its own
+            int key = i % 10 == 0 ? 7 : r.nextInt(100);
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(key, i));
+            all.add(key);
+        }
+        Collections.sort(all);
+        for (Comparison.Operation op : Comparison.Operation.values()) {
+            for (int key : new int[] {-1, 0, 7, 50, 99, 100}) {
+                List<Integer> expected = new ArrayList<>();
+                for (int k : all)
+                    if (new IntField(k).compareWith(op, new IntField(key))) expected.add(k);
+                assertEquals(op + " " + key, expected, keys(probe(tree, op, key)));
+            }
+        }
+        try {
+            tree.indexIterator(tid, new Comparison(1, Comparison.Operation.EQUALS, new IntField(1)));
+            fail("expected IllegalArgumentException for a non-key field");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Deletes merge and redistribute pages until the tree is a single leaf;
+     * freed pages are reused by later inserts.
+     */
+    @Test public void deleteAndMerge() throws Exception {
+        BTreeFile tree = createTree();
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Tuple t = tuple(i % 4000, i);
+            Database.getBufferPool().insertTuple(tid, tree.getId(), t);
+            tuples.add(t);
+        }
+        Collections.shuffle(tuples, new Random(3));
+        List<Tuple> deleted = tuples.subList(0, 19900);
+        for (Tuple t : deleted)
+            Database.getBufferPool().deleteTuple(tid, t);
+        List<Integer> expected = new ArrayList<>();
+        for (Tuple t : tuples.subList(19900, 20000))
+            expected.add(((IntField) t.getField(0)).getValue());
+        Collections.sort(expected);
+        assertEquals(expected, keys(tree.iterator(tid)));
+        assertEquals(1, height(tree));
+
+        BTreeHeaderPage header = (BTreeHeaderPage) page(tree, 0);
+        int pages = header.getPageCount();
+        assertTrue(header.getFreeCount() > 100);
+        for (Tuple t : deleted)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(((IntField) t.getField(0)).getValue(), 0));
+        assertEquals(pages, header.getPageCount());
+        assertEquals(20000, keys(tree.iterator(tid)).size());
+
+        try {
+            tree.deleteTuple(tid, tuple(-5, 0));
+            fail("expected DBException for a tuple that is not in the tree");
+        } catch (DBException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The tree is read back from disk, and the catalog can declare a btree
+     * table ordered by its primary key.
+     */
+    @Test public void reopenAndCatalog() throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        BTreeFile tree = createTree(f);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(2999 - i, i));
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        tree = createTree(f);
+        assertEquals(3000, keys(tree.iterator(tid)).size());
+        assertEquals(Collections.singletonList(42), keys(probe(tree, Comparison.Operation.EQUALS, 42)));
+
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        String name = TestUtil.tableName("b");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(name + " (a int, b int pk) storage=btree pagesize=1024\n");
+        }
+        new File(schema.getParent(), name + ".dat").deleteOnExit();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+        assertTrue(file instanceof BTreeFile);
+        assertEquals(1, ((BTreeFile) file).keyField());
+        assertEquals(1024, file.getPageSize());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
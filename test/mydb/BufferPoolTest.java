@@ -0,0 +1,557 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Database.PageWriter;
+import mydb.Database.ReplacementPolicy;
+import mydb.Exception.DBException;
+import mydb.TupleDetail.Tuple;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Test;
+
+public class BufferPoolTest extends MyDbTestBase {
+
+    private static final int BUFFER_PAGES = 16;
+    private static final int HOT_PAGES = 4;
+
+    /**
+     * Touches a small hot set twice, runs a full scan of a table four times
+     * the size of the pool, and checks that the hot set is still cached.
+     */
+    private void checkHotSetSurvivesScan(ReplacementPolicy.Kind kind) throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * HOT_PAGES, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * BUFFER_PAGES * 4, null, null);
+        Database.resetBufferPool(BUFFER_PAGES, kind);
+
+        TransactionId tid = new TransactionId();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < HOT_PAGES; i++)
+                Database.getBufferPool().getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertTrue(count == 504 * BUFFER_PAGES * 4);
+
+        for (int i = 0; i < HOT_PAGES; i++)
+            assertTrue(kind + " evicted hot page " + i,
+                    Database.getBufferPool().isResident(new HeapPageId(hot.getId(), i)));
+    }
+
+    @Test public void twoQueueIsScanResistant() throws Exception {
+        checkHotSetSurvivesScan(ReplacementPolicy.Kind.TWO_Q);
+    }
+
+    @Test public void lruKIsScanResistant() throws Exception {
+        checkHotSetSurvivesScan(ReplacementPolicy.Kind.LRU_K);
+    }
+
+    @Test public void lruWithScanHintsIsScanResistant() throws Exception {
+        checkHotSetSurvivesScan(ReplacementPolicy.Kind.LRU);
+    }
+
+    private static void runThreads(int n, final Runnable body) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        body.run();
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        if (error.get() != null) throw new Exception(error.get());
+    }
+
+    /**
+     * Many threads missing on the same page at once cause a single disk read.
+     */
+    @Test public void concurrentMissesReadOnce() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 2, 1000, null, null);
+        final TestUtil.CountingHeapFile file = new TestUtil.CountingHeapFile(f, Utility.getTupleDesc(2), 20);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        final HeapPageId pid = new HeapPageId(file.getId(), 1);
+
+        runThreads(16, new Runnable() {
+            public void run() {
+                try {
+                    Page p = Database.getBufferPool().getPage(null, pid, Permissions.READ_ONLY);
+                    assertEquals(pid, p.getId());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertEquals(1, file.reads.get());
+    }
+
+    /**
+     * Threads hammering a small pool always get back the page they asked for.
+     */
+    @Test public void concurrentRandomReads() throws Exception {
+        final int pages = BUFFER_PAGES * 3;
+        final HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * pages, null, null);
+        Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.CLOCK);
+
+        runThreads(8, new Runnable() {
+            public void run() {
+                Random r = new Random();
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        HeapPageId pid = new HeapPageId(file.getId(), r.nextInt(pages));
+                        HeapPage p = (HeapPage) Database.getBufferPool().getPage(null, pid, Permissions.READ_ONLY);
+                        assertEquals(pid, p.getId());
+                        assertEquals(504, p.getTupleNumber());
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Pinned pages are never evicted; a pool whose frames are all pinned
+     * refuses new pages until one is unpinned.
+     */
+    @Test public void pinnedPagesAreNotEvicted() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 5, null, null);
+        Database.resetBufferPool(4, ReplacementPolicy.Kind.LRU);
+        BufferPool pool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4; i++)
+            pool.pinPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY, false);
+
+        HeapPageId extra = new HeapPageId(file.getId(), 4);
+        try {
+            pool.getPage(tid, extra, Permissions.READ_ONLY);
+            fail("expected DBException when every page is pinned");
+        } catch (DBException e) {
+            // expected
+        }
+
+        pool.unpinPage(new HeapPageId(file.getId(), 2));
+        pool.getPage(tid, extra, Permissions.READ_ONLY);
+        assertFalse(pool.isResident(new HeapPageId(file.getId(), 2)));
+        for (int i : new int[] {0, 1, 3})
+            assertTrue(pool.isResident(new HeapPageId(file.getId(), i)));
+    }
+
+    /** Makes a table with pageSize pages holding rows two-int tuples. */
+    private static HeapFile tableWithPageSize(int pageSize, int rows) throws Exception {
+        File f = File.createTempFile("pagesize", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = new HeapFile(f, Utility.getTupleDesc(2), pageSize);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        BulkLoad load = new BulkLoad(tid, new TestUtil.MockScan(0, rows, 2), file.getId());
+        load.open();
+        load.close();
+        return file;
+    }
+
+    /**
+     * The pool budgets bytes: pages of a table with 16 KB pages take the
+     * room of four default pages, and a page larger than the whole pool is
+     * refused.
+     */
+    @Test public void largePagesAreChargedByBytes() throws Exception {
+        // 2016 tuples per 16 KB page
+        HeapFile file = tableWithPageSize(16384, 2016 * 5);
+        assertEquals(5, file.pageCount());
+        Database.resetBufferPool(8, ReplacementPolicy.Kind.LRU);
+        BufferPool pool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; i++) {
+            pool.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+            assertTrue(pool.getUsedBytes() <= 8 * BufferPool.PAGE_SIZE);
+        }
+        assertEquals(2 * 16384, pool.getUsedBytes());
+        assertTrue(pool.isResident(new HeapPageId(file.getId(), 4)));
+        assertFalse(pool.isResident(new HeapPageId(file.getId(), 2)));
+
+        HeapFile huge = tableWithPageSize(65536, 10);
+        try {
+            pool.getPage(tid, new HeapPageId(huge.getId(), 0), Permissions.READ_ONLY);
+            fail("expected DBException for a page larger than the pool");
+        } catch (DBException e) {
+            // expected
+        }
+        assertEquals(2 * 16384, pool.getUsedBytes());
+    }
+
+    /**
+     * An off-heap pool reads pages into its arena. A page evicted while a
+     * caller still holds it keeps its tuples after the frame is reused, and
+     * changes to off-heap pages reach the file.
+     */
+    @Test public void offHeapFrames() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, tuples);
+        BufferPool pool = Database.resetBufferPool(4, ReplacementPolicy.Kind.LRU, true);
+        assertTrue(pool.isOffHeap());
+        TransactionId tid = new TransactionId();
+
+        HeapPage first = (HeapPage) pool.getPage(tid, new HeapPageId(file.getId(), 0), Permissions.READ_ONLY);
+        List<ArrayList<Integer>> read = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+            read.addAll(rows(page));
+        }
+        assertEquals(tuples, read);
+        assertFalse(pool.isResident(first.getId()));
+        assertEquals(tuples.subList(0, 504), rows(first));
+
+        HeapPageId dirty = new HeapPageId(file.getId(), 7);
+        HeapPage page = (HeapPage) pool.getPage(tid, dirty, Permissions.READ_WRITE);
+        file.deleteTuple(tid, page.iterator().next());
+        pool.flushAllPages();
+        assertEquals(503, ((HeapPage) file.readPage(dirty)).getTupleNumber());
+
+        // other page sizes stay on the heap
+        HeapFile large = tableWithPageSize(16384, 2016);
+        assertEquals(2016, ((HeapPage) pool.getPage(tid, new HeapPageId(large.getId(), 0),
+                Permissions.READ_ONLY)).getTupleNumber());
+        assertEquals(16384, pool.getUsedBytes());
+    }
+
+    /**
+     * Detaching a page over direct memory while another thread serializes
+     * and decodes it neither fails nor changes what that thread sees.
+     */
+    @Test public void detachWhileReading() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+        final HeapPageId pid = new HeapPageId(file.getId(), 0);
+        final byte[] bytes = ((HeapPage) file.readPage(pid)).getPageData();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        final String last = ((HeapPage) file.readPage(pid)).getTuple(503).toString();
+
+        final AtomicReference<HeapPage> current = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread reader = new Thread() {
+            public void run() {
+                byte[] dest = new byte[bytes.length];
+                try {
+                    while (done.getCount() > 0) {
+                        HeapPage page = current.get();
+                        if (page == null) continue;
+                        page.writeTo(dest, 0);
+                        assertTrue(Arrays.equals(bytes, dest));
+                        assertEquals(last, page.getTuple(503).toString());
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < 20000 && failure.get() == null; i++) {
+                HeapPage page = new HeapPage(pid, direct);
+                current.set(page);
+                page.detach();
+            }
+        } finally {
+            done.countDown();
+            reader.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+
+    private static List<ArrayList<Integer>> rows(HeapPage page) {
+        List<ArrayList<Integer>> rows = new ArrayList<>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            rows.add(SystemTestUtil.tupleToList(it.next()));
+        return rows;
+    }
+
+    /**
+     * A dirty page is kept while clean pages can be evicted, and is written
+     * back to disk when it finally has to go.
+     */
+    @Test public void dirtyPagesAreWrittenBack() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, null);
+        Database.resetBufferPool(4, ReplacementPolicy.Kind.LRU);
+        BufferPool pool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        HeapPageId dirty = new HeapPageId(file.getId(), 0);
+
+        HeapPage page = (HeapPage) pool.getPage(tid, dirty, Permissions.READ_WRITE);
+        file.deleteTuple(tid, page.iterator().next());
+        assertEquals(tid, page.isDirty());
+
+        // page 0 is the least recently used page, but it is dirty
+        for (int i = 1; i <= 4; i++)
+            pool.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+        assertTrue(pool.isResident(dirty));
+        assertEquals(504, ((HeapPage) file.readPage(dirty)).getTupleNumber());
+
+        // once every other frame is pinned the dirty page is the only victim
+        for (int i = 2; i <= 4; i++)
+            pool.pinPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY, false);
+        pool.getPage(tid, new HeapPageId(file.getId(), 5), Permissions.READ_ONLY);
+        assertFalse(pool.isResident(dirty));
+        assertEquals(503, ((HeapPage) file.readPage(dirty)).getTupleNumber());
+    }
+
+    /**
+     * flushPages writes the pages of one transaction and marks them clean.
+     */
+    @Test public void flushPages() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        BufferPool pool = Database.getBufferPool();
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        HeapPageId p0 = new HeapPageId(file.getId(), 0);
+        HeapPageId p1 = new HeapPageId(file.getId(), 1);
+        file.deleteTuple(t1, ((HeapPage) pool.getPage(t1, p0, Permissions.READ_WRITE)).iterator().next());
+        file.deleteTuple(t2, ((HeapPage) pool.getPage(t2, p1, Permissions.READ_WRITE)).iterator().next());
+
+        pool.flushPages(t1);
+        assertNull(pool.getPage(t1, p0, Permissions.READ_ONLY).isDirty());
+        assertEquals(503, ((HeapPage) file.readPage(p0)).getTupleNumber());
+        assertEquals(t2, pool.getPage(t2, p1, Permissions.READ_ONLY).isDirty());
+        assertEquals(504, ((HeapPage) file.readPage(p1)).getTupleNumber());
+
+        pool.flushAllPages();
+        assertEquals(503, ((HeapPage) file.readPage(p1)).getTupleNumber());
+    }
+
+    private static void dirtyPages(HeapFile file, TransactionId tid, int... pageNos) throws Exception {
+        for (int pageNo : pageNos) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(
+                    tid, new HeapPageId(file.getId(), pageNo), Permissions.READ_WRITE);
+            file.deleteTuple(tid, page.iterator().next());
+        }
+    }
+
+    /**
+     * The page writer leaves the pool alone below the high watermark, and
+     * above it writes adjacent dirty pages with one write per run.
+     */
+    @Test public void pageWriterCoalescesRuns() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.LRU);
+        TransactionId tid = new TransactionId();
+        dirtyPages(file, tid, 0, 1);
+
+        // driven by hand instead of by its thread
+        PageWriter writer = new PageWriter(pool, 0.25, 0, 60000);
+        assertEquals(0, writer.flushIfNeeded());
+        assertEquals(2, writer.getBacklog());
+
+        dirtyPages(file, tid, 2, 4, 5);
+        assertEquals(5, writer.flushIfNeeded());
+        assertEquals(0, writer.getBacklog());
+        assertEquals(5, writer.getPagesFlushed());
+        // pages 0-2 and 4-5
+        assertEquals(2, writer.getWrites());
+        for (int pageNo : new int[] {0, 1, 2, 4, 5})
+            assertEquals(503, ((HeapPage) file.readPage(new HeapPageId(file.getId(), pageNo))).getTupleNumber());
+        assertEquals(504, ((HeapPage) file.readPage(new HeapPageId(file.getId(), 3))).getTupleNumber());
+    }
+
+    /**
+     * A running page writer cleans the pool in the background.
+     */
+    @Test public void pageWriterThread() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.LRU);
+        PageWriter writer = pool.startPageWriter(0.25, 0, 10);
+        dirtyPages(file, new TransactionId(), 0, 1, 2, 3, 4, 5);
+        for (int i = 0; i < 500 && writer.getBacklog() > 0; i++)
+            Thread.sleep(10);
+        pool.stopPageWriter();
+        assertEquals(0, writer.getBacklog());
+        assertTrue(writer.getPagesFlushed() >= 6);
+        assertNull(pool.getPageWriter());
+    }
+
+    /**
+     * Flushes, the page writer and a thread changing pages run at once;
+     * none of them fails, and a page that ends up clean in memory is the
+     * same on disk.
+     */
+    @Test public void concurrentWriteBacks() throws Exception {
+        final HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        final BufferPool pool = Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.LRU);
+        final TransactionId tid = new TransactionId();
+        final PageWriter writer = new PageWriter(pool, 0.01, 0, 60000);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread[] flushers = new Thread[3];
+        for (int t = 0; t < flushers.length; t++) {
+            final int which = t;
+            flushers[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (done.getCount() > 0) {
+                            if (which == 0) writer.flushIfNeeded();
+                            else pool.flushPages(tid);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            flushers[t].start();
+        }
+        try {
+            for (int i = 0; i < 4000; i++)
+                dirtyPages(file, tid, i % 8);
+        } finally {
+            done.countDown();
+            for (Thread t : flushers)
+                t.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+        pool.flushAllPages();
+        for (int pageNo = 0; pageNo < 8; pageNo++) {
+            HeapPageId pid = new HeapPageId(file.getId(), pageNo);
+            HeapPage cached = (HeapPage) pool.getPage(tid, pid, Permissions.READ_ONLY);
+            assertEquals(cached.getTupleNumber(), ((HeapPage) file.readPage(pid)).getTupleNumber());
+        }
+    }
+
+    /**
+     * A round of the page writer thread that fails is kept and reported when
+     * the writer is stopped.
+     */
+    @Test public void pageWriterFailure() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.LRU);
+        dirtyPages(file, new TransactionId(), 0, 1, 2, 3, 4, 5);
+        // the pages cannot be written without their file
+        Database.getCatalog().removeTable(file.getId());
+        PageWriter writer = pool.startPageWriter(0.25, 0, 10);
+        for (int i = 0; i < 500 && writer.getFailure() == null; i++)
+            Thread.sleep(10);
+        assertTrue(writer.getFailure() != null);
+        try {
+            pool.stopPageWriter();
+            fail("expected the writer's failure");
+        } catch (IOException e) {
+            assertTrue(e.getCause() != null);
+        }
+        assertEquals(6, writer.getBacklog());
+        // reported once
+        pool.startPageWriter(0.99, 0.98, 60000);
+        pool.stopPageWriter();
+    }
+
+    /**
+     * A discarded page that is still pinned keeps its frame until the last
+     * unpin; the next getPage reads it again.
+     */
+    @Test public void discardPinned() throws Exception {
+        HeapFile file = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES, ReplacementPolicy.Kind.LRU);
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(file.getId(), 0);
+        HeapPage pinned = (HeapPage) pool.pinPage(tid, pid, Permissions.READ_ONLY, false);
+        pool.discardPage(pid);
+        assertFalse(pool.isResident(pid));
+        assertEquals(BufferPool.PAGE_SIZE, pool.getUsedBytes());
+
+        HeapPage reread = (HeapPage) pool.getPage(tid, pid, Permissions.READ_ONLY);
+        assertTrue(reread != pinned);
+        assertEquals(2 * BufferPool.PAGE_SIZE, pool.getUsedBytes());
+        assertEquals(504, pinned.getTupleNumber());
+        pool.unpinPage(pid);
+        assertEquals(BufferPool.PAGE_SIZE, pool.getUsedBytes());
+        assertTrue(pool.isResident(pid));
+
+        // an unpinned page goes at once
+        pool.discardPage(pid);
+        assertEquals(0, pool.getUsedBytes());
+    }
+
+    /**
+     * Dirty victims are written back while another thread keeps missing on
+     * a second table, and no change is lost.
+     */
+    @Test public void dirtyEvictionsWithReaders() throws Exception {
+        final HeapFile written = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        final HeapFile read = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        final BufferPool pool = Database.resetBufferPool(4, ReplacementPolicy.Kind.LRU);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                TransactionId tid = new TransactionId();
+                try {
+                    for (int i = 0; done.getCount() > 0; i++) {
+                        pool.getPage(tid, new HeapPageId(read.getId(), i % 8), Permissions.READ_ONLY);
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        reader.start();
+        TransactionId tid = new TransactionId();
+        try {
+            for (int i = 0; i < 400; i++)
+                dirtyPages(written, tid, i % 8);
+        } finally {
+            done.countDown();
+            reader.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertTrue(reads.get() > 0);
+        pool.flushAllPages();
+        for (int pageNo = 0; pageNo < 8; pageNo++)
+            assertEquals(504 - 50, ((HeapPage) written.readPage(new HeapPageId(written.getId(), pageNo))).getTupleNumber());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
@@ -0,0 +1,190 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.Filter;
+import mydb.TupleDetail.Tuple;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class HashIndexTest extends MyDbTestBase {
+
+    // a two-column table with a hash index on column 1
+    private static HeapFile openTable(File f) {
+        HeapFile table = TestUtil.addTable(new HeapFile(f, TestUtil.TWO_FIELDS), "h");
+        table.addIndex(1);
+        return table;
+    }
+
+    // the first fields of the tuples whose field 1 is value, sorted
+    private static List<Integer> lookup(HeapFile table, int value) throws Exception {
+        DbFileIterator it = table.getIndex(1).iterator(new TransactionId(), new IntField(value));
+        List<Integer> keys = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(value, ((IntField) t.getField(1)).getValue());
+            keys.add(((IntField) t.getField(0)).getValue());
+        }
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static List<Integer> expected(int rows, int values, int value, int deletedBelow) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = Math.max(deletedBelow, 0); i < rows; i++)
+            if (i % values == value) keys.add(i);
+        return keys;
+    }
+
+    /**
+     * Inserts and deletes keep the index up to date, with buckets that
+     * split and values that need overflow pages.
+     */
+    @Test public void maintainedByInsertAndDelete() throws Exception {
+        HeapFile table = openTable(TestUtil.createTableFile("indexed", 1));
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        // 200 values of 100 tuples each: more entries than one bucket holds
+        for (int i = 0; i < 20000; i++) {
+            Tuple t = TestUtil.tuple(i, i % 200);
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            tuples.add(t);
+        }
+        assertTrue(table.getIndex(1).getFile().length() > 20000 / HashIndex.BUCKET_CAPACITY * HashIndex.PAGE_SIZE);
+        for (int value : new int[] {0, 7, 199})
+            assertEquals(expected(20000, 200, value, 0), lookup(table, value));
+        assertEquals(Collections.emptyList(), lookup(table, 200));
+
+        for (Tuple t : tuples.subList(0, 10000))
+            Database.getBufferPool().deleteTuple(tid, t);
+        for (int value : new int[] {0, 7, 199})
+            assertEquals(expected(20000, 200, value, 10000), lookup(table, value));
+    }
+
+    /**
+     * A cleanly closed index is used again; one the table changed behind
+     * is built again from the table.
+     */
+    @Test public void reopenAndRebuild() throws Exception {
+        File f = TestUtil.createTableFile("indexed", 1);
+        HeapFile table = openTable(f);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), TestUtil.tuple(i, i % 30));
+        Database.getBufferPool().flushAllPages();
+        Database.reset();
+        File index = table.getIndex(1).getFile();
+        long indexModified = index.lastModified();
+
+        table = openTable(f);
+        assertEquals(expected(3000, 30, 4, 0), lookup(table, 4));
+        assertEquals(indexModified, index.lastModified());
+        Database.reset();
+
+        // rows added without the index
+        HeapFile plain = TestUtil.addTable(new HeapFile(f, TestUtil.TWO_FIELDS), "p");
+        for (int i = 3000; i < 3300; i++)
+            Database.getBufferPool().insertTuple(tid, plain.getId(), TestUtil.tuple(i, i % 30));
+        Database.getBufferPool().flushAllPages();
+        Database.reset();
+
+        table = openTable(f);
+        assertEquals(expected(3300, 30, 4, 0), lookup(table, 4));
+    }
+
+    /**
+     * A selective equality filter on the indexed field is planned as an
+     * IndexScan, other filters on top of it; the catalog declares indexes.
+     */
+    @Test public void plannedForEquality() throws Exception {
+        HeapFile table = openTable(TestUtil.createTableFile("indexed", 1));
+        TransactionId tid = new TransactionId();
+        // 40 pages, 10 tuples per value of field1
+        for (int i = 0; i < 20000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), TestUtil.tuple(i, i % 2000));
+        String name = Database.getCatalog().getTableName(table.getId());
+        HashMap<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(table.getId(), TableStats.IOCOSTPERPAGE));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.field0", Comparison.Operation.LESS_THAN, "1000");
+        lp.addFilter("t.field1", Comparison.Operation.EQUALS, "3");
+        lp.addProjectField("t.field0", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator scan = ((Operator) plan).getChildren()[0];
+        assertTrue(scan instanceof Filter);
+        assertTrue(((Filter) scan).getChildren()[0] instanceof IndexScan);
+        List<Integer> keys = new ArrayList<>();
+        plan.open();
+        while (plan.hasNext())
+            keys.add(((IntField) plan.next().getField(0)).getValue());
+        plan.close();
+        Collections.sort(keys);
+        assertEquals(expected(1000, 2000, 3, 0), keys);
+
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.field0", Comparison.Operation.EQUALS, "3");
+        lp.addProjectField("t.field0", null);
+        scan = ((Operator) lp.physicalPlan(tid, stats, false)).getChildren()[0];
+        assertTrue(((Filter) scan).getChildren()[0] instanceof SeqScan);
+
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        String indexed = TestUtil.tableName("i");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(indexed + " (a int, b int) hashindex=b\n");
+        }
+        new File(schema.getParent(), indexed + ".dat").deleteOnExit();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        HeapFile file = (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId(indexed));
+        assertNotNull(file.getIndex(1));
+        assertNull(file.getIndex(0));
+    }
+
+    /**
+     * An index closed while the table's changes were only in the buffer
+     * pool is not trusted when they never reach the disk.
+     */
+    @Test public void closedBeforeTableFlushed() throws Exception {
+        File f = TestUtil.createTableFile("indexed", 1);
+        HeapFile table = openTable(f);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), TestUtil.tuple(i, i % 10));
+        Database.getBufferPool().flushAllPages();
+        for (int i = 1000; i < 1500; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), TestUtil.tuple(i, i % 10));
+        // a crash: the index is closed, the last rows never reach the table
+        table.close();
+        Database.reset();
+
+        table = openTable(f);
+        assertEquals(expected(1000, 10, 3, 0), lookup(table, 3));
+        assertEquals(100, table.getIndex(1).lookup(new IntField(3)).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexTest.class);
+    }
+}
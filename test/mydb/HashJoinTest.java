@@ -0,0 +1,177 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Exception.DBException;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.HashJoin;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleIterator;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class HashJoinTest extends MyDbTestBase {
+
+    private static final JoinCompare EQUALS = new JoinCompare(0, Comparison.Operation.EQUALS, 0);
+
+    // rows tuples (i % values, i)
+    private static TupleIterator tuples(int rows, int values) {
+        int[] data = new int[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            data[2 * i] = i % values;
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    // the equi-join of two lists by nested loops
+    private static List<String> expected(TupleIterator left, TupleIterator right) throws Exception {
+        List<Tuple> l = new ArrayList<>();
+        List<Tuple> r = new ArrayList<>();
+        left.rewind();
+        while (left.hasNext())
+            l.add(left.next());
+        right.rewind();
+        while (right.hasNext())
+            r.add(right.next());
+        List<String> rows = new ArrayList<>();
+        for (Tuple t1 : l) {
+            for (Tuple t2 : r) {
+                if (!EQUALS.filter(t1, t2)) continue;
+                Tuple t = new Tuple(Utility.getTupleDesc(4));
+                for (int i = 0; i < 2; i++) {
+                    t.setField(i, t1.getField(i));
+                    t.setField(2 + i, t2.getField(i));
+                }
+                rows.add(t.toString());
+            }
+        }
+        Collections.sort(rows);
+        left.rewind();
+        right.rewind();
+        return rows;
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void equalityOnly() {
+        new HashJoin(new JoinCompare(0, Comparison.Operation.LESS_THAN, 0), tuples(1, 1), tuples(1, 1));
+    }
+
+    /**
+     * Either side can be the one that fits in memory; nothing is spilled.
+     * When both fit, the table is built on the smaller one.
+     */
+    @Test public void inMemory() throws Exception {
+        // 100 tuples fit, 1000 do not
+        int memory = 100 * 8;
+        TupleIterator small = tuples(100, 40);
+        TupleIterator large = tuples(1000, 50);
+        List<String> expected = expected(small, large);
+        HashJoin op = new HashJoin(EQUALS, small, large, memory);
+        op.open();
+        assertEquals(expected, TestUtil.rows(op, true));
+        assertEquals(0, op.spilledPartitions());
+        op.close();
+
+        expected = expected(large, small);
+        op = new HashJoin(EQUALS, large, small, memory);
+        op.open();
+        assertFalse(op.buildsLeft());
+        assertEquals(expected, TestUtil.rows(op, true));
+        assertEquals(0, op.spilledPartitions());
+        op.rewind();
+        assertEquals(expected, TestUtil.rows(op, true));
+        op.close();
+
+        op = new HashJoin(EQUALS, large, small);
+        op.open();
+        assertFalse(op.buildsLeft());
+        assertEquals(expected, TestUtil.rows(op, true));
+        op.close();
+        op = new HashJoin(EQUALS, small, large);
+        op.open();
+        assertTrue(op.buildsLeft());
+        op.close();
+    }
+
+    /**
+     * When neither side fits both are partitioned to temporary files, split
+     * again while a partition is too large, and the files are gone after
+     * close.
+     */
+    @Test public void spills() throws Exception {
+        int before = TestUtil.tableCount();
+        TupleIterator left = tuples(3000, 500);
+        TupleIterator right = tuples(2000, 700);
+        List<String> expected = expected(left, right);
+        HashJoin op = new HashJoin(EQUALS, left, right, 20 * 8);
+        op.open();
+        assertEquals(expected, TestUtil.rows(op, true));
+        // the second level split happened too
+        assertTrue(op.spilledPartitions() > 2 * HashJoin.FANOUT);
+        op.rewind();
+        assertEquals(expected, TestUtil.rows(op, true));
+        op.close();
+        assertEquals(before, TestUtil.tableCount());
+    }
+
+    /**
+     * Tuples with one join value cannot be split; once the partitions stop
+     * getting smaller they are joined by nested loops, not in memory, and
+     * the other values are still hashed.
+     */
+    @Test public void skewed() throws Exception {
+        int before = TestUtil.tableCount();
+        int[] data = new int[600 * 2];
+        for (int i = 0; i < 600; i++) {
+            // half the tuples have value 0
+            data[2 * i] = i % 2 == 0 ? 0 : i;
+            data[2 * i + 1] = i;
+        }
+        TupleIterator left = TestUtil.createTupleList(2, data);
+        TupleIterator right = tuples(200, 1);
+        List<String> expected = expected(left, right);
+        HashJoin op = new HashJoin(EQUALS, left, right, 10 * 8);
+        op.open();
+        assertEquals(300 * 200, expected.size());
+        assertEquals(expected, TestUtil.rows(op, true));
+        assertEquals(1, op.nestedLoopPairs());
+        op.rewind();
+        assertEquals(expected, TestUtil.rows(op, true));
+        op.close();
+        assertEquals(before, TestUtil.tableCount());
+    }
+
+    /**
+     * A child that fails while the join partitions it leaves no partition
+     * files behind.
+     */
+    @Test public void failureDeletesSpills() throws Exception {
+        int before = TestUtil.tableCount();
+        HashJoin op = new HashJoin(EQUALS, new TestUtil.FailingScan(0, 3000, 2, 2500),
+                tuples(2000, 700), 20 * 8);
+        try {
+            op.open();
+            fail("expected the scan to fail");
+        } catch (DBException e) {
+            // expected
+        }
+        assertEquals(before, TestUtil.tableCount());
+        op.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashJoinTest.class);
+    }
+}
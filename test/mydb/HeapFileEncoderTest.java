@@ -0,0 +1,114 @@
+package mydb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Test;
+
+public class HeapFileEncoderTest extends MyDbTestBase {
+
+    private static final Type[] TYPES = {Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE};
+
+    private static File textFile(String contents) throws IOException {
+        File f = File.createTempFile("encoder", ".txt");
+        f.deleteOnExit();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(contents);
+        }
+        return f;
+    }
+
+    private static File convert(File in, int threads, int chunkBytes) throws IOException {
+        File out = File.createTempFile("encoder", ".dat");
+        out.deleteOnExit();
+        HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, TYPES.length, TYPES, ',', threads, chunkBytes);
+        return out;
+    }
+
+    private static List<Tuple> read(File dat) throws Exception {
+        HeapFile file = new HeapFile(dat, new TupleDetail(TYPES));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        List<Tuple> tuples = new ArrayList<>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    /**
+     * Many small chunks parsed by several workers give the same file as one
+     * chunk parsed by one thread.
+     */
+    @Test public void parallelMatchesSerial() throws Exception {
+        StringBuilder text = new StringBuilder();
+        Random r = new Random(7);
+        for (int i = 0; i < 5000; i++)
+            text.append(r.nextInt()).append(", s").append(i).append(" ,").append(r.nextLong()).append('\n');
+        File in = textFile(text.toString());
+        File serial = convert(in, 1, HeapFileEncoder.CHUNK_BYTES);
+        File parallel = convert(in, 4, 100);
+        assertArrayEquals(TestUtil.readFileBytes(serial.getPath()), TestUtil.readFileBytes(parallel.getPath()));
+
+        List<Tuple> tuples = read(parallel);
+        assertEquals(5000, tuples.size());
+        assertEquals(new StringField("s4999", Type.STRING_LEN), tuples.get(4999).getField(1));
+    }
+
+    /**
+     * Empty lines, CR-LF endings, an unterminated last line, bad lines and
+     * extreme values.
+     */
+    @Test public void lineHandling() throws Exception {
+        String longString = new String(new char[Type.STRING_LEN + 10]).replace('\0', 'x');
+        File in = textFile("1,a,2\r\n\n"
+                + "-2147483648,b,-9223372036854775808\n"
+                + "2147483648,overflow,0\n"
+                + "3,too,many,fields\n"
+                + "4,few\n"
+                + "x,bad,0\n"
+                + "5," + longString + ",9223372036854775807");
+        List<Tuple> tuples = read(convert(in, 2, 8));
+        assertEquals(3, tuples.size());
+        assertEquals(new IntField(1), tuples.get(0).getField(0));
+        assertEquals(new StringField("a", Type.STRING_LEN), tuples.get(0).getField(1));
+        assertEquals(new IntField(Integer.MIN_VALUE), tuples.get(1).getField(0));
+        assertEquals(new LongField(Long.MIN_VALUE), tuples.get(1).getField(2));
+        assertEquals(new StringField(longString.substring(0, Type.STRING_LEN), Type.STRING_LEN),
+                tuples.get(2).getField(1));
+        assertEquals(new LongField(Long.MAX_VALUE), tuples.get(2).getField(2));
+    }
+
+    /**
+     * An empty input still makes one empty page.
+     */
+    @Test public void emptyInput() throws Exception {
+        File out = convert(textFile(""), 3, 16);
+        assertEquals(BufferPool.PAGE_SIZE, out.length());
+        assertEquals(0, read(out).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
@@ -79,6 +79,19 @@ public class HeapFileReadTest extends MyDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.close(): the file reopens on the next read.
+     */
+    @Test
+    public void closeAndReread() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        hf.readPage(pid);
+        hf.close();
+        hf.close();
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        assertEquals(20, page.getTupleNumber());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
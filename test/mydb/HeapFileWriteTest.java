@@ -1,6 +1,10 @@
 package mydb;
 
 import mydb.Database.Database;
+import mydb.Database.ReplacementPolicy;
+import mydb.systemtest.SystemTestUtil;
+import java.io.File;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,6 +48,102 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.pageCount());
     }
 
+    /**
+     * Tables with small and large pages store and return their tuples, and
+     * their files grow by whole pages.
+     */
+    @Test public void pageSizes() throws Exception {
+        for (int pageSize : new int[] {HeapFile.MIN_PAGE_SIZE, HeapFile.MAX_PAGE_SIZE}) {
+            File f = File.createTempFile("pagesize", ".dat");
+            f.deleteOnExit();
+            new File(f.getPath() + ".fsm").deleteOnExit();
+            HeapFile file = new HeapFile(f, Utility.getTupleDesc(2), pageSize);
+            Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+            int perPage = (pageSize * 8) / (8 * 8 + 1);
+            for (int i = 0; i < perPage + 1; i++)
+                Database.getBufferPool().insertTuple(tid, file.getId(), Utility.getHeapTuple(i, 2));
+            Database.getBufferPool().flushAllPages();
+            assertEquals(2, file.pageCount());
+            assertEquals(2L * pageSize, f.length());
+            assertEquals(perPage + 1, countTuples(file, tid));
+        }
+        try {
+            new HeapFile(new File("unused"), Utility.getTupleDesc(2), 5000);
+            fail("expected IllegalArgumentException for a page size that is not a power of two");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static int countTuples(HeapFile f, TransactionId tid) throws Exception {
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * A tuple is inserted once, into a page with room, and full pages are
+     * not read again once the free-space map knows about them.
+     */
+    @Test public void insertUsesFreeSpaceMap() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 20 - 1, 1000, null, null);
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        TestUtil.CountingHeapFile file = new TestUtil.CountingHeapFile(f, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+
+        // the map starts out unknown: the first insert looks at every page
+        file.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        assertEquals(20, file.pageCount());
+        assertEquals(504 * 20, countTuples(file, tid));
+
+        Database.resetBufferPool(4, ReplacementPolicy.Kind.LRU);
+        file.reads.set(0);
+        for (int i = 0; i < 600; i++)
+            file.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        assertEquals(22, file.pageCount());
+        // only the two appended pages, which were written empty
+        assertTrue(file.reads.get() <= 2);
+
+        // a delete makes room on a page that was full
+        HeapPageId third = new HeapPageId(file.getId(), 3);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, third, Permissions.READ_WRITE);
+        file.deleteTuple(tid, page.iterator().next());
+        Page target = file.insertTuple(tid, Utility.getHeapTuple(7, 2)).get(0);
+        assertEquals(third, target.getId());
+    }
+
+    /**
+     * The free-space map survives closing and reopening the table.
+     */
+    @Test public void freeSpaceMapIsPersistent() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 10, 1000, null, null);
+        f.deleteOnExit();
+        File sidecar = new File(f.getPath() + ".fsm");
+        sidecar.deleteOnExit();
+        TestUtil.CountingHeapFile file = new TestUtil.CountingHeapFile(f, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        file.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().flushAllPages();
+        file.close();
+        assertTrue(sidecar.exists());
+
+        Database.reset();
+        TestUtil.CountingHeapFile reopened = new TestUtil.CountingHeapFile(f, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(0, reopened.freeSpace().freeSlots(0));
+        assertEquals(503, reopened.freeSpace().freeSlots(10));
+        reopened.insertTuple(tid, Utility.getHeapTuple(2, 2));
+        assertEquals(1, reopened.reads.get());
+        assertEquals(11, reopened.pageCount());
+    }
+
     /**
      * JUnit suite target
      */
@@ -9,12 +9,16 @@ import mydb.systemtest.SystemTestUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -123,6 +127,33 @@ public class HeapPageReadTest extends MyDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField() and getTuple(): single fields are
+     * decoded in place, and a slot decodes to the same Tuple every time.
+     */
+    @Test public void decodeOnDemand() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int row = 0; row < 20; row++) {
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) page.getField(row, 1)).getValue());
+            assertSame(page.getTuple(row), page.getTuple(row));
+        }
+        assertNull(page.getTuple(20));
+    }
+
+    /**
+     * Unit test for HeapPage(HeapPageId, ByteBuffer): a slice of a larger
+     * buffer reads like the array it came from.
+     */
+    @Test public void fromByteBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(EXAMPLE_DATA.length + 16);
+        buffer.position(16);
+        buffer.put(EXAMPLE_DATA);
+        buffer.position(16);
+        HeapPage page = new HeapPage(pid, buffer);
+        assertEquals(16, buffer.position());
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,14 +1,17 @@
 package mydb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
 import junit.framework.JUnit4TestAdapter;
 
+import mydb.Database.BufferPool;
 import mydb.Database.Database;
 import mydb.Exception.DBException;
 import mydb.TupleDetail.Tuple;
@@ -128,6 +131,84 @@ public class HeapPageWriteTest extends MyDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage(): changes are not visible in
+     * the before-image, nor in the array the page was read from.
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] {7, 7}));
+        page.insertTuple(Utility.getHeapTuple(new int[] {8, 8}));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, data);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+        assertEquals(21, page.getBeforeImage().getTupleNumber());
+    }
+
+    /**
+     * Unit test for HeapPage.writeTo(): the bytes at the offset are the
+     * page data, and read back as the same page.
+     */
+    @Test public void writeTo() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        page.deleteTuple(page.getTuple(3));
+        page.insertTuple(Utility.getHeapTuple(new int[] {31, 32}));
+        page.insertTuple(Utility.getHeapTuple(new int[] {41, 42}));
+
+        byte[] out = new byte[BufferPool.PAGE_SIZE + 10];
+        Arrays.fill(out, (byte) 0x55);
+        page.writeTo(out, 10);
+        byte[] data = Arrays.copyOfRange(out, 10, out.length);
+        assertArrayEquals(page.getPageData(), data);
+
+        HeapPage copy = new HeapPage(pid, data);
+        assertEquals(21, copy.getTupleNumber());
+        assertEquals(31, ((IntField) copy.getField(3, 0)).getValue());
+        assertEquals(41, ((IntField) copy.getField(20, 0)).getValue());
+        assertEquals(page.getTuple(5).toString(), copy.getTuple(5).toString());
+    }
+
+    /**
+     * Slots are allocated lowest first and the counts follow inserts and
+     * deletes on a page whose header spans several bitmap words.
+     */
+    @Test public void slotBitmap() throws Exception {
+        HeapPageId widePid = new HeapPageId(-2, 0);
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(-2, Utility.getTupleDesc(1)), SystemTestUtil.getUUID());
+        HeapPage page = new HeapPage(widePid, HeapPage.createEmptyPageData());
+        int slots = page.getNumEmptySlots();
+        assertEquals(992, slots);
+        for (int i = 0; i < slots; i++) {
+            Tuple t = Utility.getHeapTuple(new int[] {i});
+            page.insertTuple(t);
+            assertEquals(i, t.getRecordId().tupleno());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+        assertEquals(slots, page.getTupleNumber());
+
+        page.deleteTuple(page.getTuple(700));
+        page.deleteTuple(page.getTuple(64));
+        assertEquals(2, page.getNumEmptySlots());
+        Tuple t = Utility.getHeapTuple(new int[] {-1});
+        page.insertTuple(t);
+        assertEquals(64, t.getRecordId().tupleno());
+
+        HeapPage reread = new HeapPage(widePid, page.getPageData());
+        assertEquals(1, reread.getNumEmptySlots());
+        assertTrue(!reread.isSlotUsed(700));
+        int count = 0;
+        Iterator<Tuple> it = reread.iterator();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(slots - 1, count);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,149 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.Filter;
+import mydb.Operation.Join.HashJoin;
+import mydb.Operation.Join.IndexNestedLoopJoin;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class IndexNestedLoopJoinTest extends MyDbTestBase {
+
+    // rows tuples (i % mod0, i % mod1)
+    private static DbFile load(DbFile file, int rows, int mod0, int mod1) throws Exception {
+        TestUtil.addTable(file, "j");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; i++)
+            Database.getBufferPool().insertTuple(tid, file.getId(), TestUtil.tuple(i % mod0, i % mod1));
+        return file;
+    }
+
+    // the join of two plans by nested loops over their results
+    private static List<String> naiveJoin(DbIterator outer, DbIterator inner, JoinCompare p) throws Exception {
+        List<Tuple> left = new ArrayList<>();
+        List<Tuple> right = new ArrayList<>();
+        outer.open();
+        while (outer.hasNext())
+            left.add(outer.next());
+        outer.close();
+        inner.open();
+        while (inner.hasNext())
+            right.add(inner.next());
+        inner.close();
+        TupleDetail td = TupleDetail.merge(outer.getTupleDetail(), inner.getTupleDetail());
+        List<String> rows = new ArrayList<>();
+        for (Tuple l : left) {
+            for (Tuple r : right) {
+                if (!p.filter(l, r)) continue;
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < 2; i++) {
+                    t.setField(i, l.getField(i));
+                    t.setField(2 + i, r.getField(i));
+                }
+                rows.add(t.toString());
+            }
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * An equality join into a hash-indexed table probes the index and keeps
+     * the filters on the inner table.
+     */
+    @Test public void hashIndexJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFile outer = load(new HeapFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS),
+                300, 1000, 150);
+        HeapFile inner = new HeapFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS);
+        inner.addIndex(0);
+        load(inner, 3000, 200, 3000);
+
+        LogicalJoinNode lj = new LogicalJoinNode("a", "b", "field1", "field0", Comparison.Operation.EQUALS);
+        DbIterator innerPlan = new Filter(new Comparison(1, Comparison.Operation.LESS_THAN, new IntField(2000)),
+                new SeqScan(tid, inner.getId(), "b"));
+        DbIterator j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, outer.getId(), "a"), innerPlan);
+        assertTrue(j instanceof IndexNestedLoopJoin);
+        List<String> expected = naiveJoin(new SeqScan(tid, outer.getId(), "a"), innerPlan,
+                new JoinCompare(1, Comparison.Operation.EQUALS, 0));
+        assertEquals(300 * 2000 / 200, expected.size());
+        j.open();
+        assertEquals(expected, TestUtil.rows(j, true));
+        j.close();
+
+        // the outer table has no index, so the reverse join is a HashJoin
+        lj = new LogicalJoinNode("b", "a", "field0", "field1", Comparison.Operation.EQUALS);
+        j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, inner.getId(), "b"), new SeqScan(tid, outer.getId(), "a"));
+        assertTrue(j instanceof HashJoin);
+    }
+
+    /**
+     * A range join into a B+tree probes the tree with the reversed
+     * operation.
+     */
+    @Test public void btreeRangeJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFile outer = load(new HeapFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS),
+                50, 1000, 1000);
+        DbFile inner = load(new BTreeFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS, 0),
+                400, 100, 7);
+
+        for (Comparison.Operation op : new Comparison.Operation[] {Comparison.Operation.GREATER_THAN,
+                Comparison.Operation.LESS_THAN_OR_EQ}) {
+            LogicalJoinNode lj = new LogicalJoinNode("a", "b", "field0", "field0", op);
+            DbIterator j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, outer.getId(), "a"),
+                    new SeqScan(tid, inner.getId(), "b"));
+            assertTrue(j instanceof IndexNestedLoopJoin);
+            j.open();
+            assertEquals(op.toString(), naiveJoin(new SeqScan(tid, outer.getId(), "a"),
+                    new SeqScan(tid, inner.getId(), "b"), new JoinCompare(0, op, 0)),
+                    TestUtil.rows(j, true));
+            j.close();
+        }
+    }
+
+    /**
+     * Probing an index costs less than reading the inner table for a small
+     * outer side, and the cost grows with it.
+     */
+    @Test public void joinCost() throws Exception {
+        DbFile outer = load(new HeapFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS),
+                100, 1000, 1000);
+        HeapFile inner = new HeapFile(TestUtil.createTableFile("join", 0), TestUtil.TWO_FIELDS);
+        inner.addIndex(0);
+        load(inner, 20000, 20000, 7);
+        TableStats innerStats = new TableStats(inner.getId(), TableStats.IOCOSTPERPAGE);
+        TableStats.setTableStats(Database.getCatalog().getTableName(inner.getId()), innerStats);
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "a");
+        lp.addScan(inner.getId(), "b");
+        JoinOptimizer jo = new JoinOptimizer(lp, new Vector<LogicalJoinNode>());
+        LogicalJoinNode indexed = new LogicalJoinNode("a", "b", "field0", "field0", Comparison.Operation.EQUALS);
+        LogicalJoinNode scanned = new LogicalJoinNode("a", "b", "field0", "field1", Comparison.Operation.EQUALS);
+        double innerScan = innerStats.estimateScanCost();
+        double small = jo.estimateJoinCost(indexed, 10, 20000, 1000, innerScan);
+        assertTrue(small < jo.estimateJoinCost(scanned, 10, 20000, 1000, innerScan));
+        assertTrue(small < jo.estimateJoinCost(indexed, 1000, 20000, 1000, innerScan));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
@@ -109,6 +109,56 @@ public class JoinTest extends MyDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Unit test for Join.getNext() using a &lt;&gt; predicate
+   */
+  @Test public void neJoin() throws Exception {
+    JoinCompare pred = new JoinCompare(0, Comparison.Operation.NOT_EQUALS, 0);
+    Join op = new Join(pred, scan1, scan2);
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      assertTrue(!t.getField(0).equals(t.getField(2)));
+      count++;
+    }
+    // 4 * 5 pairs, 3 of them equal
+    assertEquals(17, count);
+  }
+
+  /**
+   * An equality join whose children take several blocks each
+   */
+  @Test public void eqJoinManyBlocks() throws Exception {
+    int rows = 3 * Join.BLOCK_MEMORY / 8;
+    Join op = new Join(new JoinCompare(0, Comparison.Operation.EQUALS, 1),
+        new TestUtil.MockScan(0, rows, 2), new TestUtil.MockScan(rows / 2, rows + rows / 2, 2));
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      assertEquals(t.getField(0), t.getField(3));
+      count++;
+    }
+    assertEquals(rows - rows / 2, count);
+  }
+
+  /**
+   * The join streams its result: the first tuples come back without the
+   * whole result (here 200 million tuples) being computed first
+   */
+  @Test public void streamsResult() throws Exception {
+    int rows = 20000;
+    Join op = new Join(new JoinCompare(0, Comparison.Operation.LESS_THAN, 0),
+        new TestUtil.MockScan(0, rows, 2), new TestUtil.MockScan(0, rows, 2));
+    op.open();
+    for (int i = 0; i < 1000; i++) {
+      Tuple t = op.next();
+      assertTrue(((IntField) t.getField(0)).getValue() < ((IntField) t.getField(2)).getValue());
+    }
+    op.close();
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,86 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Test;
+
+public class MappedHeapFileTest extends MyDbTestBase {
+
+    private MappedHeapFile openMapped(File f) {
+        MappedHeapFile file = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        return file;
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): a scan returns every tuple.
+     */
+    @Test public void scan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3 + 10, 1000, null, tuples);
+        MappedHeapFile file = openMapped(f);
+        assertEquals(4, file.pageCount());
+        SystemTestUtil.matchTuples(file, tuples);
+    }
+
+    /**
+     * Pages appended after the file was mapped are readable.
+     */
+    @Test public void remapsWhenFileGrows() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504, 1000, null, null);
+        MappedHeapFile file = openMapped(f);
+        HeapPageId first = new HeapPageId(file.getId(), 0);
+        assertEquals(504, ((HeapPage) file.readPage(first)).getTupleNumber());
+
+        // page 0 is full, so this adds page 1
+        TransactionId tid = new TransactionId();
+        file.insertTuple(tid, Utility.getHeapTuple(new int[] {1, 2}));
+        Database.getBufferPool().flushAllPages();
+        assertEquals(2, file.pageCount());
+
+        HeapPage page = (HeapPage) file.readPage(new HeapPageId(file.getId(), 1));
+        assertEquals(1, page.getTupleNumber());
+        assertEquals(new IntField(2), page.iterator().next().getField(1));
+    }
+
+    /**
+     * The catalog picks MappedHeapFile for tables declared with storage=mmap.
+     */
+    @Test public void catalogOption() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        String mapped = TestUtil.tableName("m");
+        String plain = TestUtil.tableName("p");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(mapped + " (a int, b int) storage=mmap\n");
+            w.write(plain + " (a int pk, b int) pagesize=16384\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        DbFile m = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(mapped));
+        DbFile p = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(plain));
+        assertTrue(m instanceof MappedHeapFile);
+        assertTrue(!(p instanceof MappedHeapFile));
+        assertEquals("a", Database.getCatalog().getPrimaryKey(p.getId()));
+        assertEquals(BufferPool.PAGE_SIZE, m.getPageSize());
+        assertEquals(16384, p.getPageSize());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,99 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleIterator;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class OrderByTest extends MyDbTestBase {
+
+    // rows tuples (random value, i)
+    private static TupleIterator tuples(int rows) {
+        Random r = new Random(rows);
+        int[] data = new int[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            data[2 * i] = r.nextInt(1000);
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    private static int value(Tuple t) {
+        return ((IntField) t.getField(0)).getValue();
+    }
+
+    // reads op to the end, checking the order
+    private static int checkOrder(OrderBy op, boolean asc) throws Exception {
+        int n = 0;
+        Tuple last = null;
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            if (last != null)
+                assertTrue(asc ? value(t) >= value(last) : value(t) <= value(last));
+            last = t;
+            n++;
+        }
+        return n;
+    }
+
+    @Test public void inMemory() throws Exception {
+        OrderBy op = new OrderBy(0, false, tuples(1000));
+        op.open();
+        assertEquals(1000, checkOrder(op, false));
+        assertEquals(0, op.spilledRuns());
+        assertEquals(0, op.spilledBytes());
+        op.close();
+    }
+
+    /**
+     * A child bigger than the memory is sorted in runs on disk, and the
+     * spill is counted.
+     */
+    @Test public void spills() throws Exception {
+        // 8 bytes a tuple, 500 tuples a run
+        OrderBy op = new OrderBy(0, true, tuples(10000), 500 * 8);
+        op.open();
+        assertEquals(10000, checkOrder(op, true));
+        assertEquals(19, op.spilledRuns());
+        assertTrue(op.spilledBytes() >= 19 * 500 * 8);
+        op.rewind();
+        assertEquals(10000, checkOrder(op, true));
+        op.close();
+        // the counts stay after close, for reporting
+        assertEquals(19, op.spilledRuns());
+    }
+
+    /**
+     * Running a query reports its sorts that spilled.
+     */
+    @Test public void reportsSpills() throws Exception {
+        Query q = new Query(new OrderBy(0, true, tuples(2000), 500 * 8), new TransactionId());
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            q.execute();
+        } finally {
+            System.setOut(out);
+        }
+        String text = printed.toString();
+        assertTrue(text, text.contains(" 2000 rows."));
+        assertTrue(text, text.contains(" spilled 3 runs, "));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
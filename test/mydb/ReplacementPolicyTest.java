@@ -0,0 +1,153 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.ClockPolicy;
+import mydb.Database.LruKPolicy;
+import mydb.Database.LruPolicy;
+import mydb.Database.ReplacementPolicy;
+import mydb.Database.TwoQueuePolicy;
+import org.junit.Test;
+
+public class ReplacementPolicyTest {
+
+    /**
+     * Unit test for LruPolicy: hits move a frame to the MRU end.
+     */
+    @Test public void lru() {
+        ReplacementPolicy policy = new LruPolicy(4);
+        assertEquals(-1, policy.victim(ReplacementPolicy.ANY_FRAME));
+        for (int i = 0; i < 4; i++)
+            policy.recordLoad(i, false);
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+
+        policy.recordAccess(0, false);
+        policy.recordAccess(2, false);
+        assertEquals(1, policy.victim(ReplacementPolicy.ANY_FRAME));
+
+        policy.remove(1);
+        assertEquals(3, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(3);
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(0);
+        policy.remove(2);
+        assertEquals(-1, policy.victim(ReplacementPolicy.ANY_FRAME));
+    }
+
+    /**
+     * Unit test for victim filters: rejected frames are skipped, not lost.
+     */
+    @Test public void skipsRejectedFrames() {
+        ReplacementPolicy.FrameFilter notZero = new ReplacementPolicy.FrameFilter() {
+            @Override
+            public boolean accept(int frame) {
+                return frame != 0;
+            }
+        };
+        ReplacementPolicy[] policies = new ReplacementPolicy[] {
+                new LruPolicy(3), new ClockPolicy(3), new LruKPolicy(3, 2), new TwoQueuePolicy(3)
+        };
+        for (ReplacementPolicy policy : policies) {
+            for (int i = 0; i < 3; i++)
+                policy.recordLoad(i, false);
+            assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+            assertEquals(1, policy.victim(notZero));
+            policy.remove(1);
+            policy.remove(2);
+            assertEquals(-1, policy.victim(notZero));
+            assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+        }
+    }
+
+    /**
+     * Unit test for ClockPolicy: referenced frames get a second chance.
+     */
+    @Test public void clock() {
+        ReplacementPolicy policy = new ClockPolicy(3);
+        assertEquals(-1, policy.victim(ReplacementPolicy.ANY_FRAME));
+        for (int i = 0; i < 3; i++)
+            policy.recordLoad(i, false);
+
+        // every bit is set: one turn clears them and the hand stops at 0
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(0);
+        policy.recordLoad(0, false);
+
+        // 1 and 2 lost their bits on the first sweep, 0 was just loaded
+        assertEquals(1, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(1);
+
+        // both survivors are referenced: the hand clears 2, then 0, and
+        // comes back around to 2
+        policy.recordAccess(2, false);
+        assertEquals(2, policy.victim(ReplacementPolicy.ANY_FRAME));
+    }
+
+    /**
+     * Unit test for LruKPolicy: pages seen once go before pages seen twice.
+     */
+    @Test public void lruK() {
+        ReplacementPolicy policy = new LruKPolicy(4, 2);
+        for (int i = 0; i < 4; i++)
+            policy.recordLoad(i, false);
+        policy.recordAccess(0, false);
+        policy.recordAccess(1, false);
+
+        // 2 and 3 have a single reference; 2 is the older one
+        assertEquals(2, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(2);
+        assertEquals(3, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.remove(3);
+
+        // among frames with two references the older second-last access loses
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+        policy.recordAccess(0, false);
+        assertEquals(1, policy.victim(ReplacementPolicy.ANY_FRAME));
+
+        // a reload forgets the history of the previous page
+        policy.recordLoad(1, false);
+        assertEquals(1, policy.victim(ReplacementPolicy.ANY_FRAME));
+    }
+
+    /**
+     * Unit test for TwoQueuePolicy: only a second, non-sequential reference
+     * protects a page.
+     */
+    @Test public void twoQueue() {
+        ReplacementPolicy policy = new TwoQueuePolicy(8);
+        for (int i = 0; i < 4; i++)
+            policy.recordLoad(i, false);
+        policy.recordAccess(0, false);
+        policy.recordAccess(1, false);
+        policy.recordAccess(2, true);
+
+        // frames 2 and 3 are on probation but within its share of the pool,
+        // so the protected queue gives up its LRU page
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+
+        // a scan streaming through the rest of the pool only evicts itself
+        for (int i = 4; i < 8; i++)
+            policy.recordLoad(i, true);
+        for (int round = 0; round < 10; round++) {
+            int victim = policy.victim(ReplacementPolicy.ANY_FRAME);
+            assertTrue(victim != 0 && victim != 1);
+            policy.remove(victim);
+            policy.recordLoad(victim, true);
+        }
+
+        // with probation empty again the protected LRU page is next
+        for (int i = 2; i < 8; i++)
+            policy.remove(i);
+        assertEquals(0, policy.victim(ReplacementPolicy.ANY_FRAME));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
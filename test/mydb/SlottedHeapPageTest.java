@@ -0,0 +1,231 @@
+package mydb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlottedHeapPageTest extends MyDbTestBase {
+
+    private static final TupleDetail DETAIL = new TupleDetail(new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(-1, DETAIL), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(DETAIL);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> tuples(TuplePage page) {
+        List<Tuple> result = new ArrayList<>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            result.add(it.next());
+        return result;
+    }
+
+    /**
+     * Short strings take only their length, so far more than the 30 fixed
+     * 136-byte slots fit on a page.
+     */
+    @Test public void packsShortStrings() throws Exception {
+        assertTrue(SlottedHeapPage.isVariableLength(DETAIL));
+        assertFalse(SlottedHeapPage.isVariableLength(Utility.getTupleDesc(2)));
+
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(0, page.getTupleNumber());
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "name" + n))) {
+            page.insertTuple(tuple(n, "name" + n));
+            n++;
+        }
+        // 4 int + 2 length + ~7 chars + 4 directory bytes
+        assertTrue("only " + n + " tuples fit", n > 200);
+        assertEquals(n, page.getTupleNumber());
+        // what is left holds at most a tuple with an empty string
+        assertEquals(page.hasRoomFor(tuple(n, "")) ? 1 : 0, page.getNumEmptySlots());
+
+        SlottedHeapPage reread = new SlottedHeapPage(pid, page.getPageData());
+        List<Tuple> read = tuples(reread);
+        assertEquals(n, read.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(new IntField(i), read.get(i).getField(0));
+            assertEquals(new StringField("name" + i, Type.STRING_LEN), read.get(i).getField(1));
+            assertEquals(i, read.get(i).getRecordId().tupleno());
+        }
+    }
+
+    /**
+     * Deleted space is reused after compaction and slot numbers stay put.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        while (page.hasRoomFor(tuple(0, "abcdefghij"))) {
+            Tuple t = tuple(inserted.size(), "abcdefghij");
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        // a longer string fits only after deleting several short ones
+        String longString = new String(new char[100]).replace('\0', 'z');
+        assertFalse(page.hasRoomFor(tuple(-1, longString)));
+        for (int i = 1; i < 20; i += 2)
+            page.deleteTuple(inserted.get(i));
+        assertTrue(page.hasRoomFor(tuple(-1, longString)));
+        Tuple big = tuple(-1, longString);
+        page.insertTuple(big);
+        // the first empty slot is reused
+        assertEquals(1, big.getRecordId().tupleno());
+
+        SlottedHeapPage reread = new SlottedHeapPage(pid, page.getPageData());
+        assertEquals(longString, ((StringField) reread.getTuple(1).getField(1)).getValue());
+        assertNull(reread.getTuple(3));
+        assertEquals(new IntField(4), reread.getTuple(4).getField(0));
+        assertEquals(inserted.size() - 9, reread.getTupleNumber());
+
+        try {
+            reread.deleteTuple(inserted.get(3));
+            throw new AssertionError("deleted an empty slot");
+        } catch (DBException expected) {
+        }
+    }
+
+    /**
+     * The before-image is the page as read until setBeforeImage.
+     */
+    @Test public void beforeImage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "a"));
+        page.setBeforeImage();
+        byte[] before = page.getPageData();
+        page.insertTuple(tuple(2, "b"));
+        assertArrayEquals(before, page.getBeforeImage().getPageData());
+        assertEquals(2, page.getTupleNumber());
+        assertEquals(1, page.getBeforeImage().getTupleNumber());
+    }
+
+    /**
+     * A HeapFile of a table with strings stores SlottedHeapPages and reads
+     * back what was inserted through the buffer pool.
+     */
+    @Test public void heapFile() throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = new HeapFile(f, DETAIL);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, file.getId(), tuple(i, "row" + i));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        assertTrue(file.readPage(new HeapPageId(file.getId(), 0)) instanceof SlottedHeapPage);
+        // 1000 fixed-size tuples would take 34 pages
+        assertTrue(file.pageCount() <= 5);
+        assertEquals(file.pageCount() * (long) BufferPool.PAGE_SIZE, f.length());
+
+        tid = new TransactionId();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new StringField("row" + ((IntField) t.getField(0)).getValue(), Type.STRING_LEN),
+                    t.getField(1));
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1000, n);
+    }
+
+    /**
+     * A table with strings written in the fixed-width format, before such
+     * tables used slotted pages, still opens: its pages are read as
+     * HeapPages, and a page added to it is slotted.
+     */
+    @Test public void legacyStringTable() throws Exception {
+        File f = File.createTempFile("legacy", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = new HeapFile(f, DETAIL);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        int perPage = 0;
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            for (int p = 0; p < 2; p++) {
+                HeapPageId legacyPid = new HeapPageId(file.getId(), p);
+                HeapPage page = new HeapPage(legacyPid, HeapPage.createEmptyPageData());
+                perPage = page.getNumEmptySlots();
+                for (int i = 0; i < perPage; i++)
+                    page.insertTuple(tuple(p * perPage + i, "row" + (p * perPage + i)));
+                byte[] bytes = page.getPageData();
+                try {
+                    new SlottedHeapPage(legacyPid, bytes);
+                    fail("a fixed-width page read as a slotted page");
+                } catch (IOException expected) {
+                }
+                out.write(bytes);
+            }
+        }
+
+        file = new HeapFile(f, DETAIL);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        assertTrue(file.readPage(new HeapPageId(file.getId(), 0)) instanceof HeapPage);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, file.getId(), tuple(2 * perPage, "row" + 2 * perPage));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        assertEquals(3, file.pageCount());
+        assertTrue(file.readPage(new HeapPageId(file.getId(), 2)) instanceof SlottedHeapPage);
+
+        tid = new TransactionId();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new StringField("row" + ((IntField) t.getField(0)).getValue(), Type.STRING_LEN),
+                    t.getField(1));
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(2 * perPage + 1, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
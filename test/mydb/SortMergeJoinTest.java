@@ -0,0 +1,184 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.HashJoin;
+import mydb.Operation.Join.SortMergeJoin;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.TupleDetail.TupleIterator;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class SortMergeJoinTest extends MyDbTestBase {
+
+    private static final JoinCompare EQUALS = new JoinCompare(0, Comparison.Operation.EQUALS, 0);
+
+    // rows tuples (random value below values, i)
+    private static TupleIterator tuples(int rows, int values, long seed) {
+        Random r = new Random(seed);
+        int[] data = new int[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            data[2 * i] = r.nextInt(values);
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    private static int value(Tuple t, int field) {
+        return ((IntField) t.getField(field)).getValue();
+    }
+
+    /**
+     * Runs of equal values on both sides join with each other, and the
+     * result comes out ordered on the join field.
+     */
+    @Test public void duplicates() throws Exception {
+        TupleIterator left = tuples(2000, 300, 1);
+        TupleIterator right = tuples(1500, 400, 2);
+        HashJoin hash = new HashJoin(EQUALS, left, right);
+        hash.open();
+        List<String> expected = TestUtil.rows(hash, true);
+        hash.close();
+        assertTrue(expected.size() > 0);
+
+        left.rewind();
+        right.rewind();
+        SortMergeJoin op = new SortMergeJoin(EQUALS, left, right, false, false);
+        op.open();
+        List<String> actual = new ArrayList<>();
+        int last = Integer.MIN_VALUE;
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            assertEquals(value(t, 0), value(t, 2));
+            assertTrue(value(t, 0) >= last);
+            last = value(t, 0);
+            actual.add(t.toString());
+        }
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        op.rewind();
+        assertEquals(expected, TestUtil.rows(op, true));
+        op.close();
+    }
+
+    /**
+     * More runs than can be merged at once are merged in two passes; the
+     * result is sorted, equal values keep their input order, and the run
+     * files are gone after close.
+     */
+    @Test public void externalSort() throws Exception {
+        int before = TestUtil.tableCount();
+        int rows = 20000;
+        // 100 tuples a run, so 200 runs
+        ExternalSort sort = new ExternalSort(0, true, tuples(rows, 1000, 3), 100 * 8);
+        sort.open();
+        assertTrue(sort.spilledRuns() > 200);
+        for (int pass = 0; pass < 2; pass++) {
+            Tuple last = null;
+            int n = 0;
+            while (sort.hasNext()) {
+                Tuple t = sort.next();
+                if (last != null) {
+                    assertTrue(value(t, 0) >= value(last, 0));
+                    if (value(t, 0) == value(last, 0))
+                        assertTrue(value(t, 1) > value(last, 1));
+                }
+                last = t;
+                n++;
+            }
+            assertEquals(rows, n);
+            sort.rewind();
+        }
+        sort.close();
+        assertEquals(before, TestUtil.tableCount());
+
+        sort = new ExternalSort(1, false, tuples(100, 10, 4));
+        sort.open();
+        assertEquals(0, sort.spilledRuns());
+        assertEquals(99, value(sort.next(), 1));
+        sort.close();
+    }
+
+    /**
+     * The planner merges two inputs that are already sorted on the join
+     * fields without sorting them.
+     */
+    @Test public void plannedForSortedInputs() throws Exception {
+        TupleDetail detail = TestUtil.TWO_FIELDS;
+        TransactionId tid = new TransactionId();
+        BTreeFile[] trees = new BTreeFile[2];
+        for (int i = 0; i < 2; i++) {
+            File f = File.createTempFile("merge", ".dat");
+            f.deleteOnExit();
+            trees[i] = new BTreeFile(f, detail, 0);
+            TestUtil.addTable(trees[i], "m");
+            for (int v = 0; v < 500; v++) {
+                Tuple t = new Tuple(detail);
+                t.setField(0, new IntField((v * 7) % 500 / (i + 1)));
+                t.setField(1, new IntField(v));
+                Database.getBufferPool().insertTuple(tid, trees[i].getId(), t);
+            }
+        }
+        SeqScan a = new SeqScan(tid, trees[0].getId(), "a");
+        SeqScan b = new SeqScan(tid, trees[1].getId(), "b");
+        assertTrue(JoinOptimizer.sortedOn(a, 0));
+        assertFalse(JoinOptimizer.sortedOn(a, 1));
+        assertTrue(JoinOptimizer.sortedOn(new OrderBy(1, true, a), 1));
+        assertFalse(JoinOptimizer.sortedOn(new OrderBy(1, false, a), 1));
+
+        DbIterator j = JoinOptimizer.instantiateJoin(
+                new LogicalJoinNode("a", "b", "field0", "field0", Comparison.Operation.EQUALS), a, b);
+        assertTrue(j instanceof SortMergeJoin);
+        assertTrue(JoinOptimizer.sortedOn(j, 0));
+        assertTrue(JoinOptimizer.sortedOn(j, 2));
+        j.open();
+        List<String> merged = TestUtil.rows(j, true);
+        j.close();
+        HashJoin hash = new HashJoin(new JoinCompare(0, Comparison.Operation.EQUALS, 0),
+                new SeqScan(tid, trees[0].getId(), "a"), new SeqScan(tid, trees[1].getId(), "b"));
+        hash.open();
+        assertEquals(TestUtil.rows(hash, true), merged);
+        hash.close();
+
+        j = JoinOptimizer.instantiateJoin(
+                new LogicalJoinNode("a", "b", "field1", "field0", Comparison.Operation.EQUALS), a, b);
+        assertFalse(j instanceof SortMergeJoin);
+    }
+
+    /**
+     * A child that fails while it is sorted leaves no run files behind.
+     */
+    @Test public void failureDeletesRuns() throws Exception {
+        int before = TestUtil.tableCount();
+        ExternalSort sort = new ExternalSort(0, true, new TestUtil.FailingScan(0, 3000, 2, 2500), 100 * 8);
+        try {
+            sort.open();
+            fail("expected the scan to fail");
+        } catch (DBException e) {
+            // expected
+        }
+        assertEquals(before, TestUtil.tableCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
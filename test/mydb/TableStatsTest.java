@@ -0,0 +1,175 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.Filter;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleDetail;
+import mydb.systemtest.MyDbTestBase;
+import org.junit.Test;
+
+public class TableStatsTest extends MyDbTestBase {
+
+    // 20000 tuples (i, i % values) in a table of the given kind
+    private static DbFile load(DbFile file, int values) throws Exception {
+        TestUtil.addTable(file, "s");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 20000; i++)
+            Database.getBufferPool().insertTuple(tid, file.getId(), TestUtil.tuple(i, i % values));
+        return file;
+    }
+
+    private static HashMap<String, TableStats> stats(DbFile file) {
+        HashMap<String, TableStats> stats = new HashMap<>();
+        stats.put(Database.getCatalog().getTableName(file.getId()),
+                new TableStats(file.getId(), TableStats.IOCOSTPERPAGE));
+        return stats;
+    }
+
+    // the operator the projection of a single-table plan reads from
+    private static DbIterator accessPath(DbFile file, String filter, Comparison.Operation op, String constant,
+            boolean explain) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(file.getId(), "t");
+        lp.addFilter("t." + filter, op, constant);
+        lp.addProjectField("t.field0", null);
+        return ((Operator) lp.physicalPlan(new TransactionId(), stats(file), explain)).getChildren()[0];
+    }
+
+    @Test public void histograms() {
+        IntHistogram h = new IntHistogram(10, 1, 100);
+        for (int v = 1; v <= 100; v++)
+            h.addValue(v);
+        assertEquals(0.01, h.estimateSelectivity(Comparison.Operation.EQUALS, 42), 1e-9);
+        assertEquals(0.5, h.estimateSelectivity(Comparison.Operation.GREATER_THAN, 50), 1e-9);
+        assertEquals(0.5, h.estimateSelectivity(Comparison.Operation.LESS_THAN_OR_EQ, 50), 1e-9);
+        assertEquals(0.49, h.estimateSelectivity(Comparison.Operation.LESS_THAN, 50), 1e-9);
+        assertEquals(1.0, h.estimateSelectivity(Comparison.Operation.GREATER_THAN, 0), 1e-9);
+        assertEquals(0.0, h.estimateSelectivity(Comparison.Operation.GREATER_THAN_OR_EQ, 101), 1e-9);
+        assertEquals(1.0, h.estimateSelectivity(Comparison.Operation.NOT_EQUALS, 101), 1e-9);
+        assertEquals(0.01, h.avgSelectivity(Comparison.Operation.EQUALS), 1e-9);
+
+        String[] fruit = {"apple", "banana", "cherry", "damson"};
+        StringHistogram s = new StringHistogram(100, StringHistogram.stringToInt(fruit[0]),
+                StringHistogram.stringToInt(fruit[3]));
+        for (String v : fruit)
+            s.addValue(v);
+        assertEquals(0.5, s.estimateSelectivity(Comparison.Operation.LESS_THAN, "c"), 0.01);
+        assertEquals(0.0, s.estimateSelectivity(Comparison.Operation.GREATER_THAN, "zebra"), 0.01);
+    }
+
+    /**
+     * The table's size and selectivities come from one pass over it.
+     */
+    @Test public void estimates() throws Exception {
+        HeapFile file = (HeapFile) load(new HeapFile(TestUtil.createTableFile("stats", 1), TestUtil.TWO_FIELDS),
+                100);
+        TableStats s = new TableStats(file.getId(), TableStats.IOCOSTPERPAGE);
+        assertEquals(20000, s.totalTuples());
+        assertEquals(file.pageCount() * TableStats.IOCOSTPERPAGE, s.estimateScanCost(), 1e-9);
+        assertEquals(0.01, s.estimateSelectivity(1, Comparison.Operation.EQUALS, new IntField(7)), 0.001);
+        assertEquals(0.25, s.estimateSelectivity(0, Comparison.Operation.LESS_THAN, new IntField(5000)), 0.01);
+        assertEquals(200, s.estimateTableCardinality(0.01));
+        assertEquals(Double.POSITIVE_INFINITY,
+                s.estimateIndexScanCost(1, Comparison.Operation.EQUALS, new IntField(7)), 0);
+    }
+
+    // a table of (i, value) for every value, with a hash index on the string
+    private static HeapFile stringTable(String... values) throws Exception {
+        TupleDetail td = new TupleDetail(new Type[] {Type.INT_TYPE, Type.STRING_TYPE},
+                new String[] {"field0", "field1"});
+        HeapFile file = new HeapFile(TestUtil.createTableFile("stats", 1), td);
+        file.addIndex(1);
+        TestUtil.addTable(file, "s");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < values.length; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(values[i], Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, file.getId(), t);
+        }
+        return file;
+    }
+
+    /**
+     * String equality is estimated from how many strings share the
+     * constant's prefix, so a value every tuple has is not read through
+     * the index, and a rare one is.
+     */
+    @Test public void stringEquals() throws Exception {
+        String[] values = new String[1000];
+        Arrays.fill(values, "same");
+        HeapFile same = stringTable(values);
+        TableStats s = new TableStats(same.getId(), TableStats.IOCOSTPERPAGE);
+        StringField constant = new StringField("same", Type.STRING_LEN);
+        assertEquals(1.0, s.estimateSelectivity(1, Comparison.Operation.EQUALS, constant), 1e-9);
+        assertEquals(0.0, s.estimateSelectivity(1, Comparison.Operation.EQUALS,
+                new StringField("other", Type.STRING_LEN)), 1e-9);
+        assertEquals(1.0, s.avgSelectivity(1, Comparison.Operation.EQUALS), 1e-9);
+        assertEquals(1.0, s.estimateSelectivity(1, Comparison.Operation.GREATER_THAN_OR_EQ, constant), 1e-9);
+        assertTrue(accessPath(same, "field1", Comparison.Operation.EQUALS, "same", false) instanceof Filter);
+
+        values = new String[20000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = "v" + i % 1000;
+        HeapFile spread = stringTable(values);
+        s = new TableStats(spread.getId(), TableStats.IOCOSTPERPAGE);
+        assertEquals(0.001, s.estimateSelectivity(1, Comparison.Operation.EQUALS,
+                new StringField("v7", Type.STRING_LEN)), 1e-9);
+        assertEquals(0.001, s.avgSelectivity(1, Comparison.Operation.EQUALS), 1e-9);
+        assertTrue(accessPath(spread, "field1", Comparison.Operation.EQUALS, "v7", false) instanceof IndexScan);
+    }
+
+    /**
+     * An index is used only when it is estimated to read fewer pages than a
+     * scan, and -explain says which access path was chosen.
+     */
+    @Test public void accessPathByCost() throws Exception {
+        HeapFile few = new HeapFile(TestUtil.createTableFile("stats", 1), TestUtil.TWO_FIELDS);
+        few.addIndex(1);
+        load(few, 4);
+        // a quarter of the tuples are on every page
+        assertTrue(accessPath(few, "field1", Comparison.Operation.EQUALS, "3", false) instanceof Filter);
+
+        HeapFile many = new HeapFile(TestUtil.createTableFile("stats", 1), TestUtil.TWO_FIELDS);
+        many.addIndex(1);
+        load(many, 5000);
+        assertTrue(accessPath(many, "field1", Comparison.Operation.EQUALS, "3", false) instanceof IndexScan);
+
+        File bf = TestUtil.createTableFile("stats", 1);
+        BTreeFile tree = (BTreeFile) load(new BTreeFile(bf, TestUtil.TWO_FIELDS, 0), 1);
+        assertTrue(accessPath(tree, "field0", Comparison.Operation.LESS_THAN, "100", false) instanceof IndexScan);
+        assertTrue(accessPath(tree, "field0", Comparison.Operation.GREATER_THAN, "100", false) instanceof Filter);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream explained = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(explained, true));
+        try {
+            accessPath(tree, "field0", Comparison.Operation.LESS_THAN, "100", true);
+            accessPath(tree, "field0", Comparison.Operation.GREATER_THAN, "100", true);
+        } finally {
+            System.setOut(out);
+        }
+        String text = explained.toString();
+        assertTrue(text, text.contains("Access path for t: IndexScan on t.field0 < 100, cost "));
+        assertTrue(text, text.contains("Access path for t: SeqScan, cost "));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TableStatsTest.class);
+    }
+}
@@ -1,5 +1,6 @@
 package mydb;
 
+import mydb.Database.BufferPool;
 import mydb.Database.Database;
 import mydb.Exception.DBException;
 import mydb.Exception.TransactionAbortedException;
@@ -9,6 +10,7 @@ import mydb.TupleDetail.TupleIterator;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -197,6 +199,73 @@ public class TestUtil {
         return buf;
     }
 
+    /**
+     * The detail of the two-column int tables the operator tests build,
+     * with fields field0 and field1.
+     */
+    public static final TupleDetail TWO_FIELDS = Utility.getTupleDesc(2, "field");
+
+    /**
+     * @return a tuple (a, b) of {@link #TWO_FIELDS}
+     */
+    public static Tuple tuple(int a, int b) {
+        Tuple t = new Tuple(TWO_FIELDS);
+        t.setField(0, new IntField(a));
+        t.setField(1, new IntField(b));
+        return t;
+    }
+
+    /**
+     * @return a new temporary table file, deleted on exit together with its
+     *   free space map and the hash indexes on the given fields
+     */
+    public static File createTableFile(String prefix, int... indexedFields) throws IOException {
+        File f = File.createTempFile(prefix, ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        for (int field : indexedFields)
+            new File(f.getPath() + "." + field + ".hash").deleteOnExit();
+        return f;
+    }
+
+    /**
+     * @return a fresh table name starting with prefix that SQL accepts
+     */
+    public static String tableName(String prefix) {
+        return prefix + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * Adds file to the catalog under a fresh name starting with prefix.
+     * @return file
+     */
+    public static <F extends DbFile> F addTable(F file, String prefix) {
+        Database.getCatalog().addTable(file, tableName(prefix));
+        return file;
+    }
+
+    /**
+     * @return the number of tables in the catalog
+     */
+    public static int tableCount() {
+        int n = 0;
+        for (Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext(); it.next())
+            n++;
+        return n;
+    }
+
+    /**
+     * @return the remaining tuples of an open iterator as strings, sorted
+     *   if sort is set
+     */
+    public static List<String> rows(DbIterator it, boolean sort) throws Exception {
+        List<String> rows = new ArrayList<>();
+        while (it.hasNext())
+            rows.add(it.next().toString());
+        if (sort) Collections.sort(rows);
+        return rows;
+    }
+
     /**
      * Stub DbFile class for unit testing.
      */
@@ -221,6 +290,9 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public void close() {
+        }
+
         public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DBException, IOException, TransactionAbortedException {
             throw new RuntimeException("not implemented");
@@ -246,6 +318,10 @@ public class TestUtil {
 		public TupleDetail getTupleDetail() {
 			return td;
 		}
+
+        public int getPageSize() {
+            return BufferPool.PAGE_SIZE;
+        }
     }
 
     /**
@@ -305,6 +381,66 @@ public class TestUtil {
 		}
     }
 
+    /**
+     * A MockScan that throws a DBException instead of returning the tuple
+     * with value failAt, for testing how operators clean up after failures.
+     */
+    public static class FailingScan extends MockScan {
+        private static final long serialVersionUID = 1L;
+
+        private final int failAt;
+        private int cur;
+        private final int low;
+
+        public FailingScan(int low, int high, int width, int failAt) {
+            super(low, high, width);
+            this.low = low;
+            this.cur = low;
+            this.failAt = failAt;
+        }
+
+        public void rewind() {
+            super.rewind();
+            cur = low;
+        }
+
+        public Tuple next() throws DBException, TransactionAbortedException, NoSuchElementException {
+            if (cur == failAt) throw new DBException("scan failed at " + failAt);
+            Tuple tup = super.next();
+            cur++;
+            return tup;
+        }
+    }
+
+    /**
+     * A HeapFile that counts its page reads, and can sleep in each read so
+     * that concurrent misses on the same page overlap.
+     */
+    public static class CountingHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        public final AtomicInteger reads = new AtomicInteger();
+        private final long readMillis;
+
+        public CountingHeapFile(File f, TupleDetail td, long readMillis) {
+            super(f, td);
+            this.readMillis = readMillis;
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws IOException, DBException {
+            reads.incrementAndGet();
+            if (readMillis > 0) {
+                try {
+                    Thread.sleep(readMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.readPage(pid);
+        }
+    }
+
     /**
      * Helper class that attempts to acquire a lock on a given page in a new
      * thread.
@@ -0,0 +1,115 @@
+package mydb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import mydb.Database.Database;
+import mydb.TupleDetail.Tuple;
+import mydb.TupleDetail.TupleIterator;
+import mydb.systemtest.MyDbTestBase;
+import mydb.systemtest.SystemTestUtil;
+import org.junit.Test;
+
+public class TopNTest extends MyDbTestBase {
+
+    // rows tuples (random value below values, i)
+    private static TupleIterator tuples(int rows, int values) {
+        Random r = new Random(rows);
+        int[] data = new int[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            data[2 * i] = r.nextInt(values);
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    /**
+     * The first n tuples of a TopN are those of an OrderBy, equal values
+     * in the order of the child.
+     */
+    @Test public void matchesOrderBy() throws Exception {
+        TupleIterator child = tuples(5000, 300);
+        for (boolean asc : new boolean[] {true, false}) {
+            child.rewind();
+            OrderBy sort = new OrderBy(0, asc, child);
+            sort.open();
+            List<String> sorted = TestUtil.rows(sort, false);
+            sort.close();
+            for (int n : new int[] {0, 1, 10, 777, 5000, 6000}) {
+                child.rewind();
+                TopN top = new TopN(0, asc, n, child);
+                top.open();
+                List<String> expected = sorted.subList(0, Math.min(n, sorted.size()));
+                assertEquals(expected, TestUtil.rows(top, false));
+                top.rewind();
+                assertEquals(expected, TestUtil.rows(top, false));
+                top.close();
+            }
+        }
+    }
+
+    /**
+     * Parsed queries with a LIMIT are planned as a TopN under ORDER BY and
+     * as a Limit without it.
+     */
+    @Test public void parsedLimit() throws Exception {
+        ArrayList<ArrayList<Integer>> data = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, null, data, "field");
+        String name = TestUtil.tableName("l");
+        Database.getCatalog().addTable(table, name);
+        HashMap<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(table.getId(), TableStats.IOCOSTPERPAGE));
+        TransactionId tid = new TransactionId();
+        Parser parser = new Parser();
+
+        LogicalPlan lp = parser.generateLogicalPlan(tid,
+                "SELECT t.field0 FROM " + name + " t ORDER BY t.field0 DESC LIMIT 5;");
+        assertEquals(5, lp.getLimit());
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof TopN);
+        List<Integer> values = new ArrayList<>();
+        for (ArrayList<Integer> row : data)
+            values.add(row.get(0));
+        values.sort(null);
+        plan.open();
+        for (int i = 0; i < 5; i++) {
+            Tuple t = plan.next();
+            assertEquals(values.get(values.size() - 1 - i), (Integer) ((IntField) t.getField(0)).getValue());
+        }
+        assertTrue(!plan.hasNext());
+        plan.close();
+
+        lp = parser.generateLogicalPlan(tid, "SELECT * FROM " + name + " t limit 3;");
+        plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof Limit);
+        plan.open();
+        assertEquals(3, TestUtil.rows(plan, false).size());
+        plan.close();
+
+        lp = parser.generateLogicalPlan(tid, "SELECT * FROM " + name + " t;");
+        assertEquals(-1, lp.getLimit());
+    }
+
+    @Test public void cutLimit() {
+        StringBuilder sql = new StringBuilder("select * from t order by t.a LIMIT 10 ;\nselect * from u limit 2;");
+        assertEquals(10, Parser.cutLimit(sql));
+        assertEquals("select * from t order by t.a;\nselect * from u limit 2;", sql.toString());
+        sql = new StringBuilder("select * from limits;");
+        assertEquals(-1, Parser.cutLimit(sql));
+        assertEquals("select * from limits;", sql.toString());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TopNTest.class);
+    }
+}
@@ -0,0 +1,94 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import mydb.BTreeFile;
+import mydb.BulkLoad;
+import mydb.DbFileIterator;
+import mydb.HeapFile;
+import mydb.IntField;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.TupleDetail.Tuple;
+
+/**
+ * Point queries on a key: a filtered scan of a HeapFile against a probe of
+ * a BTreeFile with the same rows. Also reports how fast the tree is built
+ * by single inserts in random key order.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.BTreeBenchmark [rows] [probes]
+ * </pre>
+ */
+public class BTreeBenchmark {
+
+    private static final int POOL_PAGES = 2048;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int probes = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+
+        File hf = File.createTempFile("heap", ".dat");
+        hf.deleteOnExit();
+        new File(hf.getPath() + ".fsm").deleteOnExit();
+        HeapFile heap = Utility.openHeapFile(2, hf);
+        BulkLoad load = new BulkLoad(tid, new TestUtil.MockScan(0, rows, 2), heap.getId());
+        load.open();
+        load.close();
+
+        File bf = File.createTempFile("btree", ".dat");
+        bf.deleteOnExit();
+        BTreeFile tree = new BTreeFile(bf, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(tree, bf.getName());
+        Random r = new Random(42);
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++)
+            order[i] = i;
+        for (int i = rows - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        long start = System.nanoTime();
+        for (int key : order)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), Utility.getHeapTuple(new int[] {key, key}));
+        Database.getBufferPool().flushAllPages();
+        System.out.printf("%d rows: B+tree built by random inserts at %.0f rows/s%n",
+                rows, rows / ((System.nanoTime() - start) / 1e9));
+
+        int scans = Math.max(1, probes / 1000);
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            Comparison c = new Comparison(0, Comparison.Operation.EQUALS, new IntField(r.nextInt(rows)));
+            DbFileIterator it = heap.iterator(tid);
+            it.open();
+            int found = 0;
+            while (it.hasNext())
+                if (c.filter(it.next())) found++;
+            it.close();
+            if (found != 1) throw new AssertionError("found " + found);
+        }
+        double scanRate = scans / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int i = 0; i < probes; i++) {
+            int key = r.nextInt(rows);
+            DbFileIterator it = tree.indexIterator(tid,
+                    new Comparison(0, Comparison.Operation.EQUALS, new IntField(key)));
+            it.open();
+            Tuple t = it.next();
+            if (((IntField) t.getField(1)).getValue() != key || it.hasNext()) throw new AssertionError("key " + key);
+            it.close();
+        }
+        double probeRate = probes / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("point queries: heap scan %.1f/s   B+tree probe %.0f/s%n", scanRate, probeRate);
+    }
+}
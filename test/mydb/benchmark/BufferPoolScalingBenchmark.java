@@ -0,0 +1,107 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import mydb.HeapFile;
+import mydb.HeapPage;
+import mydb.HeapPageId;
+import mydb.Permissions;
+import mydb.Utility;
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Database.ReplacementPolicy;
+import mydb.systemtest.SystemTestUtil;
+
+/**
+ * Measures how BufferPool.getPage scales with the number of threads. Each
+ * thread looks up random pages of one table, first with a pool that holds
+ * the whole table, so every lookup is a hit, then with a pool a quarter of
+ * its size, so lookups also evict and read pages. For each thread count the
+ * benchmark reports the lookups per second of all threads together and the
+ * speedup over one thread.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.BufferPoolScalingBenchmark [pages] [lookups per thread] [max threads]
+ * </pre>
+ */
+public class BufferPoolScalingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Math.max(8, Runtime.getRuntime().availableProcessors());
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * pages, 1 << 16, null, null);
+        System.out.printf("%d lookups per thread over %d pages, %d cores%n",
+                lookups, pages, Runtime.getRuntime().availableProcessors());
+        for (int poolPages : new int[] {pages, pages / 4}) {
+            System.out.printf("pool of %d pages%n", poolPages);
+            double single = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                Database.reset();
+                Database.resetBufferPool(poolPages, ReplacementPolicy.Kind.CLOCK);
+                HeapFile file = Utility.openHeapFile(2, f);
+                double best = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                    double rate = run(file, pages, threads, lookups);
+                    if (round >= WARMUP_ROUNDS) best = Math.max(best, rate);
+                }
+                if (threads == 1) single = best;
+                System.out.printf("%3d threads: %12.0f lookups/s (x%.2f)%n", threads, best, best / single);
+                file.close();
+            }
+        }
+    }
+
+    // lookups per second of all threads together
+    private static double run(final HeapFile file, final int pages, int threads, final int lookups)
+            throws Exception {
+        final BufferPool pool = Database.getBufferPool();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            Thread worker = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < lookups; i++) {
+                            HeapPageId pid = new HeapPageId(file.getId(), r.nextInt(pages));
+                            HeapPage page = (HeapPage) pool.pinPage(null, pid, Permissions.READ_ONLY, false);
+                            try {
+                                if (!page.getId().equals(pid))
+                                    throw new IllegalStateException("got " + page.getId());
+                            } finally {
+                                pool.unpinPage(pid);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        if (!errors.isEmpty()) throw new Exception(errors.get(0));
+        return (double) threads * lookups / seconds;
+    }
+}
@@ -0,0 +1,58 @@
+package mydb.benchmark;
+
+import java.io.File;
+
+import mydb.BulkLoad;
+import mydb.DbIterator;
+import mydb.HeapFile;
+import mydb.Insert;
+import mydb.Operator;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.Database;
+
+/**
+ * Compares loading rows into an empty table with the Insert operator (one
+ * BufferPool.insertTuple per row) and with BulkLoad (packed pages written
+ * in batches past the buffer pool). Insert is run on fewer rows, it is
+ * orders of magnitude slower; the comparison is in rows per second.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.BulkLoadBenchmark [bulk rows] [insert rows]
+ * </pre>
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int bulkRows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int insertRows = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        double insert = load(false, insertRows);
+        double bulk = load(true, bulkRows);
+        System.out.printf("Insert:   %10.0f rows/s (%d rows)%n", insert, insertRows);
+        System.out.printf("BulkLoad: %10.0f rows/s (%d rows, x%.1f)%n", bulk, bulkRows, bulk / insert);
+    }
+
+    /** @return rows per second */
+    private static double load(boolean bulk, int rows) throws Exception {
+        Database.reset();
+        File f = File.createTempFile("bulkload", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = Utility.createEmptyHeapFile(f.getPath(), 2);
+        TransactionId tid = new TransactionId();
+        DbIterator source = new TestUtil.MockScan(0, rows, 2);
+
+        long start = System.nanoTime();
+        Operator op = bulk ? new BulkLoad(tid, source, file.getId()) : new Insert(tid, source, file.getId());
+        op.open();
+        op.next();
+        op.close();
+        Database.getBufferPool().transactionComplete(tid);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        file.close();
+        return rows / seconds;
+    }
+}
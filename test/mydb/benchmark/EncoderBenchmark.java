@@ -0,0 +1,58 @@
+package mydb.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import mydb.HeapFileEncoder;
+import mydb.Type;
+import mydb.Database.BufferPool;
+
+/**
+ * Converts a generated CSV file (an int, a string and a long per line) with
+ * HeapFileEncoder using 1, 2, 4 ... threads up to the number of processors
+ * and prints the throughput of each.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.EncoderBenchmark [lines]
+ * </pre>
+ */
+public class EncoderBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Type[] types = {Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE};
+
+        File in = File.createTempFile("encoder", ".txt");
+        in.deleteOnExit();
+        File out = File.createTempFile("encoder", ".dat");
+        out.deleteOnExit();
+        Random r = new Random(42);
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(in))) {
+            for (int i = 0; i < lines; i++) {
+                w.write(Integer.toString(r.nextInt()));
+                w.write(",name");
+                w.write(Integer.toString(i));
+                w.write(',');
+                w.write(Long.toString(r.nextLong()));
+                w.write('\n');
+            }
+        }
+        System.out.printf("%d lines, %d MB%n", lines, in.length() >> 20);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                HeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, types.length, types, ',', threads);
+                best = Math.max(best, in.length() / ((System.nanoTime() - start) / 1e9) / (1 << 20));
+            }
+            System.out.printf("%2d threads: %7.1f MB/s%n", threads, best);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import mydb.BulkLoad;
+import mydb.DbFileIterator;
+import mydb.HeapFile;
+import mydb.IndexScan;
+import mydb.IntField;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+
+/**
+ * Equality lookups on a non-key column: a filtered scan of a HeapFile
+ * against an {@link IndexScan} over a hash index on the column. Also reports
+ * how long building the index from the loaded table takes.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.HashIndexBenchmark [rows] [lookups]
+ * </pre>
+ */
+public class HashIndexBenchmark {
+
+    private static final int POOL_PAGES = 2048;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+
+        File hf = File.createTempFile("heap", ".dat");
+        hf.deleteOnExit();
+        new File(hf.getPath() + ".fsm").deleteOnExit();
+        new File(hf.getPath() + ".1.hash").deleteOnExit();
+        HeapFile heap = Utility.openHeapFile(2, hf);
+        BulkLoad load = new BulkLoad(tid, new TestUtil.MockScan(0, rows, 2), heap.getId());
+        load.open();
+        load.close();
+
+        long start = System.nanoTime();
+        // the first lookup builds the index from the table
+        heap.addIndex(1).lookup(new IntField(0));
+        System.out.printf("%d rows: hash index built in %.0f ms%n", rows, (System.nanoTime() - start) / 1e6);
+
+        Random r = new Random(42);
+        int scans = Math.max(1, lookups / 1000);
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            Comparison c = new Comparison(1, Comparison.Operation.EQUALS, new IntField(r.nextInt(rows)));
+            DbFileIterator it = heap.iterator(tid);
+            it.open();
+            int found = 0;
+            while (it.hasNext())
+                if (c.filter(it.next())) found++;
+            it.close();
+            if (found != 1) throw new AssertionError("found " + found);
+        }
+        double scanRate = scans / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            IndexScan scan = new IndexScan(tid, heap.getId(), "t",
+                    new Comparison(1, Comparison.Operation.EQUALS, new IntField(r.nextInt(rows))));
+            scan.open();
+            int found = 0;
+            while (scan.hasNext()) {
+                scan.next();
+                found++;
+            }
+            scan.close();
+            if (found != 1) throw new AssertionError("found " + found);
+        }
+        double indexRate = lookups / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("equality lookups: heap scan %.1f/s   hash index %.0f/s%n", scanRate, indexRate);
+    }
+}
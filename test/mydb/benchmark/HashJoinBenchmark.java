@@ -0,0 +1,79 @@
+package mydb.benchmark;
+
+import java.io.File;
+
+import mydb.BulkLoad;
+import mydb.DbIterator;
+import mydb.HeapFile;
+import mydb.JoinCompare;
+import mydb.SeqScan;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.Database;
+import mydb.Operation.Join.Comparison;
+import mydb.Operation.Join.HashJoin;
+import mydb.Operation.Join.Join;
+import mydb.Operation.Join.SortMergeJoin;
+
+/**
+ * An equi-join of two HeapFiles with matching keys: the block sort-merge
+ * {@link Join} against a {@link HashJoin} that fits in memory, one that has
+ * to partition both sides to disk, and a {@link SortMergeJoin} that sorts
+ * its inputs externally or is told they are sorted.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.HashJoinBenchmark [rows]
+ * </pre>
+ */
+public class HashJoinBenchmark {
+
+    private static final int POOL_PAGES = 2048;
+
+    private static HeapFile load(TransactionId tid, int rows) throws Exception {
+        File f = File.createTempFile("join", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile heap = Utility.openHeapFile(2, f);
+        BulkLoad load = new BulkLoad(tid, new TestUtil.MockScan(0, rows, 2), heap.getId());
+        load.open();
+        load.close();
+        return heap;
+    }
+
+    private static void run(String name, DbIterator join, int rows) throws Exception {
+        long start = System.nanoTime();
+        join.open();
+        int n = 0;
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        if (n != rows) throw new AssertionError(name + " joined " + n);
+        System.out.printf("%-22s %8.0f ms%n", name, (System.nanoTime() - start) / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Database.resetBufferPool(POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        HeapFile left = load(tid, rows);
+        HeapFile right = load(tid, rows);
+        JoinCompare p = new JoinCompare(0, Comparison.Operation.EQUALS, 0);
+
+        System.out.printf("%d x %d rows, one match each%n", rows, rows);
+        run("Join", new Join(p, new SeqScan(tid, left.getId(), "l"), new SeqScan(tid, right.getId(), "r")), rows);
+        // 8 bytes a tuple, so the whole build side fits
+        run("HashJoin in memory", new HashJoin(p, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r"), rows * 8), rows);
+        run("HashJoin partitioned", new HashJoin(p, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r")), rows);
+        run("SortMergeJoin sorting", new SortMergeJoin(p, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r"), false, false), rows);
+        // the tables were loaded in key order
+        run("SortMergeJoin sorted", new SortMergeJoin(p, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r"), true, true), rows);
+    }
+}
@@ -0,0 +1,118 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import mydb.Database.BufferPool;
+import mydb.HeapFile;
+import mydb.HeapPageId;
+import mydb.Utility;
+import mydb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the I/O of random page reads done the way HeapFile.readPage now
+ * does it (one positional read on a FileChannel that stays open) with the
+ * old way (open a RandomAccessFile, seek and read for every page). Both read
+ * raw bytes only; the last column is the full HeapFile.readPage, which also
+ * parses the page into tuples.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.HeapFileIoBenchmark [pages] [reads]
+ * </pre>
+ */
+public class HeapFileIoBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * pages, 1 << 16, null, null);
+        final HeapFile file = Utility.openHeapFile(2, f);
+        int[] pageNos = new int[reads];
+        Random r = new Random(42);
+        for (int i = 0; i < reads; i++)
+            pageNos[i] = r.nextInt(pages);
+
+        System.out.printf("%d random reads over %d pages (%d KB)%n",
+                reads, pages, pages * BufferPool.PAGE_SIZE / 1024);
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                double reopen = run(new ReopenReader(f), pageNos);
+                double shared = run(new ChannelReader(channel), pageNos);
+                double readPage = run(new ReadPageReader(file), pageNos);
+                if (round >= WARMUP_ROUNDS)
+                    System.out.printf("open per page: %10.0f pages/s   shared channel: %10.0f pages/s (x%.2f)"
+                            + "   readPage: %10.0f pages/s%n", reopen, shared, shared / reopen, readPage);
+            }
+        }
+        file.close();
+    }
+
+    private interface Reader {
+        void read(int pageNo) throws Exception;
+    }
+
+    // the I/O of the previous HeapFile.readPage
+    private static class ReopenReader implements Reader {
+        private final File file;
+        private final byte[] data = new byte[BufferPool.PAGE_SIZE];
+
+        ReopenReader(File file) {
+            this.file = file;
+        }
+
+        public void read(int pageNo) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek((long) pageNo * BufferPool.PAGE_SIZE);
+                raf.read(data, 0, BufferPool.PAGE_SIZE);
+            }
+        }
+    }
+
+    // the I/O of the current HeapFile.readPage
+    private static class ChannelReader implements Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+
+        ChannelReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        public void read(int pageNo) throws IOException {
+            buffer.clear();
+            long position = (long) pageNo * BufferPool.PAGE_SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) break;
+            }
+        }
+    }
+
+    private static class ReadPageReader implements Reader {
+        private final HeapFile file;
+
+        ReadPageReader(HeapFile file) {
+            this.file = file;
+        }
+
+        public void read(int pageNo) throws Exception {
+            file.readPage(new HeapPageId(file.getId(), pageNo));
+        }
+    }
+
+    /** @return pages per second */
+    private static double run(Reader reader, int[] pageNos) throws Exception {
+        long start = System.nanoTime();
+        for (int pageNo : pageNos)
+            reader.read(pageNo);
+        return pageNos.length / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,126 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import mydb.BulkLoad;
+import mydb.DbFileIterator;
+import mydb.HeapFile;
+import mydb.HeapPage;
+import mydb.HeapPageId;
+import mydb.Permissions;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+import mydb.Database.ReplacementPolicy;
+
+/**
+ * Compares a buffer pool holding its pages on the heap with one holding
+ * them in off-heap frames. The table fits in the pool; after one scan has
+ * loaded it, random point lookups and further scans run against resident
+ * pages. For each pool the benchmark reports the heap in use once the pool
+ * is warm and the collections and total GC time of the whole workload, as
+ * seen by the GarbageCollectorMXBeans.
+ * <p>
+ * Not a unit test; run it by hand with a heap that holds the pool:
+ * <pre>
+ * java -Xmx1g -cp ... mydb.benchmark.OffHeapBenchmark [pool pages] [lookups]
+ * </pre>
+ */
+public class OffHeapBenchmark {
+
+    private static final int SCANS = 3;
+
+    // collections forced by usedHeap, not counted against the workload
+    private static long gcCountOffset, gcMillisOffset;
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+
+        System.out.printf("pool of %d MB, table of two ints filling it%n",
+                (long) poolPages * BufferPool.PAGE_SIZE >> 20);
+        for (boolean offHeap : new boolean[] {false, true}) {
+            Database.reset();
+            Database.resetBufferPool(poolPages, ReplacementPolicy.Kind.LRU, offHeap);
+            int perPage = HeapPage.createEmptyPageData().length * 8 / (Utility.getTupleDesc(2).getSize() * 8 + 1);
+            HeapFile file = load(poolPages * perPage);
+            run(offHeap ? "off-heap" : "heap", file, perPage, lookups);
+            file.close();
+        }
+    }
+
+    private static HeapFile load(int rows) throws Exception {
+        File f = File.createTempFile("offheap", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = Utility.openHeapFile(2, f);
+        BulkLoad load = new BulkLoad(new TransactionId(), new TestUtil.MockScan(0, rows, 2), file.getId());
+        load.open();
+        load.close();
+        return file;
+    }
+
+    private static void run(String name, HeapFile file, int perPage, int lookups) throws Exception {
+        long gcCount = gcCount(), gcMillis = gcMillis();
+        long start = System.nanoTime();
+        int rows = scan(file);
+        long heap = usedHeap();
+
+        TransactionId tid = new TransactionId();
+        BufferPool pool = Database.getBufferPool();
+        Random r = new Random(42);
+        for (int i = 0; i < lookups; i++) {
+            int row = r.nextInt(rows);
+            HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(file.getId(), row / perPage),
+                    Permissions.READ_ONLY);
+            page.getTuple(row % perPage);
+        }
+        for (int i = 1; i < SCANS; i++)
+            scan(file);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s pool: heap after warm-up %5d MB   %4d GCs, %6d ms in GC   %6.2f s total%n",
+                name, heap >> 20, gcCount() - gcCount, gcMillis() - gcMillis, seconds);
+    }
+
+    private static int scan(HeapFile file) throws Exception {
+        DbFileIterator it = file.iterator(new TransactionId());
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    // live heap, measured after a full collection
+    private static long usedHeap() {
+        long count = gcCount(), millis = gcMillis();
+        System.gc();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        gcCountOffset += gcCount() - count;
+        gcMillisOffset += gcMillis() - millis;
+        return used;
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionCount());
+        return n - gcCountOffset;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionTime());
+        return n - gcMillisOffset;
+    }
+}
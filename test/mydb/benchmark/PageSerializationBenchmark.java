@@ -0,0 +1,129 @@
+package mydb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import mydb.Database.BufferPool;
+import mydb.HeapFile;
+import mydb.HeapPage;
+import mydb.HeapPageId;
+import mydb.Utility;
+import mydb.systemtest.SystemTestUtil;
+import mydb.TupleDetail.Tuple;
+
+/**
+ * Measures time and heap allocation per serialized page for
+ * <ul>
+ * <li>the stream-based encoding HeapPage.getPageData used to do
+ *     (DataOutputStream over a ByteArrayOutputStream, every tuple encoded
+ *     field by field), reproduced here as the baseline;</li>
+ * <li>getPageData, which still returns a new array;</li>
+ * <li>writeTo into a reused buffer, the path writePage and the log use.</li>
+ * </ul>
+ * The page has a third of its tuples replaced, so writeTo has to mix bulk
+ * copies with encoded slots. Allocation is read from the JVM's per-thread
+ * allocation counter, so the writeTo column should read 0.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.PageSerializationBenchmark [iterations]
+ * </pre>
+ */
+public class PageSerializationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504, 1 << 16, null, null);
+        HeapFile file = Utility.openHeapFile(2, f);
+        final HeapPage page = (HeapPage) file.readPage(new HeapPageId(file.getId(), 0));
+        for (int slot = 0; slot < 504; slot += 3) {
+            page.deleteTuple(page.getTuple(slot));
+            page.insertTuple(Utility.getHeapTuple(new int[] {slot, -slot}));
+        }
+        final byte[] reused = new byte[BufferPool.PAGE_SIZE];
+
+        Task stream = new Task() {
+            public void run() throws IOException {
+                streamEncode(page);
+            }
+        };
+        Task getPageData = new Task() {
+            public void run() {
+                page.getPageData();
+            }
+        };
+        Task writeTo = new Task() {
+            public void run() {
+                page.writeTo(reused, 0);
+            }
+        };
+
+        System.out.printf("%d serializations of a %d byte page per measurement%n", iterations, BufferPool.PAGE_SIZE);
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            String line = measure("stream", stream, iterations)
+                    + measure("getPageData", getPageData, iterations)
+                    + measure("writeTo", writeTo, iterations);
+            if (round >= WARMUP_ROUNDS)
+                System.out.println(line);
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static String measure(String name, Task task, int iterations) throws Exception {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long bytesBefore = allocatedBytes(mx, tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            task.run();
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes(mx, tid) - bytesBefore;
+        return String.format("%s: %7.0f ns %7d B   ", name, (double) nanos / iterations, bytes / iterations);
+    }
+
+    private static long allocatedBytes(ThreadMXBean mx, long tid) {
+        if (mx instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(tid);
+        return 0;
+    }
+
+    // the encoding getPageData used before it wrote into a plain array
+    private static byte[] streamEncode(HeapPage page) throws IOException {
+        int slots = page.getNumEmptySlots() + page.getTupleNumber();
+        int tupleSize = Utility.getTupleDesc(2).getSize();
+        int headerSize = (slots + 7) / 8;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(output);
+        for (int i = 0; i < headerSize; i++) {
+            byte b = 0;
+            for (int bit = 0; bit < 8 && i * 8 + bit < slots; bit++)
+                if (page.isSlotUsed(i * 8 + bit)) b |= 1 << bit;
+            dos.writeByte(b);
+        }
+        for (int i = 0; i < slots; i++) {
+            Tuple t = page.getTuple(i);
+            if (t == null) {
+                for (int j = 0; j < tupleSize; j++)
+                    dos.writeByte(0);
+                continue;
+            }
+            for (int j = 0; j < 2; j++)
+                t.getField(j).serialize(dos);
+        }
+        int zerolen = BufferPool.PAGE_SIZE - (headerSize + tupleSize * slots);
+        dos.write(new byte[zerolen], 0, zerolen);
+        dos.flush();
+        return output.toByteArray();
+    }
+}
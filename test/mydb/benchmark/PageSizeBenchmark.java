@@ -0,0 +1,98 @@
+package mydb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import mydb.BulkLoad;
+import mydb.DbFileIterator;
+import mydb.HeapFile;
+import mydb.HeapPage;
+import mydb.HeapPageId;
+import mydb.Permissions;
+import mydb.TestUtil;
+import mydb.TransactionId;
+import mydb.Utility;
+import mydb.Database.BufferPool;
+import mydb.Database.Database;
+
+/**
+ * Compares full scans and random point lookups (by page and slot, the way
+ * an index would fetch a RecordId) on the same table stored with different
+ * page sizes. The buffer pool has the same byte budget in every run and
+ * the table is several times larger, so both workloads miss in the pool
+ * and read through the OS cache.
+ * <p>
+ * Not a unit test; run it by hand:
+ * <pre>
+ * java -cp ... mydb.benchmark.PageSizeBenchmark [rows] [lookups]
+ * </pre>
+ */
+public class PageSizeBenchmark {
+
+    private static final int[] PAGE_SIZES = {1024, 4096, 16384, 65536};
+    private static final int POOL_PAGES = 256;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        System.out.printf("%d rows of two ints, pool of %d KB%n", rows, POOL_PAGES * BufferPool.PAGE_SIZE / 1024);
+        for (int pageSize : PAGE_SIZES) {
+            Database.reset();
+            Database.resetBufferPool(POOL_PAGES);
+            HeapFile file = load(pageSize, rows);
+            int perPage = new HeapPage(new HeapPageId(file.getId(), 0), new byte[pageSize]).getNumEmptySlots();
+            double scan = 0, lookup = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                scan = Math.max(scan, scan(file));
+                lookup = Math.max(lookup, lookups(file, perPage, rows, lookups));
+            }
+            System.out.printf("%6d byte pages: scan %10.0f rows/s   lookup %9.0f lookups/s%n",
+                    pageSize, scan, lookup);
+            file.close();
+        }
+    }
+
+    private static HeapFile load(int pageSize, int rows) throws Exception {
+        File f = File.createTempFile("pagesize", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        HeapFile file = new HeapFile(f, Utility.getTupleDesc(2), pageSize);
+        Database.getCatalog().addTable(file, f.getName());
+        BulkLoad load = new BulkLoad(new TransactionId(), new TestUtil.MockScan(0, rows, 2), file.getId());
+        load.open();
+        load.close();
+        return file;
+    }
+
+    /** @return rows per second */
+    private static double scan(HeapFile file) throws Exception {
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /** @return lookups per second */
+    private static double lookups(HeapFile file, int perPage, int rows, int lookups) throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool pool = Database.getBufferPool();
+        Random r = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int row = r.nextInt(rows);
+            HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(file.getId(), row / perPage),
+                    Permissions.READ_ONLY);
+            page.getTuple(row % perPage);
+        }
+        return lookups / ((System.nanoTime() - start) / 1e9);
+    }
+}
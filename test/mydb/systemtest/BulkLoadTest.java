@@ -0,0 +1,85 @@
+package mydb.systemtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import mydb.*;
+import mydb.Database.Database;
+import mydb.Exception.DBException;
+import mydb.Exception.TransactionAbortedException;
+import mydb.TupleDetail.Tuple;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BulkLoadTest extends MyDbTestBase {
+    private HeapFile validateLoad(int columns, int sourceRows, int destinationRows, int sortField)
+            throws DBException, IOException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(columns, sourceRows, null, sourceTuples);
+        ArrayList<ArrayList<Integer>> destinationTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(columns, destinationRows, null, destinationTuples);
+        int pagesBefore = destination.pageCount();
+
+        TransactionId tid = new TransactionId();
+        SeqScan ss = new SeqScan(tid, source.getId(), "s");
+        BulkLoad load = new BulkLoad(tid, ss, destination.getId(), sortField, true);
+        load.open();
+        assertTrue(load.hasNext());
+        Tuple tup = load.next();
+        assertEquals(SystemTestUtil.SINGLE_INT_DESCRIPTOR, tup.getTupleDetail());
+        assertEquals(sourceRows, ((IntField) tup.getField(0)).getValue());
+        assertFalse(load.hasNext());
+        load.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        // the loaded tuples fill whole pages after the existing ones
+        int perPage = new HeapPage(new HeapPageId(destination.getId(), 0), HeapPage.createEmptyPageData())
+                .getNumEmptySlots();
+        assertEquals(pagesBefore + (sourceRows + perPage - 1) / perPage, destination.pageCount());
+
+        sourceTuples.addAll(destinationTuples);
+        SystemTestUtil.matchTuples(destination, sourceTuples);
+        return destination;
+    }
+
+    @Test public void testEmpty()
+            throws IOException, DBException, TransactionAbortedException {
+        validateLoad(3, 0, 10, -1);
+    }
+
+    @Test public void testManyPages()
+            throws IOException, DBException, TransactionAbortedException {
+        // more than one batch of pages
+        validateLoad(2, 504 * (BulkLoad.BATCH_PAGES + 3) + 7, 600, -1);
+    }
+
+    @Test public void testSorted()
+            throws IOException, DBException, TransactionAbortedException {
+        HeapFile destination = validateLoad(2, 3000, 0, 1);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = destination.iterator(tid);
+        it.open();
+        int last = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int value = ((IntField) it.next().getField(1)).getValue();
+            assertTrue(value >= last);
+            last = value;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test(expected = DBException.class) public void testMismatchedTypes()
+            throws IOException, DBException, TransactionAbortedException {
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 1, null, null);
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(3, 0, null, null);
+        TransactionId tid = new TransactionId();
+        new BulkLoad(tid, new SeqScan(tid, source.getId(), ""), destination.getId());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BulkLoadTest.class);
+    }
+}